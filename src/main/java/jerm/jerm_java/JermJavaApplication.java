@@ -2,8 +2,10 @@ package jerm.jerm_java;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class JermJavaApplication {
 
 	public static void main(String[] args) {
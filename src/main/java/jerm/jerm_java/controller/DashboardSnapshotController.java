@@ -0,0 +1,72 @@
+package jerm.jerm_java.controller;
+
+import jerm.jerm_java.service.DashboardSnapshotService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/dashboards")
+@CrossOrigin(origins = {"http://localhost:3000", "http://frontend:3000"})
+public class DashboardSnapshotController {
+
+    @Autowired
+    private DashboardSnapshotService dashboardSnapshotService;
+
+    /**
+     * List precomputed dashboards with their schedules and snapshot ages
+     * GET /api/dashboards/snapshots
+     */
+    @GetMapping("/snapshots")
+    public ResponseEntity<Map<String, Object>> getSnapshots() {
+        return ResponseEntity.ok(dashboardSnapshotService.getSnapshotStatus());
+    }
+
+    /**
+     * Get the latest snapshot of a dashboard (refresh=true recomputes it first)
+     * GET /api/dashboards/snapshots/logs.system-monitoring?refresh=false
+     */
+    @GetMapping("/snapshots/{name}")
+    public ResponseEntity<Map<String, Object>> getSnapshot(
+            @PathVariable String name,
+            @RequestParam(defaultValue = "false") boolean refresh) {
+        try {
+            Map<String, Object> dashboard = dashboardSnapshotService.getDashboard(name, refresh);
+            return ResponseEntity.ok(dashboard);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            error.put("name", name);
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to get dashboard snapshot: " + e.getMessage());
+            error.put("name", name);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    /**
+     * Recompute a dashboard snapshot now
+     * POST /api/dashboards/snapshots/logs.system-monitoring/refresh
+     */
+    @PostMapping("/snapshots/{name}/refresh")
+    public ResponseEntity<Map<String, Object>> refreshSnapshot(@PathVariable String name) {
+        try {
+            return ResponseEntity.ok(dashboardSnapshotService.refreshSnapshot(name));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            error.put("name", name);
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to refresh dashboard snapshot: " + e.getMessage());
+            error.put("name", name);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+}
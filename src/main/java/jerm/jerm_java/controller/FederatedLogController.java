@@ -0,0 +1,141 @@
+package jerm.jerm_java.controller;
+
+import jerm.jerm_java.service.FederatedLogService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Log reports merged across every configured WMS SQL Server.
+ * Each response lists per-site latency and errors; a failed site doesn't fail the report.
+ */
+@RestController
+@RequestMapping("/api/logs/federated")
+@CrossOrigin(origins = "http://localhost:3000")
+public class FederatedLogController {
+
+    @Autowired
+    private FederatedLogService federatedLogService;
+
+    @GetMapping("/sites")
+    public ResponseEntity<Map<String, Object>> getSites() {
+        return ResponseEntity.ok(federatedLogService.getSites());
+    }
+
+    @GetMapping("/errors/recent")
+    public ResponseEntity<Map<String, Object>> getRecentDatabaseErrors(
+            @RequestParam(defaultValue = "1") int daysBack,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            Map<String, Object> result = federatedLogService.getRecentDatabaseErrors(daysBack, limit);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to get federated database errors: " + e.getMessage());
+            error.put("daysBack", daysBack);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    @GetMapping("/errors/trends")
+    public ResponseEntity<Map<String, Object>> getHourlyErrorTrends(
+            @RequestParam(defaultValue = "1") int daysBack) {
+        try {
+            Map<String, Object> result = federatedLogService.getHourlyErrorTrends(daysBack);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to get federated error trends: " + e.getMessage());
+            error.put("daysBack", daysBack);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    @GetMapping("/system/health")
+    public ResponseEntity<Map<String, Object>> getSystemHealthSummary() {
+        try {
+            Map<String, Object> result = federatedLogService.getSystemHealthSummary();
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to get federated system health summary: " + e.getMessage());
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    @GetMapping("/users/top-active")
+    public ResponseEntity<Map<String, Object>> getTopUsersByActivity(
+            @RequestParam(defaultValue = "7") int daysBack,
+            @RequestParam(defaultValue = "20") int topCount) {
+        try {
+            Map<String, Object> result = federatedLogService.getTopUsersByActivity(daysBack, topCount);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to get federated top users by activity: " + e.getMessage());
+            error.put("daysBack", daysBack);
+            error.put("topCount", topCount);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    @GetMapping("/users/activity-by-hour")
+    public ResponseEntity<Map<String, Object>> getUserActivityByHour(
+            @RequestParam(defaultValue = "7") int daysBack) {
+        try {
+            Map<String, Object> result = federatedLogService.getUserActivityByHour(daysBack);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to get federated user activity by hour: " + e.getMessage());
+            error.put("daysBack", daysBack);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    @GetMapping("/summary/daily")
+    public ResponseEntity<Map<String, Object>> getDailySummaryByResourceType(
+            @RequestParam(defaultValue = "7") int daysBack) {
+        try {
+            Map<String, Object> result = federatedLogService.getDailySummaryByResourceType(daysBack);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to get federated daily summary: " + e.getMessage());
+            error.put("daysBack", daysBack);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    @GetMapping("/trends/daily-volume")
+    public ResponseEntity<Map<String, Object>> getDailyVolumeTrends(
+            @RequestParam(defaultValue = "30") int daysBack) {
+        try {
+            Map<String, Object> result = federatedLogService.getDailyVolumeTrends(daysBack);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to get federated daily volume trends: " + e.getMessage());
+            error.put("daysBack", daysBack);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    @PostMapping("/search")
+    public ResponseEntity<Map<String, Object>> searchLogMessages(
+            @RequestBody Map<String, Object> searchCriteria,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            Map<String, Object> result = federatedLogService.searchLogMessages(searchCriteria, limit);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to search federated log messages: " + e.getMessage());
+            error.put("searchCriteria", searchCriteria);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package jerm.jerm_java.controller;
 
+import jerm.jerm_java.service.DashboardSnapshotService;
 import jerm.jerm_java.service.GitService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -16,6 +17,9 @@ public class GitController {
     @Autowired
     private GitService gitService;
 
+    @Autowired
+    private DashboardSnapshotService dashboardSnapshotService;
+
     // ============== Git Branch and Repository Information ==============
     
     /**
@@ -156,13 +160,15 @@ public class GitController {
     
     /**
      * Get comprehensive git dashboard for a repository
-     * GET /api/git/dashboard?repositoryPath=/path/to/repo
+     * GET /api/git/dashboard?repositoryPath=/path/to/repo&refresh=false
      */
     @GetMapping("/dashboard")
     public ResponseEntity<Map<String, Object>> getGitDashboard(
-            @RequestParam(required = false) String repositoryPath) {
+            @RequestParam(required = false) String repositoryPath,
+            @RequestParam(defaultValue = "false") boolean refresh) {
         try {
-            Map<String, Object> result = gitService.getGitDashboard(repositoryPath);
+            Map<String, Object> result = dashboardSnapshotService.getDashboard(
+                "git.dashboard", repositoryPath != null ? Map.of("repositoryPath", repositoryPath) : Map.of(), refresh);
             return ResponseEntity.ok(result);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(
@@ -234,7 +240,10 @@ public class GitController {
                 "comprehensive_dashboard", Map.of(
                     "method", "GET",
                     "endpoint", "/api/git/dashboard",
-                    "parameters", Map.of("repositoryPath", "Path to repository (optional)"),
+                    "parameters", Map.of(
+                        "repositoryPath", "Path to repository (optional)",
+                        "refresh", "Bypass the precomputed snapshot (default: false)"
+                    ),
                     "description", "Get comprehensive git and GitHub information dashboard"
                 )
             ),
@@ -0,0 +1,112 @@
+package jerm.jerm_java.controller;
+
+import jerm.jerm_java.service.LogCubeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ad-hoc roll-ups over the in-memory log cube; no SQL round trip per query
+ */
+@RestController
+@RequestMapping("/api/logs/cube")
+@CrossOrigin(origins = "http://localhost:3000")
+public class LogCubeController {
+
+    @Autowired
+    private LogCubeService logCubeService;
+
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        return ResponseEntity.ok(logCubeService.getStatus());
+    }
+
+    @PostMapping("/refresh")
+    public ResponseEntity<Map<String, Object>> refresh(
+            @RequestParam(defaultValue = "false") boolean full) {
+        try {
+            Map<String, Object> result = logCubeService.refresh(full);
+            return ResponseEntity.ok(result);
+        } catch (IllegalStateException e) {
+            return disabled(e, "full", full);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to refresh log cube: " + e.getMessage());
+            error.put("full", full);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    /**
+     * Roll up and slice the cube
+     * POST /api/logs/cube/query
+     * {"dimensions": ["log_date", "resource_name"], "measures": ["message_count", "unique_users"],
+     *  "filters": {"resourceContains": "ERROR", "hour_of_day": [8, 9]}, "daysBack": 7,
+     *  "orderBy": "message_count", "limit": 50}
+     */
+    @PostMapping("/query")
+    public ResponseEntity<Map<String, Object>> query(@RequestBody Map<String, Object> request) {
+        try {
+            Map<String, Object> result = logCubeService.query(request);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            error.put("request", request);
+            return ResponseEntity.badRequest().body(error);
+        } catch (IllegalStateException e) {
+            return disabled(e, "request", request);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to query log cube: " + e.getMessage());
+            error.put("request", request);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    @GetMapping("/presets")
+    public ResponseEntity<Map<String, Object>> getPresets() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("presets", logCubeService.getPresets());
+        result.put("dimensions", LogCubeService.DIMENSIONS);
+        result.put("measures", LogCubeService.MEASURES);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Run a report preset, e.g. GET /api/logs/cube/presets/daily-volume?daysBack=30
+     */
+    @GetMapping("/presets/{name}")
+    public ResponseEntity<Map<String, Object>> queryPreset(
+            @PathVariable String name,
+            @RequestParam(defaultValue = "7") int daysBack,
+            @RequestParam(defaultValue = "0") int topCount) {
+        try {
+            Map<String, Object> result = logCubeService.queryPreset(name, daysBack, topCount);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            error.put("preset", name);
+            return ResponseEntity.badRequest().body(error);
+        } catch (IllegalStateException e) {
+            return disabled(e, "preset", name);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to run log cube preset: " + e.getMessage());
+            error.put("preset", name);
+            error.put("daysBack", daysBack);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> disabled(IllegalStateException e, String key, Object value) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        error.put(key, value);
+        return ResponseEntity.status(503).body(error);
+    }
+}
@@ -1,9 +1,17 @@
 package jerm.jerm_java.controller;
 
+import jakarta.servlet.http.HttpServletResponse;
+import jerm.jerm_java.service.DashboardSnapshotService;
+import jerm.jerm_java.service.LogAnomalyService;
+import jerm.jerm_java.service.LogExportService;
 import jerm.jerm_java.service.LogMessageService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -16,6 +24,15 @@ public class LogMessageController {
     @Autowired
     private LogMessageService logMessageService;
     
+    @Autowired
+    private LogExportService logExportService;
+    
+    @Autowired
+    private LogAnomalyService logAnomalyService;
+    
+    @Autowired
+    private DashboardSnapshotService dashboardSnapshotService;
+    
     // System Monitoring Dashboard Endpoints
     
     @GetMapping("/errors/recent")
@@ -58,6 +75,55 @@ public class LogMessageController {
         }
     }
     
+    @GetMapping("/errors/anomalies")
+    public ResponseEntity<Map<String, Object>> getErrorAnomalies(
+            @RequestParam(required = false) String resourceName) {
+        try {
+            Map<String, Object> result = logAnomalyService.getAnomalies(resourceName);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to get error anomalies: " + e.getMessage());
+            error.put("resourceName", resourceName);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+    
+    @GetMapping("/errors/anomalies/baselines")
+    public ResponseEntity<Map<String, Object>> getErrorBaselines(
+            @RequestParam(required = false) String resourceName) {
+        try {
+            Map<String, Object> result = logAnomalyService.getBaselines(resourceName);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to get error baselines: " + e.getMessage());
+            error.put("resourceName", resourceName);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+    
+    @PostMapping("/errors/anomalies/poll")
+    public ResponseEntity<Map<String, Object>> pollErrorAnomalies() {
+        try {
+            Map<String, Object> result = logAnomalyService.poll();
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to poll error anomalies: " + e.getMessage());
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+    
+    /**
+     * Server-sent event stream of anomaly alerts
+     * GET /api/logs/errors/anomalies/stream
+     */
+    @GetMapping(value = "/errors/anomalies/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamErrorAnomalies() {
+        return logAnomalyService.subscribe();
+    }
+    
     // User Analytics Dashboard Endpoints
     
     @GetMapping("/users/top-active")
@@ -140,18 +206,11 @@ public class LogMessageController {
     
     @GetMapping("/dashboard/system-monitoring")
     public ResponseEntity<Map<String, Object>> getSystemMonitoringDashboard(
-            @RequestParam(defaultValue = "1") int daysBack) {
+            @RequestParam(defaultValue = "1") int daysBack,
+            @RequestParam(defaultValue = "false") boolean refresh) {
         try {
-            Map<String, Object> dashboard = new HashMap<>();
-            
-            // Get multiple metrics for the dashboard
-            dashboard.put("recentErrors", logMessageService.getRecentDatabaseErrors(daysBack));
-            dashboard.put("errorTrends", logMessageService.getHourlyErrorTrends(daysBack));
-            dashboard.put("systemHealth", logMessageService.getSystemHealthSummary());
-            
-            dashboard.put("dashboardType", "system-monitoring");
-            dashboard.put("daysBack", daysBack);
-            
+            Map<String, Object> dashboard = dashboardSnapshotService.getDashboard(
+                "logs.system-monitoring", Map.of("daysBack", daysBack), refresh);
             return ResponseEntity.ok(dashboard);
         } catch (Exception e) {
             Map<String, Object> error = new HashMap<>();
@@ -163,16 +222,11 @@ public class LogMessageController {
     
     @GetMapping("/dashboard/user-analytics")
     public ResponseEntity<Map<String, Object>> getUserAnalyticsDashboard(
-            @RequestParam(defaultValue = "7") int daysBack) {
+            @RequestParam(defaultValue = "7") int daysBack,
+            @RequestParam(defaultValue = "false") boolean refresh) {
         try {
-            Map<String, Object> dashboard = new HashMap<>();
-            
-            dashboard.put("topUsers", logMessageService.getTopUsersByActivity(daysBack, 20));
-            dashboard.put("activityByHour", logMessageService.getUserActivityByHour(daysBack));
-            
-            dashboard.put("dashboardType", "user-analytics");
-            dashboard.put("daysBack", daysBack);
-            
+            Map<String, Object> dashboard = dashboardSnapshotService.getDashboard(
+                "logs.user-analytics", Map.of("daysBack", daysBack), refresh);
             return ResponseEntity.ok(dashboard);
         } catch (Exception e) {
             Map<String, Object> error = new HashMap<>();
@@ -184,16 +238,11 @@ public class LogMessageController {
     
     @GetMapping("/dashboard/operations-overview")
     public ResponseEntity<Map<String, Object>> getOperationsOverviewDashboard(
-            @RequestParam(defaultValue = "7") int daysBack) {
+            @RequestParam(defaultValue = "7") int daysBack,
+            @RequestParam(defaultValue = "false") boolean refresh) {
         try {
-            Map<String, Object> dashboard = new HashMap<>();
-            
-            dashboard.put("dailySummary", logMessageService.getDailySummaryByResourceType(daysBack));
-            dashboard.put("volumeTrends", logMessageService.getDailyVolumeTrends(daysBack));
-            
-            dashboard.put("dashboardType", "operations-overview");
-            dashboard.put("daysBack", daysBack);
-            
+            Map<String, Object> dashboard = dashboardSnapshotService.getDashboard(
+                "logs.operations-overview", Map.of("daysBack", daysBack), refresh);
             return ResponseEntity.ok(dashboard);
         } catch (Exception e) {
             Map<String, Object> error = new HashMap<>();
@@ -202,4 +251,88 @@ public class LogMessageController {
             return ResponseEntity.status(500).body(error);
         }
     }
-} 
\ No newline at end of file
+    
+    // Bulk Export Endpoints
+    
+    /**
+     * Stream a log report as gzip-compressed CSV or columnar file
+     * GET /api/logs/export/recent-errors?daysBack=7&format=csv&cursor=...
+     */
+    @GetMapping("/export/{report}")
+    public WebAsyncTask<ResponseEntity<?>> exportReport(
+            @PathVariable String report,
+            @RequestParam(defaultValue = "7") int daysBack,
+            @RequestParam(defaultValue = "20") int topCount,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) String cursor,
+            HttpServletResponse response) {
+        if ("search".equals(report)) {
+            return new WebAsyncTask<>(() ->
+                exportError("The search export requires POST /api/logs/export/search", report, format));
+        }
+        return streamExport(report, daysBack, topCount, null, format, cursor, response);
+    }
+    
+    /**
+     * Stream the results of a log search; body is the /search criteria plus optional format and cursor
+     */
+    @PostMapping("/export/search")
+    public WebAsyncTask<ResponseEntity<?>> exportSearch(@RequestBody Map<String, Object> request,
+                                                        HttpServletResponse response) {
+        Map<String, Object> searchCriteria = new HashMap<>(request);
+        Object format = searchCriteria.remove("format");
+        Object cursor = searchCriteria.remove("cursor");
+        return streamExport("search", 0, 0, searchCriteria,
+                            format != null ? format.toString() : "csv",
+                            cursor != null ? cursor.toString() : null, response);
+    }
+    
+    @GetMapping("/export")
+    public ResponseEntity<Map<String, Object>> getExportOptions() {
+        Map<String, Object> options = new HashMap<>();
+        options.put("reports", logExportService.getSupportedReports());
+        options.put("formats", LogExportService.SUPPORTED_FORMATS);
+        options.put("resume", "Pass the last export_cursor value received as ?cursor= to continue a row export");
+        return ResponseEntity.ok(options);
+    }
+    
+    /**
+     * Exports run as their own async task so they get log.export.timeout.ms instead of the
+     * application-wide async request timeout
+     */
+    private WebAsyncTask<ResponseEntity<?>> streamExport(String report, int daysBack, int topCount,
+                                                         Map<String, Object> searchCriteria, String format,
+                                                         String cursor, HttpServletResponse response) {
+        return new WebAsyncTask<>(logExportService.getTimeoutMs(), () -> {
+            try {
+                logExportService.validateExportRequest(report, format, cursor);
+            } catch (IllegalArgumentException e) {
+                return exportError(e.getMessage(), report, format);
+            }
+            
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                               "attachment; filename=\"" + logExportService.getExportFileName(report, format) + "\"");
+            response.setContentType("application/gzip");
+            try {
+                Map<String, Object> stats = logExportService.exportReport(
+                    report, daysBack, topCount, searchCriteria, format, cursor, response.getOutputStream());
+                System.out.println("Log export completed: " + stats);
+            } catch (Exception e) {
+                // Headers are already committed; the client sees a truncated file and can resume from its last cursor
+                System.err.println("Log export of " + report + " aborted: " + e.getMessage());
+                throw new java.io.IOException("Log export aborted: " + e.getMessage(), e);
+            }
+            // The response has been written directly
+            return null;
+        });
+    }
+    
+    private ResponseEntity<?> exportError(String message, String report, String format) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", "Failed to export logs: " + message);
+        error.put("report", report);
+        error.put("format", format);
+        error.put("supportedReports", logExportService.getSupportedReports().keySet());
+        return ResponseEntity.badRequest().body(error);
+    }
+}
\ No newline at end of file
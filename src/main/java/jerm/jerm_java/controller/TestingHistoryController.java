@@ -1,5 +1,7 @@
 package jerm.jerm_java.controller;
 
+import jerm.jerm_java.service.DashboardSnapshotService;
+import jerm.jerm_java.service.TestingHistoryMirrorService;
 import jerm.jerm_java.service.TestingHistoryService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
@@ -16,15 +18,23 @@ public class TestingHistoryController {
     @Autowired
     private TestingHistoryService testingHistoryService;
 
+    @Autowired
+    private DashboardSnapshotService dashboardSnapshotService;
+
+    @Autowired
+    private TestingHistoryMirrorService mirrorService;
+
     /**
      * Get testing trends for the last N days (default 7)
      * GET /api/testing/trends?days=7
      */
     @GetMapping("/trends")
     public ResponseEntity<Map<String, Object>> getTestingTrends(
-            @RequestParam(value = "days", required = false) Integer days) {
+            @RequestParam(value = "days", required = false) Integer days,
+            @RequestParam(defaultValue = "false") boolean refresh) {
         try {
-            Map<String, Object> trends = testingHistoryService.getTestingTrends(days);
+            Map<String, Object> trends = dashboardSnapshotService.getDashboard(
+                "testing.trends", days != null ? Map.of("days", days) : Map.of(), refresh);
             return ResponseEntity.ok(trends);
         } catch (Exception e) {
             Map<String, Object> errorResponse = new HashMap<>();
@@ -40,9 +50,10 @@ public class TestingHistoryController {
      * GET /api/testing/trends/quick
      */
     @GetMapping("/trends/quick")
-    public ResponseEntity<Map<String, Object>> getQuickTrends() {
+    public ResponseEntity<Map<String, Object>> getQuickTrends(
+            @RequestParam(defaultValue = "false") boolean refresh) {
         try {
-            Map<String, Object> trends = testingHistoryService.getTestingTrends(3);
+            Map<String, Object> trends = dashboardSnapshotService.getDashboard("testing.trends.quick", Map.of(), refresh);
             return ResponseEntity.ok(trends);
         } catch (Exception e) {
             Map<String, Object> errorResponse = new HashMap<>();
@@ -58,9 +69,10 @@ public class TestingHistoryController {
      * GET /api/testing/trends/extended
      */
     @GetMapping("/trends/extended")
-    public ResponseEntity<Map<String, Object>> getExtendedTrends() {
+    public ResponseEntity<Map<String, Object>> getExtendedTrends(
+            @RequestParam(defaultValue = "false") boolean refresh) {
         try {
-            Map<String, Object> trends = testingHistoryService.getTestingTrends(14);
+            Map<String, Object> trends = dashboardSnapshotService.getDashboard("testing.trends.extended", Map.of(), refresh);
             return ResponseEntity.ok(trends);
         } catch (Exception e) {
             Map<String, Object> errorResponse = new HashMap<>();
@@ -76,9 +88,10 @@ public class TestingHistoryController {
      * GET /api/testing/trends/monthly
      */
     @GetMapping("/trends/monthly")
-    public ResponseEntity<Map<String, Object>> getMonthlyTrends() {
+    public ResponseEntity<Map<String, Object>> getMonthlyTrends(
+            @RequestParam(defaultValue = "false") boolean refresh) {
         try {
-            Map<String, Object> trends = testingHistoryService.getTestingTrends(30);
+            Map<String, Object> trends = dashboardSnapshotService.getDashboard("testing.trends.monthly", Map.of(), refresh);
             return ResponseEntity.ok(trends);
         } catch (Exception e) {
             Map<String, Object> errorResponse = new HashMap<>();
@@ -89,6 +102,114 @@ public class TestingHistoryController {
         }
     }
 
+    /**
+     * Get tests that alternate between pass and fail across recent runs
+     * GET /api/testing/tests/flaky?suite=pester&runs=50&minFlips=2&limit=50
+     */
+    @GetMapping("/tests/flaky")
+    public ResponseEntity<Map<String, Object>> getFlakyTests(
+            @RequestParam(defaultValue = "pester") String suite,
+            @RequestParam(defaultValue = "50") int runs,
+            @RequestParam(defaultValue = "2") int minFlips,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            return ResponseEntity.ok(testingHistoryService.getFlakyTests(suite, runs, minFlips, limit));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            errorResponse.put("queryType", "flaky_tests_error");
+            return ResponseEntity.badRequest().body(errorResponse);
+        } catch (Exception e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Failed to retrieve flaky tests");
+            errorResponse.put("message", e.getMessage());
+            errorResponse.put("queryType", "flaky_tests_error");
+            return ResponseEntity.status(500).body(errorResponse);
+        }
+    }
+
+    /**
+     * Get currently failing tests with the run each started failing in
+     * GET /api/testing/tests/failing?suite=pester&limit=100
+     */
+    @GetMapping("/tests/failing")
+    public ResponseEntity<Map<String, Object>> getFailingTests(
+            @RequestParam(defaultValue = "pester") String suite,
+            @RequestParam(defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(testingHistoryService.getFailingTests(suite, limit));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            errorResponse.put("queryType", "failing_tests_error");
+            return ResponseEntity.badRequest().body(errorResponse);
+        } catch (Exception e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Failed to retrieve failing tests");
+            errorResponse.put("message", e.getMessage());
+            errorResponse.put("queryType", "failing_tests_error");
+            return ResponseEntity.status(500).body(errorResponse);
+        }
+    }
+
+    /**
+     * Get one test's outcome and duration across recent runs
+     * GET /api/testing/tests/history?suite=pester&name=Module.Test&runs=100
+     */
+    @GetMapping("/tests/history")
+    public ResponseEntity<Map<String, Object>> getTestCaseHistory(
+            @RequestParam(defaultValue = "pester") String suite,
+            @RequestParam String name,
+            @RequestParam(defaultValue = "100") int runs) {
+        try {
+            return ResponseEntity.ok(testingHistoryService.getTestCaseHistory(suite, name, runs));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            errorResponse.put("queryType", "test_case_history_error");
+            return ResponseEntity.badRequest().body(errorResponse);
+        } catch (Exception e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Failed to retrieve test case history");
+            errorResponse.put("message", e.getMessage());
+            errorResponse.put("queryType", "test_case_history_error");
+            return ResponseEntity.status(500).body(errorResponse);
+        }
+    }
+
+    /**
+     * Get the local mirror's status and staleness
+     * GET /api/testing/mirror
+     */
+    @GetMapping("/mirror")
+    public ResponseEntity<Map<String, Object>> getMirrorStatus() {
+        Map<String, Object> status = mirrorService.getStatus();
+        status.put("queryType", "testing_mirror_status");
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * Sync the local mirror with the share now
+     * POST /api/testing/mirror/sync
+     */
+    @PostMapping("/mirror/sync")
+    public ResponseEntity<Map<String, Object>> syncMirror() {
+        try {
+            return ResponseEntity.ok(mirrorService.sync());
+        } catch (IllegalStateException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            errorResponse.put("queryType", "testing_mirror_sync_error");
+            return ResponseEntity.badRequest().body(errorResponse);
+        } catch (Exception e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Failed to sync testing history mirror");
+            errorResponse.put("message", e.getMessage());
+            errorResponse.put("queryType", "testing_mirror_sync_error");
+            return ResponseEntity.status(500).body(errorResponse);
+        }
+    }
+
     /**
      * Health check endpoint
      * GET /api/testing/health
@@ -103,7 +224,10 @@ public class TestingHistoryController {
             "trends", "/api/testing/trends?days=N",
             "quick", "/api/testing/trends/quick (3 days)",
             "extended", "/api/testing/trends/extended (14 days)",
-            "monthly", "/api/testing/trends/monthly (30 days)"
+            "monthly", "/api/testing/trends/monthly (30 days)",
+            "flaky", "/api/testing/tests/flaky?suite=pester|tsqlt",
+            "failing", "/api/testing/tests/failing?suite=pester|tsqlt",
+            "history", "/api/testing/tests/history?suite=pester|tsqlt&name=TEST"
         ));
         return ResponseEntity.ok(health);
     }
@@ -124,6 +248,12 @@ public class TestingHistoryController {
         availableEndpoints.put("GET /trends/quick", "Get 3-day testing trends");
         availableEndpoints.put("GET /trends/extended", "Get 14-day testing trends");
         availableEndpoints.put("GET /trends/monthly", "Get 30-day testing trends");
+        availableEndpoints.put("?refresh=true", "Any /trends endpoint: bypass the precomputed snapshot");
+        availableEndpoints.put("GET /tests/flaky", "Tests flipping between pass and fail (?suite=pester|tsqlt&runs=N&minFlips=N)");
+        availableEndpoints.put("GET /tests/failing", "Currently failing tests and the run they started failing in");
+        availableEndpoints.put("GET /tests/history", "One test's outcome and duration per run (?suite=...&name=TEST&runs=N)");
+        availableEndpoints.put("GET /mirror", "Local mirror of the share: last sync and staleness");
+        availableEndpoints.put("POST /mirror/sync", "Sync the local mirror now");
         availableEndpoints.put("GET /health", "Service health check");
         availableEndpoints.put("GET /endpoints", "This endpoint documentation");
         
@@ -1,10 +1,19 @@
 package jerm.jerm_java.controller;
 
+import jerm.jerm_java.service.DashboardSnapshotService;
+import jerm.jerm_java.service.DirectoryCatalogService;
+import jerm.jerm_java.service.XMLExtractionIndex;
 import jerm.jerm_java.service.XMLFileService;
+import jerm.jerm_java.service.XPathExpressionCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -16,6 +25,18 @@ public class XMLFileController {
     @Autowired
     private XMLFileService xmlFileService;
     
+    @Autowired
+    private DashboardSnapshotService dashboardSnapshotService;
+    
+    @Autowired
+    private XPathExpressionCache xpathCache;
+    
+    @Autowired
+    private XMLExtractionIndex extractionIndex;
+    
+    @Autowired
+    private DirectoryCatalogService directoryCatalog;
+    
     /**
      * Get summary of XML files in a directory
      */
@@ -34,7 +55,10 @@ public class XMLFileController {
     }
     
     /**
-     * Extract trend data from XML files using XPath expression
+     * Extract trend data from XML files using XPath expression.
+     * Optional "pageSize" and "cursor" (the previous response's pagination.nextCursor) page through the matches;
+     * trendAnalysis and extractedDataCount come with the first page only.
+     * "collapseDuplicates": "true" reads only one copy of files with identical content.
      */
     @PostMapping("/extract/trends")
     public ResponseEntity<Map<String, Object>> extractTrendData(
@@ -49,8 +73,19 @@ public class XMLFileController {
                 return ResponseEntity.badRequest().body(error);
             }
             
-            Map<String, Object> result = xmlFileService.extractTrendDataFromXMLFiles(directoryPath, xpathExpression);
+            String cursor = request.get("cursor");
+            Integer pageSize = request.get("pageSize") != null ? Integer.valueOf(request.get("pageSize")) : null;
+            
+            boolean collapseDuplicates = Boolean.parseBoolean(request.get("collapseDuplicates"));
+            
+            Map<String, Object> result = xmlFileService.extractTrendDataFromXMLFiles(directoryPath, xpathExpression,
+                cursor, pageSize, collapseDuplicates);
             return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            error.put("request", request);
+            return ResponseEntity.badRequest().body(error);
         } catch (Exception e) {
             Map<String, Object> error = new HashMap<>();
             error.put("error", "Failed to extract trend data: " + e.getMessage());
@@ -60,13 +95,54 @@ public class XMLFileController {
     }
     
     /**
-     * Extract business metrics trends from XML files
+     * Stream every trend match as NDJSON (one JSON object per line, summary last).
+     * Same body as /extract/trends; "cursor" resumes after the item line that carried it.
+     */
+    @PostMapping("/extract/trends/stream")
+    public ResponseEntity<?> streamTrendData(@RequestBody Map<String, String> request) {
+        String directoryPath = request.get("directoryPath");
+        String xpathExpression = request.get("xpathExpression");
+        String cursor = request.get("cursor");
+        boolean collapseDuplicates = Boolean.parseBoolean(request.get("collapseDuplicates"));
+        
+        try {
+            if (xpathExpression == null || xpathExpression.trim().isEmpty()) {
+                throw new IllegalArgumentException("XPath expression is required");
+            }
+            xmlFileService.validateTrendRequest(directoryPath, xpathExpression, cursor);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            error.put("request", request);
+            return ResponseEntity.badRequest().body(error);
+        }
+        
+        StreamingResponseBody body = outputStream -> {
+            try {
+                Map<String, Object> summary = xmlFileService.streamTrendData(directoryPath, xpathExpression, cursor,
+                    collapseDuplicates, outputStream);
+                System.out.println("XML trend stream completed: " + summary.get("extractedDataCount") + " matches");
+            } catch (Exception e) {
+                // Headers are already committed; the client can resume from the last item cursor it received
+                System.err.println("XML trend stream aborted: " + e.getMessage());
+                throw new IOException("XML trend stream aborted: " + e.getMessage(), e);
+            }
+        };
+        
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/x-ndjson"))
+            .body(body);
+    }
+    
+    /**
+     * Extract business metrics trends from XML files; collapseDuplicates counts identical files once
      */
     @GetMapping("/trends/business-metrics")
     public ResponseEntity<Map<String, Object>> getBusinessMetricsTrends(
-            @RequestParam(required = false) String directoryPath) {
+            @RequestParam(required = false) String directoryPath,
+            @RequestParam(defaultValue = "false") boolean collapseDuplicates) {
         try {
-            Map<String, Object> result = xmlFileService.extractBusinessMetricsTrends(directoryPath);
+            Map<String, Object> result = xmlFileService.extractBusinessMetricsTrends(directoryPath, collapseDuplicates);
             return ResponseEntity.ok(result);
         } catch (Exception e) {
             Map<String, Object> error = new HashMap<>();
@@ -76,8 +152,35 @@ public class XMLFileController {
         }
     }
     
+    /**
+     * Business metrics history (raw points or hourly/daily rollups) from the time-series store.
+     * from/to take a date (yyyy-MM-dd, UTC) or an ISO-8601 instant; resolution is raw, hourly, daily or auto.
+     */
+    @GetMapping("/trends/business-metrics/history")
+    public ResponseEntity<Map<String, Object>> getBusinessMetricsHistory(
+            @RequestParam(required = false) String directoryPath,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String resolution) {
+        try {
+            Map<String, Object> result = xmlFileService.getBusinessMetricsHistory(directoryPath, from, to, resolution);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            error.put("directoryPath", directoryPath);
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to query business metrics history: " + e.getMessage());
+            error.put("directoryPath", directoryPath);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+    
     /**
      * Extract custom elements from XML files using multiple XPath selectors
+     * (optional "collapseDuplicates": true extracts from one copy of identical files)
      */
     @PostMapping("/extract/custom")
     public ResponseEntity<Map<String, Object>> extractCustomElements(
@@ -101,8 +204,16 @@ public class XMLFileController {
                 return ResponseEntity.badRequest().body(error);
             }
             
-            Map<String, Object> result = xmlFileService.extractCustomElements(directoryPath, elementSelectors);
+            boolean collapseDuplicates = Boolean.TRUE.equals(request.get("collapseDuplicates"))
+                || "true".equals(request.get("collapseDuplicates"));
+            
+            Map<String, Object> result = xmlFileService.extractCustomElements(directoryPath, elementSelectors, collapseDuplicates);
             return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            error.put("request", request);
+            return ResponseEntity.badRequest().body(error);
         } catch (Exception e) {
             Map<String, Object> error = new HashMap<>();
             error.put("error", "Failed to extract custom elements: " + e.getMessage());
@@ -111,24 +222,38 @@ public class XMLFileController {
         }
     }
     
+    /**
+     * Groups of XML files with identical content
+     */
+    @GetMapping("/files/duplicates")
+    public ResponseEntity<Map<String, Object>> getDuplicateFiles(
+            @RequestParam(required = false) String directoryPath) {
+        try {
+            Map<String, Object> result = xmlFileService.findDuplicateFiles(directoryPath);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            error.put("directoryPath", directoryPath);
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Failed to find duplicate files: " + e.getMessage());
+            error.put("directoryPath", directoryPath);
+            return ResponseEntity.status(500).body(error);
+        }
+    }
+    
     /**
      * Comprehensive XML analytics dashboard endpoint
      */
     @GetMapping("/dashboard/analytics")
     public ResponseEntity<Map<String, Object>> getXMLAnalyticsDashboard(
-            @RequestParam(required = false) String directoryPath) {
+            @RequestParam(required = false) String directoryPath,
+            @RequestParam(defaultValue = "false") boolean refresh) {
         try {
-            Map<String, Object> dashboard = new HashMap<>();
-            
-            // Get file summary
-            dashboard.put("fileSummary", xmlFileService.getXMLFilesSummary(directoryPath));
-            
-            // Get business metrics trends
-            dashboard.put("businessMetrics", xmlFileService.extractBusinessMetricsTrends(directoryPath));
-            
-            dashboard.put("dashboardType", "xml-analytics");
-            dashboard.put("directoryPath", directoryPath);
-            
+            Map<String, Object> dashboard = dashboardSnapshotService.getDashboard(
+                "xml.analytics", directoryPath != null ? Map.of("directoryPath", directoryPath) : Map.of(), refresh);
             return ResponseEntity.ok(dashboard);
         } catch (Exception e) {
             Map<String, Object> error = new HashMap<>();
@@ -177,37 +302,49 @@ public class XMLFileController {
     }
     
     /**
-     * Test XML parsing with sample data
+     * Compiled XPath cache statistics
+     */
+    @GetMapping("/xpath/cache")
+    public ResponseEntity<Map<String, Object>> getXPathCacheStatistics() {
+        return ResponseEntity.ok(xpathCache.getStatistics());
+    }
+    
+    /**
+     * Extraction index statistics (cached per-file results by directory)
+     */
+    @GetMapping("/index")
+    public ResponseEntity<Map<String, Object>> getExtractionIndexStatistics() {
+        return ResponseEntity.ok(extractionIndex.getStatistics());
+    }
+    
+    /**
+     * Live directory catalog status (tracked directories, watch events, reconcile corrections)
+     */
+    @GetMapping("/catalog")
+    public ResponseEntity<Map<String, Object>> getDirectoryCatalogStatistics() {
+        return ResponseEntity.ok(directoryCatalog.getStatistics());
+    }
+    
+    /**
+     * Parse XML content from the request body and evaluate an XPath expression against it
+     * ("xmlContent", optional "xpathExpression"); nothing is read from or written to disk.
+     * The body is read by the service so its size is checked before it is deserialized.
      */
     @PostMapping("/test/parse")
     public ResponseEntity<Map<String, Object>> testXMLParsing(
-            @RequestBody Map<String, String> request) {
+            @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength,
+            InputStream body) {
         try {
-            String xmlContent = request.get("xmlContent");
-            String xpathExpression = request.get("xpathExpression");
-            
-            if (xmlContent == null || xmlContent.trim().isEmpty()) {
-                Map<String, Object> error = new HashMap<>();
-                error.put("error", "XML content is required");
-                return ResponseEntity.badRequest().body(error);
-            }
-            
-            if (xpathExpression == null || xpathExpression.trim().isEmpty()) {
-                xpathExpression = "//*"; // Default to all elements
-            }
-            
-            // This would require a helper method in XMLFileService to parse XML content directly
-            Map<String, Object> result = new HashMap<>();
-            result.put("message", "XML parsing test endpoint - implement parseXMLContent method in service");
-            result.put("xmlContent", xmlContent);
-            result.put("xpathExpression", xpathExpression);
-            result.put("note", "This endpoint can be enhanced to parse XML content directly for testing");
-            
+            Map<String, Object> result = xmlFileService.parseXMLContentRequest(contentLength, body);
             return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
         } catch (Exception e) {
             Map<String, Object> error = new HashMap<>();
             error.put("error", "Failed to test XML parsing: " + e.getMessage());
             return ResponseEntity.status(500).body(error);
         }
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
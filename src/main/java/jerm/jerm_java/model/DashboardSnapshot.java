@@ -0,0 +1,43 @@
+package jerm.jerm_java.model;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable, precomputed dashboard result. A new snapshot replaces the old one
+ * wholesale, so readers never see a half-refreshed dashboard.
+ */
+public final class DashboardSnapshot {
+    private final String key;
+    private final Map<String, Object> data;
+    private final LocalDateTime computedAt;
+    private final long computeMillis;
+
+    public DashboardSnapshot(String key, Map<String, Object> data, LocalDateTime computedAt, long computeMillis) {
+        this.key = key;
+        this.data = Collections.unmodifiableMap(data);
+        this.computedAt = computedAt;
+        this.computeMillis = computeMillis;
+    }
+
+    // Getters
+    public String getKey() { return key; }
+
+    public Map<String, Object> getData() { return data; }
+
+    public LocalDateTime getComputedAt() { return computedAt; }
+
+    public long getComputeMillis() { return computeMillis; }
+
+    public long getAgeSeconds() {
+        return Duration.between(computedAt, LocalDateTime.now()).getSeconds();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DashboardSnapshot{key='%s', computedAt=%s, computeMillis=%d}",
+                           key, computedAt, computeMillis);
+    }
+}
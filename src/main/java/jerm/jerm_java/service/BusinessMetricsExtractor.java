@@ -0,0 +1,150 @@
+package jerm.jerm_java.service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-pass StAX visitor computing the per-file business metrics: root element, total
+ * element count, tag histogram and one counter per configured business tag (an element counts
+ * toward a tag when its lower-cased name contains the tag, e.g. "ErrorDetail" counts as an
+ * error). Each distinct tag name is lower-cased and matched against the business tags once,
+ * then kept in a shared name table, so the per-element work is a map lookup and a few increments.
+ */
+public final class BusinessMetricsExtractor {
+
+    // Distinct tag names remembered across files; beyond this, new names are resolved per file
+    private static final int MAX_NAMES = 10000;
+
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORIES = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
+
+    private final String[] tags;
+    private final String[] countKeys;
+    private final Map<String, TagName> names = new ConcurrentHashMap<>();
+
+    /**
+     * @param businessTags Tags to count, e.g. error, warning, config, record (reported as errorCount, ...)
+     */
+    public BusinessMetricsExtractor(Collection<String> businessTags) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String tag : businessTags) {
+            String trimmed = tag.trim().toLowerCase();
+            if (!trimmed.isEmpty()) {
+                distinct.add(trimmed);
+            }
+        }
+        this.tags = distinct.toArray(new String[0]);
+        this.countKeys = new String[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            countKeys[i] = tags[i] + "Count";
+        }
+    }
+
+    public List<String> getTags() {
+        return List.of(tags);
+    }
+
+    /**
+     * Check whether previously computed metrics were produced with the current business tags
+     */
+    public boolean isCurrent(Map<String, Object> metrics) {
+        Set<String> present = new HashSet<>();
+        for (String key : metrics.keySet()) {
+            if (key.endsWith("Count")) {
+                present.add(key);
+            }
+        }
+        return present.equals(new HashSet<>(Arrays.asList(countKeys)));
+    }
+
+    /**
+     * Stream a document once and compute its metrics
+     * @param input XML document
+     * @return rootElementName, totalElements, elementTypes and one &lt;tag&gt;Count per business tag
+     */
+    public Map<String, Object> extract(InputStream input) throws Exception {
+        XMLStreamReader reader = INPUT_FACTORIES.get().createXMLStreamReader(input);
+        String rootElementName = null;
+        int totalElements = 0;
+        int[] tagCounts = new int[tags.length];
+        Map<String, int[]> elementTypes = new HashMap<>();
+
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                TagName tagName = tagName(reader.getPrefix(), reader.getLocalName());
+                if (rootElementName == null) {
+                    rootElementName = tagName.name;
+                }
+                totalElements++;
+                elementTypes.computeIfAbsent(tagName.name, name -> new int[1])[0]++;
+                for (int tag : tagName.matchingTags) {
+                    tagCounts[tag]++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        Map<String, Integer> typeCounts = new HashMap<>();
+        for (Map.Entry<String, int[]> type : elementTypes.entrySet()) {
+            typeCounts.put(type.getKey(), type.getValue()[0]);
+        }
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("rootElementName", rootElementName);
+        metrics.put("totalElements", totalElements);
+        metrics.put("elementTypes", typeCounts);
+        for (int i = 0; i < tags.length; i++) {
+            metrics.put(countKeys[i], tagCounts[i]);
+        }
+        return metrics;
+    }
+
+    private TagName tagName(String prefix, String localName) {
+        String name = prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+        TagName tagName = names.get(name);
+        if (tagName == null) {
+            tagName = resolve(name);
+            if (names.size() < MAX_NAMES) {
+                TagName existing = names.putIfAbsent(tagName.name, tagName);
+                if (existing != null) {
+                    tagName = existing;
+                }
+            }
+        }
+        return tagName;
+    }
+
+    private TagName resolve(String name) {
+        String lowerName = name.toLowerCase();
+        int[] matches = new int[tags.length];
+        int matchCount = 0;
+        for (int i = 0; i < tags.length; i++) {
+            if (lowerName.contains(tags[i])) {
+                matches[matchCount++] = i;
+            }
+        }
+        return new TagName(name.intern(), Arrays.copyOf(matches, matchCount));
+    }
+
+    private static class TagName {
+        final String name;
+        final int[] matchingTags;
+
+        TagName(String name, int[] matchingTags) {
+            this.name = name;
+            this.matchingTags = matchingTags;
+        }
+    }
+}
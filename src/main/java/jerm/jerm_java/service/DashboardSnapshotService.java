@@ -0,0 +1,280 @@
+package jerm.jerm_java.service;
+
+import jerm.jerm_java.model.DashboardSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * Precomputes dashboards on cron schedules and serves the latest immutable snapshot.
+ *
+ * Each dashboard is registered with its default parameters; requests with exactly those
+ * parameters are answered from the snapshot, so their latency no longer depends on the size
+ * of the backing data and backend load is bounded by the schedule rather than by viewers.
+ * Any other parameters, or refresh=true, compute on demand as before.
+ */
+@Service
+public class DashboardSnapshotService {
+
+    @FunctionalInterface
+    public interface DashboardComputation {
+        Map<String, Object> compute(Map<String, Object> parameters) throws Exception;
+    }
+
+    @Autowired
+    private LogMessageService logMessageService;
+
+    @Autowired
+    private TestingHistoryService testingHistoryService;
+
+    @Autowired
+    private XMLFileService xmlFileService;
+
+    @Autowired
+    private GitService gitService;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${dashboard.snapshot.enabled:false}")
+    private boolean enabled;
+
+    @Value("${dashboard.snapshot.cron:0 */5 * * * *}")
+    private String defaultCron;
+
+    @Value("${dashboard.snapshot.dashboards:logs.system-monitoring,testing.trends.quick}")
+    private String enabledDashboards;
+
+    @Value("${dashboard.snapshot.threads:2}")
+    private int threads;
+
+    @Value("${dashboard.snapshot.initial.delay.seconds:15}")
+    private long initialDelaySeconds;
+
+    private final Map<String, DashboardDefinition> definitions = new LinkedHashMap<>();
+    private ThreadPoolTaskScheduler scheduler;
+
+    @PostConstruct
+    public void initialize() {
+        register("logs.system-monitoring", Map.of("daysBack", 1),
+            p -> logMessageService.getSystemMonitoringDashboard((Integer) p.get("daysBack")));
+        register("logs.user-analytics", Map.of("daysBack", 7),
+            p -> logMessageService.getUserAnalyticsDashboard((Integer) p.get("daysBack")));
+        register("logs.operations-overview", Map.of("daysBack", 7),
+            p -> logMessageService.getOperationsOverviewDashboard((Integer) p.get("daysBack")));
+        register("testing.trends", Map.of(),
+            p -> testingHistoryService.getTestingTrends((Integer) p.get("days")));
+        register("testing.trends.quick", Map.of(), p -> testingHistoryService.getTestingTrends(3));
+        register("testing.trends.extended", Map.of(), p -> testingHistoryService.getTestingTrends(14));
+        register("testing.trends.monthly", Map.of(), p -> testingHistoryService.getTestingTrends(30));
+        register("xml.analytics", Map.of(),
+            p -> xmlFileService.getXMLAnalyticsDashboard((String) p.get("directoryPath")));
+        register("git.dashboard", Map.of(),
+            p -> gitService.getGitDashboard((String) p.get("repositoryPath")));
+
+        if (!enabled) {
+            System.out.println("Dashboard snapshots disabled; dashboards are computed on demand");
+            return;
+        }
+
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(threads);
+        scheduler.setThreadNamePrefix("dashboard-snapshot-");
+        scheduler.initialize();
+
+        for (DashboardDefinition definition : definitions.values()) {
+            if (!definition.scheduled) {
+                continue;
+            }
+            scheduler.schedule(() -> refreshQuietly(definition), Instant.now().plusSeconds(initialDelaySeconds));
+            scheduler.schedule(() -> refreshQuietly(definition), new CronTrigger(definition.cron));
+            System.out.println("Dashboard snapshot scheduled: " + definition.name + " (" + definition.cron + ")");
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private void register(String name, Map<String, Object> defaultParameters, DashboardComputation computation) {
+        String cron = environment.getProperty("dashboard.snapshot.cron." + name, defaultCron);
+        if (!CronExpression.isValidExpression(cron)) {
+            System.err.println("Invalid snapshot cron for " + name + ": " + cron + "; using " + defaultCron);
+            cron = defaultCron;
+        }
+        boolean scheduled = "*".equals(enabledDashboards.trim())
+            || Arrays.stream(enabledDashboards.split(",")).map(String::trim).anyMatch(name::equals);
+        definitions.put(name, new DashboardDefinition(name, defaultParameters, cron, scheduled, computation));
+    }
+
+    /**
+     * Get a dashboard, from its snapshot when the parameters match the precomputed ones
+     * @param name Registered dashboard name
+     * @param parameters Request parameters (omit parameters that were not supplied)
+     * @param refresh Bypass the snapshot and recompute now
+     * @return Map containing the dashboard plus a "snapshot" block with its age
+     */
+    public Map<String, Object> getDashboard(String name, Map<String, Object> parameters, boolean refresh) throws Exception {
+        DashboardDefinition definition = definitions.get(name);
+        if (definition == null) {
+            throw new IllegalArgumentException("Unknown dashboard: " + name);
+        }
+
+        if (!enabled || !definition.scheduled || !definition.defaultParameters.equals(parameters)) {
+            long startTime = System.currentTimeMillis();
+            Map<String, Object> data = definition.computation.compute(parameters);
+            return withSnapshotInfo(data, null, false, System.currentTimeMillis() - startTime);
+        }
+
+        DashboardSnapshot snapshot = definition.snapshot;
+        if (refresh || snapshot == null) {
+            snapshot = refresh(definition);
+            return withSnapshotInfo(snapshot.getData(), snapshot, false, snapshot.getComputeMillis());
+        }
+        return withSnapshotInfo(snapshot.getData(), snapshot, true, 0);
+    }
+
+    /**
+     * Get a dashboard with its default (precomputed) parameters
+     * @param name Registered dashboard name
+     * @param refresh Bypass the snapshot and recompute now
+     * @return Map containing the dashboard plus a "snapshot" block with its age
+     */
+    public Map<String, Object> getDashboard(String name, boolean refresh) throws Exception {
+        DashboardDefinition definition = definitions.get(name);
+        if (definition == null) {
+            throw new IllegalArgumentException("Unknown dashboard: " + name);
+        }
+        return getDashboard(name, definition.defaultParameters, refresh);
+    }
+
+    /**
+     * Recompute a dashboard snapshot now
+     * @param name Registered dashboard name
+     * @return Map describing the new snapshot
+     */
+    public Map<String, Object> refreshSnapshot(String name) throws Exception {
+        DashboardDefinition definition = definitions.get(name);
+        if (definition == null) {
+            throw new IllegalArgumentException("Unknown dashboard: " + name);
+        }
+        refresh(definition);
+        return describe(definition);
+    }
+
+    /**
+     * List registered dashboards with their schedules and snapshot ages
+     * @return Map containing snapshot status for every dashboard
+     */
+    public Map<String, Object> getSnapshotStatus() {
+        List<Map<String, Object>> snapshots = new ArrayList<>();
+        for (DashboardDefinition definition : definitions.values()) {
+            snapshots.add(describe(definition));
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("snapshots", snapshots);
+        result.put("queryType", "dashboard_snapshots");
+        result.put("description", "Precomputed dashboard snapshots and their ages");
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+
+    private Map<String, Object> describe(DashboardDefinition definition) {
+        DashboardSnapshot snapshot = definition.snapshot;
+        Map<String, Object> info = new HashMap<>();
+        info.put("name", definition.name);
+        info.put("parameters", definition.defaultParameters);
+        info.put("cron", definition.cron);
+        info.put("scheduled", enabled && definition.scheduled);
+        info.put("hasSnapshot", snapshot != null);
+        if (snapshot != null) {
+            info.put("computedAt", snapshot.getComputedAt().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            info.put("ageSeconds", snapshot.getAgeSeconds());
+            info.put("computeMillis", snapshot.getComputeMillis());
+        }
+        info.put("lastError", definition.lastError);
+        return info;
+    }
+
+    private void refreshQuietly(DashboardDefinition definition) {
+        try {
+            refresh(definition);
+        } catch (Exception e) {
+            System.err.println("Dashboard snapshot " + definition.name + " failed: " + e.getMessage());
+        }
+    }
+
+    private DashboardSnapshot refresh(DashboardDefinition definition) throws Exception {
+        LocalDateTime requestedAt = LocalDateTime.now();
+        synchronized (definition) {
+            // Another thread finished a refresh while we waited; share its result
+            DashboardSnapshot current = definition.snapshot;
+            if (current != null && !current.getComputedAt().isBefore(requestedAt)) {
+                return current;
+            }
+
+            long startTime = System.currentTimeMillis();
+            try {
+                Map<String, Object> data = definition.computation.compute(definition.defaultParameters);
+                DashboardSnapshot snapshot = new DashboardSnapshot(definition.name, data, LocalDateTime.now(),
+                                                                   System.currentTimeMillis() - startTime);
+                definition.snapshot = snapshot;
+                definition.lastError = null;
+                return snapshot;
+            } catch (Exception e) {
+                // Keep serving the previous snapshot; its age tells the viewer it's stale
+                definition.lastError = e.getMessage();
+                throw e;
+            }
+        }
+    }
+
+    private Map<String, Object> withSnapshotInfo(Map<String, Object> data, DashboardSnapshot snapshot,
+                                                 boolean servedFromSnapshot, long computeMillis) {
+        Map<String, Object> result = new HashMap<>(data);
+        Map<String, Object> info = new HashMap<>();
+        info.put("servedFromSnapshot", servedFromSnapshot);
+        info.put("computeMillis", computeMillis);
+        if (snapshot != null) {
+            info.put("computedAt", snapshot.getComputedAt().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            info.put("ageSeconds", snapshot.getAgeSeconds());
+        }
+        result.put("snapshot", info);
+        return result;
+    }
+
+    private static class DashboardDefinition {
+        final String name;
+        final Map<String, Object> defaultParameters;
+        final String cron;
+        final boolean scheduled;
+        final DashboardComputation computation;
+        volatile DashboardSnapshot snapshot;
+        volatile String lastError;
+
+        DashboardDefinition(String name, Map<String, Object> defaultParameters, String cron, boolean scheduled,
+                            DashboardComputation computation) {
+            this.name = name;
+            this.defaultParameters = defaultParameters;
+            this.cron = cron;
+            this.scheduled = scheduled;
+            this.computation = computation;
+        }
+    }
+}
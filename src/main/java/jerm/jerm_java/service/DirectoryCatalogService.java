@@ -0,0 +1,495 @@
+package jerm.jerm_java.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Live in-memory catalog of the XML files under the directories the services read.
+ * Besides plain .xml files it tracks .xml.gz files and .zip archives, whose .xml entries are
+ * listed as files of their own (read from the archive's central directory once per version).
+ *
+ * A directory is scanned once on first request and then kept current from WatchService
+ * events, so listing it costs a map copy instead of a walk over the share. Network shares
+ * can drop or coalesce events (and report OVERFLOW), so every tracked directory is also
+ * rescanned on a fixed interval and the catalog reconciled against what is actually there.
+ * Directories that aren't queried for a while stop being tracked once xml.catalog.max.roots
+ * is exceeded.
+ */
+@Service
+public class DirectoryCatalogService {
+
+    @Value("${xml.catalog.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${xml.catalog.max.roots:16}")
+    private int maxRoots = 16;
+
+    @Value("${xml.catalog.reconcile.interval.ms:300000}")
+    private long reconcileIntervalMs = 300000;
+
+    @Value("${xml.catalog.scan.parallelism:4}")
+    private int scanParallelism = 4;
+
+    private final Map<String, TrackedRoot> roots = new LinkedHashMap<>(16, 0.75f, true);
+
+    // One watch key per directory, shared by every tracked root that covers it
+    private final Map<WatchKey, Set<TrackedRoot>> watchers = new ConcurrentHashMap<>();
+
+    private WatchService watchService;
+    private Thread watchThread;
+    private volatile boolean watchUnavailable;
+
+    /**
+     * Snapshot of one cataloged file
+     */
+    public static class CatalogEntry {
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+        private final long observedAt;
+        private volatile List<XMLSource> sources;
+
+        CatalogEntry(Path path, long size, long lastModified, long observedAt) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.observedAt = observedAt;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * The XML documents in this file: the file itself, or each .xml entry of a zip archive
+         */
+        public List<XMLSource> getSources() {
+            List<XMLSource> result = sources;
+            if (result == null) {
+                result = XMLSource.isZipName(path.getFileName().toString())
+                    ? zipEntries()
+                    : List.of(XMLSource.file(path, size, lastModified));
+                sources = result;
+            }
+            return result;
+        }
+
+        private List<XMLSource> zipEntries() {
+            List<XMLSource> entries = new ArrayList<>();
+            try (ZipFile zip = new ZipFile(path.toFile())) {
+                Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+                while (zipEntries.hasMoreElements()) {
+                    ZipEntry entry = zipEntries.nextElement();
+                    if (!entry.isDirectory() && XMLSource.isXmlName(entry.getName())) {
+                        entries.add(XMLSource.zipEntry(path, entry.getName(), entry.getSize(),
+                            entry.getTime() >= 0 ? entry.getTime() : lastModified));
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Skipping unreadable zip archive " + path + ": " + e.getMessage());
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * List the XML documents under a directory (plain, gzip-compressed and inside zip archives)
+     * @param directory Directory to list
+     * @param recursive Include subdirectories
+     * @return Current documents (unordered)
+     */
+    public List<XMLSource> listXmlSources(Path directory, boolean recursive) throws IOException {
+        return listXmlSources(directory, recursive, Long.MIN_VALUE);
+    }
+
+    /**
+     * List the XML documents under a directory whose file was modified at or after a cutoff
+     * @param modifiedSince Cutoff (epoch millis); for zip archives it applies to the archive file
+     */
+    public List<XMLSource> listXmlSources(Path directory, boolean recursive, long modifiedSince) throws IOException {
+        List<XMLSource> sources = new ArrayList<>();
+        for (CatalogEntry entry : listXmlFiles(directory, recursive, modifiedSince)) {
+            sources.addAll(entry.getSources());
+        }
+        return sources;
+    }
+
+    /**
+     * List the files under a directory that hold XML documents (.xml, .xml.gz and .zip)
+     * @param directory Directory to list
+     * @param recursive Include subdirectories
+     * @return Current catalog entries (unordered)
+     */
+    public List<CatalogEntry> listXmlFiles(Path directory, boolean recursive) throws IOException {
+        return listXmlFiles(directory, recursive, Long.MIN_VALUE);
+    }
+
+    /**
+     * List the files under a directory that hold XML documents and were modified at or after a cutoff.
+     * Uncataloged directories are pruned during the walk; cataloged ones are filtered in memory.
+     * @param modifiedSince Cutoff (epoch millis)
+     */
+    public List<CatalogEntry> listXmlFiles(Path directory, boolean recursive, long modifiedSince) throws IOException {
+        Path root = directory.toAbsolutePath().normalize();
+        if (!enabled) {
+            Map<Path, CatalogEntry> files = new ConcurrentHashMap<>();
+            scan(root, recursive, modifiedSince, files, null);
+            return new ArrayList<>(files.values());
+        }
+        TrackedRoot tracked = track(root, recursive);
+        try {
+            tracked.ensureLoaded();
+        } catch (IOException e) {
+            // Missing or unreadable directory: don't keep tracking it
+            synchronized (roots) {
+                roots.values().remove(tracked);
+            }
+            unwatch(tracked);
+            throw e;
+        }
+        List<CatalogEntry> entries = new ArrayList<>(tracked.files.size());
+        for (CatalogEntry entry : tracked.files.values()) {
+            if (entry.lastModified >= modifiedSince) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    public static boolean isXmlFile(Path path) {
+        return XMLSource.isCandidate(path);
+    }
+
+    /**
+     * Rescan every tracked directory; catches anything the watch events missed
+     */
+    @Scheduled(fixedDelayString = "${xml.catalog.reconcile.interval.ms:300000}",
+               initialDelayString = "${xml.catalog.reconcile.interval.ms:300000}")
+    public void reconcileScheduled() {
+        List<TrackedRoot> tracked;
+        synchronized (roots) {
+            tracked = new ArrayList<>(roots.values());
+        }
+        for (TrackedRoot root : tracked) {
+            if (root.loaded) {
+                root.reconcile("scheduled");
+            }
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        List<Map<String, Object>> rootStats = new ArrayList<>();
+        synchronized (roots) {
+            for (TrackedRoot root : roots.values()) {
+                rootStats.add(root.describe());
+            }
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("watchServiceAvailable", !watchUnavailable);
+        result.put("watchedDirectories", watchers.size());
+        result.put("maxRoots", maxRoots);
+        result.put("reconcileIntervalMs", reconcileIntervalMs);
+        result.put("scanParallelism", scanParallelism);
+        result.put("roots", rootStats);
+        result.put("queryType", "xml_directory_catalog");
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        synchronized (this) {
+            if (watchThread != null) {
+                watchThread.interrupt();
+            }
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    // Shutting down anyway
+                }
+            }
+        }
+    }
+
+    private TrackedRoot track(Path root, boolean recursive) {
+        String key = root + (recursive ? "|recursive" : "|flat");
+        TrackedRoot evicted = null;
+        TrackedRoot tracked;
+        synchronized (roots) {
+            tracked = roots.get(key);
+            if (tracked == null) {
+                tracked = new TrackedRoot(root, recursive);
+                roots.put(key, tracked);
+                if (roots.size() > maxRoots) {
+                    Iterator<TrackedRoot> eldest = roots.values().iterator();
+                    evicted = eldest.next();
+                    eldest.remove();
+                }
+            }
+        }
+        if (evicted != null) {
+            unwatch(evicted);
+            System.out.println("Directory catalog stopped tracking " + evicted.root);
+        }
+        return tracked;
+    }
+
+    private synchronized WatchService watchService() {
+        if (watchService == null && !watchUnavailable) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                watchThread = new Thread(this::watchLoop, "directory-catalog-watch");
+                watchThread.setDaemon(true);
+                watchThread.start();
+            } catch (IOException | UnsupportedOperationException e) {
+                watchUnavailable = true;
+                System.err.println("WatchService unavailable, directory catalog relies on reconciliation scans: " + e.getMessage());
+            }
+        }
+        return watchService;
+    }
+
+    private void watch(TrackedRoot root, Path directory) {
+        WatchService service = watchService();
+        if (service == null) {
+            return;
+        }
+        try {
+            WatchKey key = directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            watchers.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(root);
+            root.watchedKeys.add(key);
+        } catch (IOException | UnsupportedOperationException e) {
+            root.watchErrors.incrementAndGet();
+            System.err.println("Failed to watch " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void unwatch(TrackedRoot root) {
+        for (WatchKey key : root.watchedKeys) {
+            Set<TrackedRoot> owners = watchers.get(key);
+            if (owners != null) {
+                owners.remove(root);
+                if (owners.isEmpty()) {
+                    watchers.remove(key);
+                    key.cancel();
+                }
+            }
+        }
+        root.watchedKeys.clear();
+    }
+
+    private void watchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = (Path) key.watchable();
+            List<WatchEvent<?>> events = key.pollEvents();
+            Set<TrackedRoot> owners = watchers.getOrDefault(key, Set.of());
+
+            for (TrackedRoot root : owners) {
+                try {
+                    root.apply(directory, events);
+                } catch (RuntimeException e) {
+                    System.err.println("Directory catalog event handling failed for " + root.root + ": " + e.getMessage());
+                }
+            }
+
+            if (!key.reset()) {
+                // Directory deleted or no longer accessible
+                Set<TrackedRoot> removed = watchers.remove(key);
+                if (removed != null) {
+                    for (TrackedRoot root : removed) {
+                        root.watchedKeys.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Walk a directory collecting XML files; registers each directory visited when a root is given
+     */
+    private void scan(Path directory, boolean recursive, long modifiedSince,
+                      Map<Path, CatalogEntry> files, TrackedRoot root) throws IOException {
+        long observedAt = System.currentTimeMillis();
+        DirectoryScanner.of(directory)
+            .recursive(recursive)
+            .filter(XMLSource::isCandidate)
+            .modifiedSince(modifiedSince)
+            .parallelism(scanParallelism)
+            // Watch before listing, so a file created mid-scan shows up as an event
+            .onDirectory(root == null ? null : dir -> watch(root, dir))
+            .scan((file, attrs) -> files.put(file,
+                new CatalogEntry(file, attrs.size(), attrs.lastModifiedTime().toMillis(), observedAt)));
+    }
+
+    private class TrackedRoot {
+        private final Path root;
+        private final boolean recursive;
+        private final Map<Path, CatalogEntry> files = new ConcurrentHashMap<>();
+        private final Set<WatchKey> watchedKeys = ConcurrentHashMap.newKeySet();
+        private final AtomicLong eventsApplied = new AtomicLong();
+        private final AtomicLong overflows = new AtomicLong();
+        private final AtomicLong reconcileCorrections = new AtomicLong();
+        private final AtomicLong watchErrors = new AtomicLong();
+        private volatile boolean loaded;
+        private volatile long lastScanAt;
+        private volatile long lastScanMillis;
+        private volatile String lastScanError;
+
+        TrackedRoot(Path root, boolean recursive) {
+            this.root = root;
+            this.recursive = recursive;
+        }
+
+        void ensureLoaded() throws IOException {
+            if (loaded) {
+                return;
+            }
+            synchronized (this) {
+                if (!loaded) {
+                    Map<Path, CatalogEntry> scanned = new ConcurrentHashMap<>();
+                    long startTime = System.currentTimeMillis();
+                    scan(root, recursive, Long.MIN_VALUE, scanned, this);
+                    files.putAll(scanned);
+                    lastScanAt = System.currentTimeMillis();
+                    lastScanMillis = lastScanAt - startTime;
+                    loaded = true;
+                    System.out.println("Directory catalog tracking " + root + ": " + files.size() + " XML files in " + lastScanMillis + "ms");
+                }
+            }
+        }
+
+        synchronized void reconcile(String reason) {
+            long startTime = System.currentTimeMillis();
+            Map<Path, CatalogEntry> scanned = new ConcurrentHashMap<>();
+            try {
+                scan(root, recursive, Long.MIN_VALUE, scanned, this);
+            } catch (IOException e) {
+                lastScanError = e.getMessage();
+                System.err.println("Directory catalog reconcile failed for " + root + ": " + e.getMessage());
+                return;
+            }
+
+            int corrections = 0;
+            for (CatalogEntry entry : scanned.values()) {
+                CatalogEntry current = files.get(entry.path);
+                if (current == null || current.size != entry.size || current.lastModified != entry.lastModified) {
+                    // Keep whatever an event recorded after the scan started
+                    if (current == null || current.observedAt < startTime) {
+                        files.put(entry.path, entry);
+                        corrections++;
+                    }
+                }
+            }
+            for (CatalogEntry current : files.values()) {
+                if (!scanned.containsKey(current.path) && current.observedAt < startTime) {
+                    files.remove(current.path, current);
+                    corrections++;
+                }
+            }
+
+            reconcileCorrections.addAndGet(corrections);
+            lastScanAt = System.currentTimeMillis();
+            lastScanMillis = lastScanAt - startTime;
+            lastScanError = null;
+            if (corrections > 0) {
+                System.out.println("Directory catalog reconcile (" + reason + ") corrected " + corrections + " entries for " + root);
+            }
+        }
+
+        void apply(Path directory, List<WatchEvent<?>> events) {
+            for (WatchEvent<?> event : events) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflows.incrementAndGet();
+                    if (loaded) {
+                        reconcile("overflow");
+                    }
+                    return;
+                }
+                eventsApplied.incrementAndGet();
+                Path changed = directory.resolve((Path) event.context());
+
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    // Could be a file or a whole subdirectory
+                    files.remove(changed);
+                    if (recursive) {
+                        files.keySet().removeIf(path -> path.startsWith(changed));
+                    }
+                    continue;
+                }
+
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(changed, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // Already gone again
+                    files.remove(changed);
+                    continue;
+                }
+
+                if (attrs.isDirectory()) {
+                    if (recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        // New subtree: register it and pick up anything written before the watch existed
+                        Map<Path, CatalogEntry> scanned = new ConcurrentHashMap<>();
+                        try {
+                            scan(changed, true, Long.MIN_VALUE, scanned, this);
+                        } catch (IOException e) {
+                            lastScanError = e.getMessage();
+                        }
+                        files.putAll(scanned);
+                    }
+                } else if (attrs.isRegularFile() && isXmlFile(changed)) {
+                    files.put(changed, new CatalogEntry(changed, attrs.size(),
+                        attrs.lastModifiedTime().toMillis(), System.currentTimeMillis()));
+                }
+            }
+        }
+
+        Map<String, Object> describe() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("directoryPath", root.toString());
+            stats.put("recursive", recursive);
+            stats.put("loaded", loaded);
+            stats.put("xmlFiles", files.size());
+            stats.put("watchedDirectories", watchedKeys.size());
+            stats.put("eventsApplied", eventsApplied.get());
+            stats.put("overflows", overflows.get());
+            stats.put("reconcileCorrections", reconcileCorrections.get());
+            stats.put("watchErrors", watchErrors.get());
+            stats.put("lastScanAt", lastScanAt > 0 ? Instant.ofEpochMilli(lastScanAt).toString() : null);
+            stats.put("lastScanMillis", lastScanMillis);
+            stats.put("lastScanError", lastScanError);
+            return stats;
+        }
+    }
+}
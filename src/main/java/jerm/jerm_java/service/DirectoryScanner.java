@@ -0,0 +1,177 @@
+package jerm.jerm_java.service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Directory walk built on Files.walkFileTree, which hands each file's BasicFileAttributes to the
+ * visitor from the directory listing itself (on Windows/SMB that is the FindNextFile result), so
+ * size and modification time cost no extra round trip per file. Files are filtered by name
+ * (glob or predicate) and modification time during the walk, and the first-level subdirectories
+ * can be walked in parallel, which hides per-directory listing latency on network shares.
+ *
+ * Modification times only prune files: a directory's own mtime doesn't change when a file
+ * inside it is rewritten, so it can't be used to skip a subtree.
+ */
+public final class DirectoryScanner {
+
+    @FunctionalInterface
+    public interface FileHandler {
+        /**
+         * Called once per matching regular file; may be called from several threads when parallel
+         */
+        void onFile(Path file, BasicFileAttributes attributes);
+    }
+
+    private final Path root;
+    private boolean recursive = true;
+    private Predicate<Path> fileFilter = path -> true;
+    private long modifiedSince = Long.MIN_VALUE;
+    private int parallelism = 1;
+    private Consumer<Path> directoryHandler;
+
+    private DirectoryScanner(Path root) {
+        this.root = root;
+    }
+
+    public static DirectoryScanner of(Path root) {
+        return new DirectoryScanner(root);
+    }
+
+    public DirectoryScanner recursive(boolean recursive) {
+        this.recursive = recursive;
+        return this;
+    }
+
+    /**
+     * Only report files whose name matches a glob, e.g. "*.{xml,zip}"
+     */
+    public DirectoryScanner glob(String pattern) {
+        PathMatcher matcher = root.getFileSystem().getPathMatcher("glob:" + pattern);
+        return filter(path -> path.getFileName() != null && matcher.matches(path.getFileName()));
+    }
+
+    /**
+     * Only report files the predicate accepts (checked on the path, before anything else)
+     */
+    public DirectoryScanner filter(Predicate<Path> fileFilter) {
+        this.fileFilter = fileFilter;
+        return this;
+    }
+
+    /**
+     * Only report files modified at or after this time (epoch millis)
+     */
+    public DirectoryScanner modifiedSince(long modifiedSince) {
+        this.modifiedSince = modifiedSince;
+        return this;
+    }
+
+    /**
+     * Walk up to this many first-level subdirectories at once (1 walks everything on the calling thread)
+     */
+    public DirectoryScanner parallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * Called for every directory before its entries are listed
+     */
+    public DirectoryScanner onDirectory(Consumer<Path> directoryHandler) {
+        this.directoryHandler = directoryHandler;
+        return this;
+    }
+
+    /**
+     * Walk the tree; fails only if the root itself can't be read (unreadable subdirectories and
+     * files deleted mid-walk are skipped)
+     */
+    public void scan(FileHandler handler) throws IOException {
+        boolean parallel = recursive && parallelism > 1;
+        List<Path> subtrees = new ArrayList<>();
+        walk(root, recursive ? Integer.MAX_VALUE : 1, handler, parallel ? subtrees : null);
+        if (subtrees.isEmpty()) {
+            return;
+        }
+        if (subtrees.size() == 1) {
+            walk(subtrees.get(0), Integer.MAX_VALUE, handler, null);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, subtrees.size()), runnable -> {
+            Thread thread = new Thread(runnable, "directory-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> walks = new ArrayList<>();
+            for (Path subtree : subtrees) {
+                walks.add(executor.submit(() -> {
+                    walk(subtree, Integer.MAX_VALUE, handler, null);
+                    return null;
+                }));
+            }
+            for (Future<?> walk : walks) {
+                try {
+                    walk.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IllegalStateException("Directory scan failed under " + root, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Directory scan interrupted: " + root, e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param subtrees When given, first-level subdirectories are collected here instead of walked
+     */
+    private void walk(Path start, int maxDepth, FileHandler handler, List<Path> subtrees) throws IOException {
+        Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (subtrees != null && !dir.equals(start)) {
+                    subtrees.add(dir);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (directoryHandler != null) {
+                    directoryHandler.accept(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && fileFilter.test(file)
+                        && attrs.lastModifiedTime().toMillis() >= modifiedSince) {
+                    handler.onFile(file, attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (file.equals(root)) {
+                    throw e;
+                }
+                // Unreadable subdirectory (including a parallel subtree) or a file deleted mid-walk
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,700 @@
+package jerm.jerm_java.service;
+
+import jerm.jerm_java.model.SqlServerConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the LogMessageService reports against every configured WMS SQL Server in parallel
+ * and merges the partial results, so a network-wide view costs the slowest site rather than
+ * the sum of all of them.
+ *
+ * Merging rules: counts and sums add up, top-K lists are re-ranked from an oversampled
+ * per-site top-K, and distinct counts are merged from per-site HyperLogLog sketches (a
+ * COUNT(DISTINCT) per site can't be added across sites without double counting).
+ *
+ * Sites are configured as:
+ *   federation.sites=fc1,fc2
+ *   federation.site.fc1.host=..., .port, .database, .username, .password,
+ *   .integrated-security, .pool.size, .timeout.seconds
+ */
+@Service
+public class FederatedLogService {
+
+    @Autowired
+    private SqlServerConnectionManager connectionManager;
+
+    @Autowired
+    private LogMessageService logMessageService;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${federation.sites:}")
+    private String siteNames;
+
+    @Value("${federation.include.default:true}")
+    private boolean includeDefaultSite;
+
+    @Value("${federation.default.site.name:default}")
+    private String defaultSiteName;
+
+    @Value("${federation.timeout.seconds:30}")
+    private int defaultTimeoutSeconds;
+
+    @Value("${federation.pool.size:4}")
+    private int defaultPoolSize;
+
+    @Value("${federation.topk.oversample:3}")
+    private int topKOversample;
+
+    @Value("${federation.hll.precision:12}")
+    private int hllPrecision;
+
+    private final List<Site> sites = new ArrayList<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void initialize() {
+        if (includeDefaultSite) {
+            sites.add(new Site(defaultSiteName, connectionManager, null, defaultTimeoutSeconds, false));
+        }
+
+        for (String name : siteNames.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            String prefix = "federation.site." + name + ".";
+            String host = environment.getProperty(prefix + "host");
+            if (host == null || host.isEmpty()) {
+                System.err.println("Federated site " + name + " skipped: " + prefix + "host is not set");
+                continue;
+            }
+
+            SqlServerConfig config = new SqlServerConfig(name, host,
+                environment.getProperty(prefix + "port", Integer.class, 1433),
+                environment.getProperty(prefix + "database", "master"),
+                environment.getProperty(prefix + "username", ""),
+                environment.getProperty(prefix + "password", ""));
+            config.setIntegratedSecurity(environment.getProperty(prefix + "integrated-security", Boolean.class, false));
+
+            int poolSize = environment.getProperty(prefix + "pool.size", Integer.class, defaultPoolSize);
+            int timeoutSeconds = environment.getProperty(prefix + "timeout.seconds", Integer.class, defaultTimeoutSeconds);
+            SqlServerConnectionManager siteManager = new SqlServerConnectionManager(config, poolSize, timeoutSeconds);
+            sites.add(new Site(name, siteManager, config, timeoutSeconds, true));
+            System.out.println("Federated site registered: " + config);
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "federation-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+        for (Site site : sites) {
+            if (site.owned) {
+                site.manager.destroy();
+            }
+        }
+    }
+
+    /**
+     * Describe the configured sites
+     * @return Map containing site configuration
+     */
+    public Map<String, Object> getSites() {
+        List<Map<String, Object>> siteInfo = new ArrayList<>();
+        for (Site site : sites) {
+            Map<String, Object> info = new HashMap<>();
+            info.put("name", site.name);
+            info.put("configuration", site.config != null ? site.config.toString() : "default connection (DB_* environment)");
+            info.put("timeoutSeconds", site.timeoutSeconds);
+            siteInfo.add(info);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("sites", siteInfo);
+        result.put("siteCount", sites.size());
+        result.put("queryType", "federated_sites");
+        result.put("description", "WMS SQL Server instances included in federated log queries");
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+
+    /**
+     * Recent database errors from every site, merged newest first
+     * @param daysBack Number of days to look back
+     * @param limit Maximum rows to return overall
+     */
+    public Map<String, Object> getRecentDatabaseErrors(int daysBack, int limit) throws Exception {
+        List<String> conditions = List.of(logMessageService.recentDatabaseErrorsFilter(daysBack));
+        Map<String, Object> result = mergeLatestRows(conditions, limit);
+        result.put("queryType", "federated_recent_database_errors");
+        result.put("daysBack", daysBack);
+        result.put("description", "Recent database execution errors from t_log_message across all sites");
+        return result;
+    }
+
+    /**
+     * Search log messages on every site, merged newest first
+     * @param searchCriteria Same criteria as LogMessageService.searchLogMessages
+     * @param limit Maximum rows to return overall
+     */
+    public Map<String, Object> searchLogMessages(Map<String, Object> searchCriteria, int limit) throws Exception {
+        Map<String, Object> result = mergeLatestRows(logMessageService.searchConditions(searchCriteria), limit);
+        result.put("queryType", "federated_search_log_messages");
+        result.put("searchCriteria", searchCriteria);
+        result.put("description", "Filtered log messages across all sites");
+        return result;
+    }
+
+    private Map<String, Object> mergeLatestRows(List<String> conditions, int limit) throws Exception {
+        StringBuilder sql = new StringBuilder("""
+            SELECT TOP %d
+                logged_on_utc,
+                logged_on_local,
+                machine_id,
+                user_id,
+                resource_name,
+                details,
+                call_stack,
+                arguments
+            FROM ADV.dbo.t_log_message WITH (NOLOCK)
+            WHERE 1=1""".formatted(limit));
+        for (String condition : conditions) {
+            sql.append(" AND ").append(condition);
+        }
+        sql.append(" ORDER BY logged_on_utc DESC");
+
+        long startTime = System.currentTimeMillis();
+        List<SiteOutcome<List<Map<String, Object>>>> outcomes = runOnAllSites(site -> readRows(site, sql.toString()));
+
+        // Each site is already sorted and capped, so the global top rows are among them
+        List<Map<String, Object>> merged = new ArrayList<>();
+        for (SiteOutcome<List<Map<String, Object>>> outcome : outcomes) {
+            if (outcome.value != null) {
+                merged.addAll(outcome.value);
+            }
+        }
+        merged.sort((a, b) -> compareTimestamps((Timestamp) b.get("logged_on_utc"), (Timestamp) a.get("logged_on_utc")));
+        List<Map<String, Object>> rows = merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+
+        List<String> columns = List.of("site", "logged_on_utc", "logged_on_local", "machine_id", "user_id",
+                                       "resource_name", "details", "call_stack", "arguments");
+        Map<String, Object> result = federatedResult(outcomes, columns, rows, startTime);
+        result.put("hasMoreRows", merged.size() > limit);
+        return result;
+    }
+
+    /**
+     * Daily message counts by resource type, summed across sites
+     * @param daysBack Number of days to analyze
+     */
+    public Map<String, Object> getDailySummaryByResourceType(int daysBack) throws Exception {
+        String sql = logMessageService.dailySummaryByResourceTypeSql(daysBack);
+        long startTime = System.currentTimeMillis();
+        List<SiteOutcome<List<Map<String, Object>>>> outcomes = runOnAllSites(site -> readRows(site, sql));
+
+        Map<List<Object>, Long> counts = new HashMap<>();
+        for (SiteOutcome<List<Map<String, Object>>> outcome : outcomes) {
+            if (outcome.value == null) {
+                continue;
+            }
+            for (Map<String, Object> row : outcome.value) {
+                List<Object> key = Arrays.asList(dateString(row.get("log_date")), row.get("resource_name"));
+                counts.merge(key, toLong(row.get("message_count")), Long::sum);
+            }
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<List<Object>, Long> entry : counts.entrySet()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("log_date", entry.getKey().get(0));
+            row.put("resource_name", entry.getKey().get(1));
+            row.put("message_count", entry.getValue());
+            rows.add(row);
+        }
+        rows.sort(Comparator.comparing((Map<String, Object> r) -> String.valueOf(r.get("log_date"))).reversed()
+            .thenComparing(r -> (Long) r.get("message_count"), Comparator.reverseOrder()));
+
+        Map<String, Object> result = federatedResult(outcomes, List.of("log_date", "resource_name", "message_count"), rows, startTime);
+        result.put("queryType", "federated_daily_summary_by_resource");
+        result.put("daysBack", daysBack);
+        result.put("description", "Daily summary of log messages grouped by resource type across all sites");
+        return result;
+    }
+
+    /**
+     * Hourly error counts, summed across sites
+     * @param daysBack Number of days to analyze
+     */
+    public Map<String, Object> getHourlyErrorTrends(int daysBack) throws Exception {
+        String sql = logMessageService.hourlyErrorTrendsSql(daysBack);
+        long startTime = System.currentTimeMillis();
+        List<SiteOutcome<List<Map<String, Object>>>> outcomes = runOnAllSites(site -> readRows(site, sql));
+
+        long[] errorCounts = new long[24];
+        for (SiteOutcome<List<Map<String, Object>>> outcome : outcomes) {
+            if (outcome.value == null) {
+                continue;
+            }
+            for (Map<String, Object> row : outcome.value) {
+                errorCounts[((Number) row.get("hour_of_day")).intValue()] += toLong(row.get("error_count"));
+            }
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int hour = 0; hour < 24; hour++) {
+            if (errorCounts[hour] > 0) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("hour_of_day", hour);
+                row.put("error_count", errorCounts[hour]);
+                rows.add(row);
+            }
+        }
+
+        Map<String, Object> result = federatedResult(outcomes, List.of("hour_of_day", "error_count"), rows, startTime);
+        result.put("queryType", "federated_hourly_error_trends");
+        result.put("daysBack", daysBack);
+        result.put("description", "Hourly error trends across all sites");
+        return result;
+    }
+
+    /**
+     * Top users by activity, re-ranked from an oversampled top-K per site
+     * @param daysBack Number of days to analyze
+     * @param topCount Number of users to return
+     */
+    public Map<String, Object> getTopUsersByActivity(int daysBack, int topCount) throws Exception {
+        int perSiteCount = topCount * Math.max(topKOversample, 1);
+        String sql = logMessageService.topUsersByActivitySql(daysBack, perSiteCount);
+        long startTime = System.currentTimeMillis();
+        List<SiteOutcome<List<Map<String, Object>>>> outcomes = runOnAllSites(site -> readRows(site, sql));
+
+        Map<Object, Map<String, Object>> users = new HashMap<>();
+        boolean truncatedSite = false;
+        for (SiteOutcome<List<Map<String, Object>>> outcome : outcomes) {
+            if (outcome.value == null) {
+                continue;
+            }
+            truncatedSite |= outcome.value.size() >= perSiteCount;
+            for (Map<String, Object> row : outcome.value) {
+                Map<String, Object> merged = users.computeIfAbsent(row.get("user_id"), u -> {
+                    Map<String, Object> user = new LinkedHashMap<>();
+                    user.put("user_id", u);
+                    user.put("activity_count", 0L);
+                    return user;
+                });
+                merged.put("activity_count", (Long) merged.get("activity_count") + toLong(row.get("activity_count")));
+                merged.merge("first_activity", row.get("first_activity"),
+                    (a, b) -> compareTimestamps((Timestamp) a, (Timestamp) b) <= 0 ? a : b);
+                merged.merge("last_activity", row.get("last_activity"),
+                    (a, b) -> compareTimestamps((Timestamp) a, (Timestamp) b) >= 0 ? a : b);
+            }
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>(users.values());
+        rows.sort(Comparator.comparing((Map<String, Object> r) -> (Long) r.get("activity_count")).reversed());
+        if (rows.size() > topCount) {
+            rows = new ArrayList<>(rows.subList(0, topCount));
+        }
+
+        Map<String, Object> result = federatedResult(outcomes,
+            List.of("user_id", "activity_count", "first_activity", "last_activity"), rows, startTime);
+        result.put("queryType", "federated_top_users_by_activity");
+        result.put("daysBack", daysBack);
+        result.put("topCount", topCount);
+        result.put("perSiteCandidates", perSiteCount);
+        // A user just outside every site's candidate list could still belong in the global top-K
+        result.put("rankingExact", !truncatedSite);
+        result.put("description", "Most active users across all sites");
+        return result;
+    }
+
+    /**
+     * Activity by hour with unique users merged from per-site HyperLogLog sketches
+     * @param daysBack Number of days to analyze
+     */
+    public Map<String, Object> getUserActivityByHour(int daysBack) throws Exception {
+        String sql = """
+            SELECT
+                DATEPART(hour, logged_on_local) as hour_of_day,
+                user_id,
+                COUNT(*) as activities
+            FROM ADV.dbo.t_log_message WITH (NOLOCK)
+            WHERE logged_on_utc >= DATEADD(day, %d, GETUTCDATE())
+            GROUP BY DATEPART(hour, logged_on_local), user_id
+            """.formatted(-daysBack);
+
+        long startTime = System.currentTimeMillis();
+        List<SiteOutcome<HourlyActivity>> outcomes = runOnAllSites(site -> {
+            HourlyActivity activity = new HourlyActivity(hllPrecision);
+            site.manager.streamQuery(sql, List.of(), 1000, site.timeoutSeconds, rs -> {
+                int hour = rs.getInt("hour_of_day");
+                activity.users[hour].add(rs.getString("user_id"));
+                activity.totals[hour] += rs.getLong("activities");
+            });
+            return activity;
+        });
+
+        HourlyActivity merged = new HourlyActivity(hllPrecision);
+        for (SiteOutcome<HourlyActivity> outcome : outcomes) {
+            if (outcome.value != null) {
+                merged.merge(outcome.value);
+            }
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int hour = 0; hour < 24; hour++) {
+            if (merged.totals[hour] > 0) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("hour_of_day", hour);
+                row.put("unique_users", merged.users[hour].estimate());
+                row.put("total_activities", merged.totals[hour]);
+                rows.add(row);
+            }
+        }
+
+        Map<String, Object> result = federatedResult(outcomes,
+            List.of("hour_of_day", "unique_users", "total_activities"), rows, startTime);
+        result.put("queryType", "federated_user_activity_by_hour");
+        result.put("daysBack", daysBack);
+        result.put("distinctCountMethod", "hyperloglog");
+        result.put("distinctCountRelativeError", merged.users[0].relativeStandardError());
+        result.put("description", "User activity patterns throughout the day across all sites");
+        return result;
+    }
+
+    /**
+     * Last-hour health metrics; unique users and machines merged from sketches
+     */
+    public Map<String, Object> getSystemHealthSummary() throws Exception {
+        String sql = """
+            SELECT
+                user_id,
+                machine_id,
+                GROUPING(user_id) as machine_row,
+                COUNT(*) as message_count,
+                COUNT(CASE WHEN resource_name LIKE '%ERROR%' THEN 1 END) as error_count
+            FROM ADV.dbo.t_log_message WITH (NOLOCK)
+            WHERE logged_on_utc >= DATEADD(hour, -1, GETUTCDATE())
+            GROUP BY GROUPING SETS ((user_id), (machine_id))
+            """;
+
+        long startTime = System.currentTimeMillis();
+        List<SiteOutcome<VolumeAggregate>> outcomes = runOnAllSites(site -> {
+            VolumeAggregate aggregate = new VolumeAggregate(hllPrecision);
+            site.manager.streamQuery(sql, List.of(), 1000, site.timeoutSeconds, aggregate::add);
+            return aggregate;
+        });
+
+        VolumeAggregate merged = new VolumeAggregate(hllPrecision);
+        for (SiteOutcome<VolumeAggregate> outcome : outcomes) {
+            if (outcome.value != null) {
+                merged.merge(outcome.value);
+            }
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        rows.add(metricRow("Database Errors", merged.errors));
+        rows.add(metricRow("Total Messages", merged.total));
+        rows.add(metricRow("Unique Users (Last Hour)", merged.users.estimate()));
+        rows.add(metricRow("Unique Machines (Last Hour)", merged.machines.estimate()));
+
+        Map<String, Object> result = federatedResult(outcomes, List.of("metric", "count"), rows, startTime);
+        result.put("queryType", "federated_system_health_summary");
+        result.put("distinctCountMethod", "hyperloglog");
+        result.put("distinctCountRelativeError", merged.users.relativeStandardError());
+        result.put("description", "Current system health metrics for the last hour across all sites");
+        return result;
+    }
+
+    /**
+     * Daily volume trends; unique users and machines per day merged from sketches
+     * @param daysBack Number of days to analyze
+     */
+    public Map<String, Object> getDailyVolumeTrends(int daysBack) throws Exception {
+        String sql = """
+            SELECT
+                CAST(logged_on_local AS DATE) as log_date,
+                user_id,
+                machine_id,
+                GROUPING(user_id) as machine_row,
+                COUNT(*) as message_count,
+                COUNT(CASE WHEN resource_name LIKE '%%ERROR%%' THEN 1 END) as error_count
+            FROM ADV.dbo.t_log_message WITH (NOLOCK)
+            WHERE logged_on_utc >= DATEADD(day, %d, GETUTCDATE())
+            GROUP BY GROUPING SETS (
+                (CAST(logged_on_local AS DATE), user_id),
+                (CAST(logged_on_local AS DATE), machine_id))
+            """.formatted(-daysBack);
+
+        long startTime = System.currentTimeMillis();
+        List<SiteOutcome<Map<String, VolumeAggregate>>> outcomes = runOnAllSites(site -> {
+            Map<String, VolumeAggregate> days = new HashMap<>();
+            site.manager.streamQuery(sql, List.of(), 1000, site.timeoutSeconds, rs ->
+                days.computeIfAbsent(dateString(rs.getDate("log_date")), d -> new VolumeAggregate(hllPrecision)).add(rs));
+            return days;
+        });
+
+        Map<String, VolumeAggregate> merged = new TreeMap<>(Comparator.reverseOrder());
+        for (SiteOutcome<Map<String, VolumeAggregate>> outcome : outcomes) {
+            if (outcome.value == null) {
+                continue;
+            }
+            for (Map.Entry<String, VolumeAggregate> entry : outcome.value.entrySet()) {
+                merged.computeIfAbsent(entry.getKey(), d -> new VolumeAggregate(hllPrecision)).merge(entry.getValue());
+            }
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<String, VolumeAggregate> entry : merged.entrySet()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("log_date", entry.getKey());
+            row.put("total_messages", entry.getValue().total);
+            row.put("unique_users", entry.getValue().users.estimate());
+            row.put("unique_machines", entry.getValue().machines.estimate());
+            row.put("error_count", entry.getValue().errors);
+            rows.add(row);
+        }
+
+        Map<String, Object> result = federatedResult(outcomes,
+            List.of("log_date", "total_messages", "unique_users", "unique_machines", "error_count"), rows, startTime);
+        result.put("queryType", "federated_daily_volume_trends");
+        result.put("daysBack", daysBack);
+        result.put("distinctCountMethod", "hyperloglog");
+        result.put("distinctCountRelativeError", new HyperLogLog(hllPrecision).relativeStandardError());
+        result.put("description", "Daily volume trends across all sites");
+        return result;
+    }
+
+    // Parallel execution
+
+    @FunctionalInterface
+    private interface SiteQuery<T> {
+        T run(Site site) throws Exception;
+    }
+
+    private <T> List<SiteOutcome<T>> runOnAllSites(SiteQuery<T> query) {
+        if (sites.isEmpty()) {
+            throw new IllegalStateException("No federated sites configured (set federation.sites)");
+        }
+
+        long startNanos = System.nanoTime();
+        List<Future<T>> futures = new ArrayList<>();
+        long[] finishedNanos = new long[sites.size()];
+        for (int i = 0; i < sites.size(); i++) {
+            Site site = sites.get(i);
+            int index = i;
+            futures.add(executor.submit(() -> {
+                try {
+                    return query.run(site);
+                } finally {
+                    finishedNanos[index] = System.nanoTime();
+                }
+            }));
+        }
+
+        List<SiteOutcome<T>> outcomes = new ArrayList<>();
+        for (int i = 0; i < sites.size(); i++) {
+            Site site = sites.get(i);
+            SiteOutcome<T> outcome = new SiteOutcome<>(site.name);
+            long deadline = startNanos + TimeUnit.SECONDS.toNanos(site.timeoutSeconds);
+            try {
+                outcome.value = futures.get(i).get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                outcome.success = true;
+                outcome.latencyMillis = TimeUnit.NANOSECONDS.toMillis(finishedNanos[i] - startNanos);
+            } catch (TimeoutException e) {
+                // Interrupting the worker doesn't stop JDBC; the site's statement timeout ends the query on the server
+                futures.get(i).cancel(true);
+                outcome.error = "Timed out after " + site.timeoutSeconds + " seconds";
+                outcome.latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            } catch (ExecutionException e) {
+                outcome.error = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                outcome.latencyMillis = TimeUnit.NANOSECONDS.toMillis(finishedNanos[i] - startNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.get(i).cancel(true);
+                outcome.error = "Interrupted";
+            }
+            outcomes.add(outcome);
+        }
+        return outcomes;
+    }
+
+    private List<Map<String, Object>> readRows(Site site, String sql) throws Exception {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        site.manager.streamQuery(sql, List.of(), 1000, site.timeoutSeconds, rs -> {
+            ResultSetMetaData metaData = rs.getMetaData();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("site", site.name);
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                row.put(metaData.getColumnName(i), rs.getObject(i));
+            }
+            rows.add(row);
+        });
+        return rows;
+    }
+
+    private Map<String, Object> federatedResult(List<? extends SiteOutcome<?>> outcomes, List<String> columns,
+                                                List<Map<String, Object>> rows, long startTime) {
+        List<Map<String, Object>> siteResults = new ArrayList<>();
+        long slowestSite = 0;
+        int succeeded = 0;
+        for (SiteOutcome<?> outcome : outcomes) {
+            Map<String, Object> siteResult = new HashMap<>();
+            siteResult.put("site", outcome.siteName);
+            siteResult.put("success", outcome.success);
+            siteResult.put("latencyMillis", outcome.latencyMillis);
+            if (outcome.error != null) {
+                siteResult.put("error", outcome.error);
+            }
+            siteResults.add(siteResult);
+            slowestSite = Math.max(slowestSite, outcome.latencyMillis);
+            if (outcome.success) {
+                succeeded++;
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", succeeded > 0);
+        result.put("federated", true);
+        result.put("complete", succeeded == outcomes.size());
+        result.put("sites", siteResults);
+        result.put("sitesQueried", outcomes.size());
+        result.put("sitesSucceeded", succeeded);
+        result.put("slowestSiteMillis", slowestSite);
+        result.put("executionTime", System.currentTimeMillis() - startTime);
+        result.put("columns", columns);
+        result.put("data", rows);
+        result.put("rowCount", rows.size());
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+
+    // Helpers
+
+    private Map<String, Object> metricRow(String metric, long count) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("metric", metric);
+        row.put("count", count);
+        return row;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    private static String dateString(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).toLocalDate().toString();
+        }
+        return String.valueOf(value);
+    }
+
+    private static int compareTimestamps(Timestamp a, Timestamp b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static class Site {
+        final String name;
+        final SqlServerConnectionManager manager;
+        final SqlServerConfig config;
+        final int timeoutSeconds;
+        final boolean owned;
+
+        Site(String name, SqlServerConnectionManager manager, SqlServerConfig config, int timeoutSeconds, boolean owned) {
+            this.name = name;
+            this.manager = manager;
+            this.config = config;
+            this.timeoutSeconds = timeoutSeconds;
+            this.owned = owned;
+        }
+    }
+
+    private static class SiteOutcome<T> {
+        final String siteName;
+        T value;
+        boolean success;
+        String error;
+        long latencyMillis;
+
+        SiteOutcome(String siteName) {
+            this.siteName = siteName;
+        }
+    }
+
+    private static class HourlyActivity {
+        final HyperLogLog[] users = new HyperLogLog[24];
+        final long[] totals = new long[24];
+
+        HourlyActivity(int precision) {
+            for (int hour = 0; hour < 24; hour++) {
+                users[hour] = new HyperLogLog(precision);
+            }
+        }
+
+        void merge(HourlyActivity other) {
+            for (int hour = 0; hour < 24; hour++) {
+                users[hour].merge(other.users[hour]);
+                totals[hour] += other.totals[hour];
+            }
+        }
+    }
+
+    /**
+     * Partial aggregate fed by GROUPING SETS ((..., user_id), (..., machine_id)) rows:
+     * user rows carry the counts, machine rows only feed the machine sketch
+     */
+    private static class VolumeAggregate {
+        final HyperLogLog users;
+        final HyperLogLog machines;
+        long total;
+        long errors;
+
+        VolumeAggregate(int precision) {
+            users = new HyperLogLog(precision);
+            machines = new HyperLogLog(precision);
+        }
+
+        void add(ResultSet rs) throws Exception {
+            if (rs.getInt("machine_row") == 1) {
+                machines.add(rs.getString("machine_id"));
+            } else {
+                users.add(rs.getString("user_id"));
+                total += rs.getLong("message_count");
+                errors += rs.getLong("error_count");
+            }
+        }
+
+        void merge(VolumeAggregate other) {
+            users.merge(other.users);
+            machines.merge(other.machines);
+            total += other.total;
+            errors += other.errors;
+        }
+    }
+}
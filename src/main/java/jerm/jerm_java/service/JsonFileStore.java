@@ -0,0 +1,116 @@
+package jerm.jerm_java.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * One kind of JSON state file kept on local disk (extraction index, metrics history, test case
+ * history, mirror manifest). Files carry a format version: one written in another version, or for
+ * another directory, is ignored and rebuilt rather than migrated. Saves go through a temp file and
+ * an atomic move, so a crash never leaves a half-written file behind.
+ */
+public final class JsonFileStore<T extends JsonFileStore.Stored> {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * Base of the on-disk forms
+     */
+    public abstract static class Stored {
+        public int version;
+    }
+
+    private final String description;
+    private final Class<T> type;
+    private final int formatVersion;
+    private final Function<T, String> summary;
+
+    /**
+     * @param description What the files hold, for log messages (e.g. "XML extraction index")
+     * @param type On-disk form
+     * @param formatVersion Current format version
+     * @param summary Short description of a loaded file's size for the log (e.g. "12 runs"),
+     *                or null when the caller logs loads itself
+     */
+    public JsonFileStore(String description, Class<T> type, int formatVersion, Function<T, String> summary) {
+        this.description = description;
+        this.type = type;
+        this.formatVersion = formatVersion;
+        this.summary = summary;
+    }
+
+    /**
+     * File kept under a store directory for a root path, named after the path's hash
+     */
+    public static Path fileFor(String storeDirectory, String rootPath) {
+        return Paths.get(storeDirectory, sha256(rootPath).substring(0, 32) + ".json");
+    }
+
+    /**
+     * Read a stored file
+     * @param file File to read
+     * @param owned Whether the content belongs to the caller (e.g. was written for the same root path)
+     * @return The content, or null when the file is missing, unreadable, of another format version or not owned
+     */
+    public T load(Path file, Predicate<T> owned) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            T stored = OBJECT_MAPPER.readValue(file.toFile(), type);
+            if (stored.version != formatVersion || !owned.test(stored)) {
+                return null;
+            }
+            if (summary != null) {
+                System.out.println(description + " loaded from " + file + ": " + summary.apply(stored));
+            }
+            return stored;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable " + description + " " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write a file in the current format version
+     * @return Whether the file was written
+     */
+    public boolean save(Path file, T content) {
+        content.version = formatVersion;
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            OBJECT_MAPPER.writeValue(temp.toFile(), content);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to save " + description + " " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public static String sha256(String text) {
+        return HexFormat.of().formatHex(sha256Digest().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
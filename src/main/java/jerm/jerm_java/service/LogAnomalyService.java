@@ -0,0 +1,417 @@
+package jerm.jerm_java.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PreDestroy;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Online anomaly detection over hourly error counts.
+ *
+ * Keeps an EWMA mean and variance per resource_name and local hour of day (so a busy
+ * 9am is compared with previous 9ams, not with 3am). Each poll only reads log rows
+ * newer than the last closed hour, folds every newly closed hour into the baselines
+ * and checks the still-open hour against them, so deciding whether today is abnormal
+ * never requires re-reading history.
+ */
+@Service
+public class LogAnomalyService {
+
+    private static final int HOURS_PER_DAY = 24;
+    private static final int MAX_RECENT_ALERTS = 200;
+
+    @Autowired
+    private SqlServerConnectionManager connectionManager;
+
+    @Value("${log.anomaly.enabled:false}")
+    private boolean enabled;
+
+    @Value("${log.anomaly.alpha:0.2}")
+    private double alpha;
+
+    @Value("${log.anomaly.threshold.sigma:3.0}")
+    private double thresholdSigma;
+
+    @Value("${log.anomaly.min.count:10}")
+    private int minCount;
+
+    @Value("${log.anomaly.min.samples:3}")
+    private int minSamples;
+
+    @Value("${log.anomaly.warmup.days:14}")
+    private int warmupDays;
+
+    @Value("${log.anomaly.resource.pattern:%ERROR%}")
+    private String resourcePattern;
+
+    private final Map<String, ResourceBaseline> baselines = new HashMap<>();
+    private final Deque<Map<String, Object>> recentAlerts = new ArrayDeque<>();
+    private final Set<String> alertedOpenHours = new HashSet<>();
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    // Serializes polls. The SQL runs under this lock only; the baselines and alerts are guarded by the
+    // service's own monitor, held just long enough to apply a poll's counts or answer a read
+    private final Object pollLock = new Object();
+    // Alerts are sent to subscribers off the poll lock, so a slow client can't stall polling
+    private final ExecutorService alertSender = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-anomaly-alerts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Every UTC hour up to and including this one has been folded into the baselines
+    private LocalDateTime lastClosedHourUtc;
+    private Map<String, Long> openHourCounts = new HashMap<>();
+    private LocalDateTime openHourUtc;
+    private int localHourOffset = ZoneId.systemDefault().getRules().getOffset(java.time.Instant.now()).getTotalSeconds() / 3600;
+    private LocalDateTime lastPollAt;
+    private long lastPollRows;
+    private String lastPollError;
+
+    /**
+     * Scheduled incremental update; the first run warms the baselines up from warmupDays of history
+     */
+    @Scheduled(fixedDelayString = "${log.anomaly.poll.interval.ms:60000}",
+               initialDelayString = "${log.anomaly.initial.delay.ms:30000}")
+    public void pollScheduled() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            poll();
+        } catch (Exception e) {
+            System.err.println("Log anomaly poll failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read log rows newer than the last closed hour and update baselines and alerts
+     * @return Map containing poll statistics
+     */
+    public Map<String, Object> poll() throws Exception {
+        synchronized (pollLock) {
+            return pollCounts();
+        }
+    }
+
+    private Map<String, Object> pollCounts() throws Exception {
+        long startTime = System.currentTimeMillis();
+        LocalDateTime currentHourUtc = LocalDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime lastClosed;
+        synchronized (this) {
+            lastClosed = lastClosedHourUtc;
+        }
+        LocalDateTime fromHourUtc = lastClosed != null
+            ? lastClosed.plusHours(1)
+            : currentHourUtc.minusDays(warmupDays);
+        // Don't try to replay more than the warmup window after a long outage
+        if (fromHourUtc.isBefore(currentHourUtc.minusDays(warmupDays))) {
+            fromHourUtc = currentHourUtc.minusDays(warmupDays);
+        }
+
+        String sql = """
+            SELECT
+                resource_name,
+                DATEADD(hour, DATEDIFF(hour, 0, logged_on_utc), 0) as hour_utc,
+                MIN(DATEPART(hour, logged_on_local)) as local_hour,
+                COUNT(*) as error_count
+            FROM ADV.dbo.t_log_message WITH (NOLOCK)
+            WHERE logged_on_utc >= ?
+                AND resource_name LIKE ?
+            GROUP BY resource_name, DATEADD(hour, DATEDIFF(hour, 0, logged_on_utc), 0)
+            ORDER BY hour_utc
+            """;
+
+        TreeMap<LocalDateTime, Map<String, Long>> countsByHour = new TreeMap<>();
+        Integer[] observedOffset = {null};
+        long rows;
+        try {
+            rows = connectionManager.streamQuery(sql, List.of(Timestamp.valueOf(fromHourUtc), resourcePattern), 1000, rs -> {
+                LocalDateTime hourUtc = rs.getTimestamp("hour_utc").toLocalDateTime();
+                String resourceName = rs.getString("resource_name");
+                countsByHour.computeIfAbsent(hourUtc, h -> new HashMap<>())
+                    .merge(resourceName != null ? resourceName : "(none)", rs.getLong("error_count"), Long::sum);
+                observedOffset[0] = Math.floorMod(rs.getInt("local_hour") - hourUtc.getHour(), HOURS_PER_DAY);
+            });
+        } catch (Exception e) {
+            synchronized (this) {
+                lastPollError = e.getMessage();
+            }
+            throw e;
+        }
+
+        Map<String, Object> stats = applyCounts(fromHourUtc, currentHourUtc, countsByHour, observedOffset[0], rows);
+        stats.put("executionTime", System.currentTimeMillis() - startTime);
+        return stats;
+    }
+
+    private synchronized Map<String, Object> applyCounts(LocalDateTime fromHourUtc, LocalDateTime currentHourUtc,
+                                                         TreeMap<LocalDateTime, Map<String, Long>> countsByHour,
+                                                         Integer observedOffset, long rows) {
+        if (observedOffset != null) {
+            localHourOffset = observedOffset;
+        }
+
+        // Fold every closed hour in order, including hours with no rows (a zero is a data point too).
+        // The warmup replay only learns baselines: its hours are history, not new spikes.
+        boolean warmup = lastClosedHourUtc == null;
+        int closedHours = 0;
+        for (LocalDateTime hour = fromHourUtc; hour.isBefore(currentHourUtc); hour = hour.plusHours(1)) {
+            Map<String, Long> counts = countsByHour.getOrDefault(hour, Map.of());
+            closeHour(hour, counts, !warmup);
+            closedHours++;
+        }
+        lastClosedHourUtc = currentHourUtc.minusHours(1);
+
+        // The open hour can only grow, so it's checked for spikes but never folded in yet
+        if (!currentHourUtc.equals(openHourUtc)) {
+            alertedOpenHours.clear();
+        }
+        openHourUtc = currentHourUtc;
+        openHourCounts = new HashMap<>(countsByHour.getOrDefault(currentHourUtc, Map.of()));
+        int localHour = toLocalHour(currentHourUtc);
+        for (Map.Entry<String, Long> entry : openHourCounts.entrySet()) {
+            ResourceBaseline baseline = baselines.get(entry.getKey());
+            if (baseline == null || alertedOpenHours.contains(entry.getKey())) {
+                continue;
+            }
+            Map<String, Object> alert = evaluate(entry.getKey(), baseline, localHour, currentHourUtc, entry.getValue(), true);
+            if (alert != null) {
+                alertedOpenHours.add(entry.getKey());
+                publish(alert);
+            }
+        }
+
+        lastPollAt = LocalDateTime.now();
+        lastPollRows = rows;
+        lastPollError = null;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("rowsRead", rows);
+        stats.put("hoursClosed", closedHours);
+        stats.put("resourcesTracked", baselines.size());
+        return stats;
+    }
+
+    private void closeHour(LocalDateTime hourUtc, Map<String, Long> counts, boolean evaluate) {
+        int localHour = toLocalHour(hourUtc);
+        for (String resourceName : counts.keySet()) {
+            baselines.computeIfAbsent(resourceName, r -> new ResourceBaseline());
+        }
+        for (Map.Entry<String, ResourceBaseline> entry : baselines.entrySet()) {
+            long count = counts.getOrDefault(entry.getKey(), 0L);
+            // Check against the baseline as it was before this hour, then learn from it
+            Map<String, Object> alert = !evaluate || (alertedOpenHours.contains(entry.getKey()) && hourUtc.equals(openHourUtc))
+                ? null
+                : evaluate(entry.getKey(), entry.getValue(), localHour, hourUtc, count, false);
+            if (alert != null) {
+                publish(alert);
+            }
+            entry.getValue().update(localHour, count, alpha);
+        }
+    }
+
+    private Map<String, Object> evaluate(String resourceName, ResourceBaseline baseline, int localHour,
+                                         LocalDateTime hourUtc, long count, boolean partialHour) {
+        if (count < minCount || baseline.samples[localHour] < minSamples) {
+            return null;
+        }
+        double mean = baseline.mean[localHour];
+        double stdDev = baseline.stdDev(localHour);
+        double zScore = (count - mean) / stdDev;
+        if (zScore < thresholdSigma) {
+            return null;
+        }
+
+        Map<String, Object> alert = new LinkedHashMap<>();
+        alert.put("resourceName", resourceName);
+        alert.put("hourUtc", hourUtc.toString());
+        alert.put("localHour", localHour);
+        alert.put("count", count);
+        alert.put("baselineMean", mean);
+        alert.put("baselineStdDev", stdDev);
+        alert.put("zScore", zScore);
+        alert.put("partialHour", partialHour);
+        alert.put("detectedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return alert;
+    }
+
+    private void publish(Map<String, Object> alert) {
+        recentAlerts.addFirst(alert);
+        while (recentAlerts.size() > MAX_RECENT_ALERTS) {
+            recentAlerts.removeLast();
+        }
+        alertSender.execute(() -> {
+            for (SseEmitter emitter : emitters) {
+                try {
+                    emitter.send(SseEmitter.event().name("alert").data(alert));
+                } catch (Exception e) {
+                    emitters.remove(emitter);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        alertSender.shutdownNow();
+    }
+
+    private int toLocalHour(LocalDateTime hourUtc) {
+        return Math.floorMod(hourUtc.getHour() + localHourOffset, HOURS_PER_DAY);
+    }
+
+    /**
+     * Register an SSE subscriber for anomaly alerts
+     * @return Emitter that receives an "alert" event per detected spike
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(0L);
+        emitters.add(emitter);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        try {
+            emitter.send(SseEmitter.event().name("connected").data(Map.of(
+                "subscribers", emitters.size(),
+                "thresholdSigma", thresholdSigma)));
+        } catch (Exception e) {
+            emitters.remove(emitter);
+        }
+        return emitter;
+    }
+
+    /**
+     * Get detector status, the current open-hour counts and recent alerts
+     * @param resourceName Optional resource name filter
+     * @return Map containing anomaly detection results
+     */
+    public synchronized Map<String, Object> getAnomalies(String resourceName) {
+        Map<String, Object> result = new HashMap<>();
+
+        List<Map<String, Object>> alerts = new ArrayList<>();
+        for (Map<String, Object> alert : recentAlerts) {
+            if (resourceName == null || resourceName.equals(alert.get("resourceName"))) {
+                alerts.add(alert);
+            }
+        }
+
+        List<Map<String, Object>> currentHour = new ArrayList<>();
+        if (openHourUtc != null) {
+            int localHour = toLocalHour(openHourUtc);
+            for (Map.Entry<String, Long> entry : openHourCounts.entrySet()) {
+                if (resourceName != null && !resourceName.equals(entry.getKey())) {
+                    continue;
+                }
+                ResourceBaseline baseline = baselines.get(entry.getKey());
+                Map<String, Object> row = new HashMap<>();
+                row.put("resourceName", entry.getKey());
+                row.put("countSoFar", entry.getValue());
+                if (baseline != null && baseline.samples[localHour] > 0) {
+                    row.put("baselineMean", baseline.mean[localHour]);
+                    row.put("baselineStdDev", baseline.stdDev(localHour));
+                }
+                currentHour.add(row);
+            }
+        }
+
+        result.put("alerts", alerts);
+        result.put("alertCount", alerts.size());
+        result.put("currentHour", currentHour);
+        result.put("currentHourUtc", openHourUtc != null ? openHourUtc.toString() : null);
+        result.put("status", getStatus());
+        result.put("queryType", "log_error_anomalies");
+        result.put("description", "EWMA seasonal anomaly detection over hourly error counts");
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+
+    /**
+     * Get the learned per-hour baselines for one or all resources
+     * @param resourceName Optional resource name filter
+     * @return Map containing baseline means and standard deviations by local hour
+     */
+    public synchronized Map<String, Object> getBaselines(String resourceName) {
+        Map<String, Object> byResource = new TreeMap<>();
+        for (Map.Entry<String, ResourceBaseline> entry : baselines.entrySet()) {
+            if (resourceName != null && !resourceName.equals(entry.getKey())) {
+                continue;
+            }
+            List<Map<String, Object>> hours = new ArrayList<>();
+            ResourceBaseline baseline = entry.getValue();
+            for (int hour = 0; hour < HOURS_PER_DAY; hour++) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("hour_of_day", hour);
+                row.put("mean", baseline.mean[hour]);
+                row.put("stdDev", baseline.stdDev(hour));
+                row.put("samples", baseline.samples[hour]);
+                hours.add(row);
+            }
+            byResource.put(entry.getKey(), hours);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("baselines", byResource);
+        result.put("status", getStatus());
+        result.put("queryType", "log_error_baselines");
+        result.put("description", "Seasonal EWMA baselines per resource and hour of day");
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+
+    private Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("warmedUp", lastClosedHourUtc != null);
+        status.put("lastClosedHourUtc", lastClosedHourUtc != null ? lastClosedHourUtc.toString() : null);
+        status.put("lastPollAt", lastPollAt != null ? lastPollAt.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) : null);
+        status.put("lastPollRows", lastPollRows);
+        status.put("lastPollError", lastPollError);
+        status.put("resourcesTracked", baselines.size());
+        status.put("subscribers", emitters.size());
+        status.put("alpha", alpha);
+        status.put("thresholdSigma", thresholdSigma);
+        status.put("minCount", minCount);
+        return status;
+    }
+
+    /**
+     * EWMA mean/variance per local hour of day for one resource
+     */
+    private static class ResourceBaseline {
+        final double[] mean = new double[HOURS_PER_DAY];
+        final double[] variance = new double[HOURS_PER_DAY];
+        final int[] samples = new int[HOURS_PER_DAY];
+
+        void update(int hour, long count, double alpha) {
+            if (samples[hour] == 0) {
+                mean[hour] = count;
+                variance[hour] = 0;
+            } else {
+                double diff = count - mean[hour];
+                double increment = alpha * diff;
+                mean[hour] += increment;
+                variance[hour] = (1 - alpha) * (variance[hour] + diff * increment);
+            }
+            samples[hour]++;
+        }
+
+        double stdDev(int hour) {
+            // Poisson floor so a flat baseline doesn't turn every small wobble into an alert
+            return Math.max(Math.sqrt(variance[hour]), Math.sqrt(Math.max(mean[hour], 1.0)));
+        }
+    }
+}
@@ -0,0 +1,696 @@
+package jerm.jerm_java.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * In-memory cube over a cached window of t_log_message.
+ *
+ * Rows are fetched once, pre-aggregated to (UTC hour, local hour, resource_name, user_id,
+ * machine_id) cells, and stored as dictionary-encoded int columns. Every dimension the log
+ * reports group by (date, hour of day, resource, user, machine) can be derived from a cell,
+ * so daily summaries, hourly trends, user activity and volume trends - or any other
+ * roll-up/slice of those dimensions - are answered from memory instead of a SQL round trip.
+ *
+ * Refreshes are incremental: cells older than the window are dropped and only the last
+ * few hours are re-read. The window is aligned to UTC hours, so a daysBack slice may
+ * include up to one extra hour of rows at its start compared with the SQL reports.
+ */
+@Service
+public class LogCubeService {
+
+    public static final List<String> DIMENSIONS = List.of(
+        "log_date", "hour_of_day", "hour_bucket", "resource_name", "user_id", "machine_id");
+
+    public static final List<String> MEASURES = List.of(
+        "message_count", "error_count", "unique_users", "unique_machines", "first_activity", "last_activity");
+
+    private static final String ERROR_MARKER = "ERROR";
+
+    @Autowired
+    private SqlServerConnectionManager connectionManager;
+
+    @Value("${log.cube.enabled:false}")
+    private boolean enabled;
+
+    @Value("${log.cube.window.days:30}")
+    private int windowDays;
+
+    @Value("${log.cube.late.arrival.hours:2}")
+    private int lateArrivalHours;
+
+    @Value("${log.cube.full.refresh.hours:24}")
+    private int fullRefreshHours;
+
+    @Value("${log.cube.fetch.size:5000}")
+    private int fetchSize;
+
+    private final Map<String, Map<String, Object>> presets = new LinkedHashMap<>();
+
+    private volatile CubeData cube;
+    private String lastRefreshError;
+
+    public LogCubeService() {
+        presets.put("daily-summary", preset(List.of("log_date", "resource_name"), List.of("message_count"),
+            Map.of(), "log_date", 0));
+        presets.put("hourly-error-trends", preset(List.of("hour_of_day"), List.of("error_count"),
+            Map.of("errorsOnly", true), "hour_of_day", 0));
+        presets.put("user-activity-by-hour", preset(List.of("hour_of_day"), List.of("unique_users", "message_count"),
+            Map.of(), "hour_of_day", 0));
+        presets.put("daily-volume", preset(List.of("log_date"),
+            List.of("message_count", "unique_users", "unique_machines", "error_count"), Map.of(), "log_date", 0));
+        presets.put("top-users", preset(List.of("user_id"), List.of("message_count", "first_activity", "last_activity"),
+            Map.of(), "message_count", 20));
+    }
+
+    private static Map<String, Object> preset(List<String> dimensions, List<String> measures,
+                                              Map<String, Object> filters, String orderBy, int limit) {
+        Map<String, Object> request = new HashMap<>();
+        request.put("dimensions", dimensions);
+        request.put("measures", measures);
+        request.put("filters", filters);
+        request.put("orderBy", orderBy);
+        request.put("limit", limit);
+        return request;
+    }
+
+    /**
+     * Scheduled incremental refresh of the cached window
+     */
+    @Scheduled(fixedDelayString = "${log.cube.refresh.interval.ms:60000}",
+               initialDelayString = "${log.cube.initial.delay.ms:20000}")
+    public void refreshScheduled() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            refresh(false);
+        } catch (Exception e) {
+            System.err.println("Log cube refresh failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bring the cube up to date
+     * @param full Rebuild the whole window (also compacts the dictionaries)
+     * @return Map containing refresh statistics
+     */
+    public synchronized Map<String, Object> refresh(boolean full) throws Exception {
+        requireEnabled();
+        long startTime = System.currentTimeMillis();
+        CubeData previous = cube;
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        int currentHour = epochHour(now.truncatedTo(ChronoUnit.HOURS));
+        int windowStartHour = currentHour - windowDays * 24;
+
+        boolean incremental = !full && previous != null && previous.windowDays == windowDays
+            && currentHour - previous.builtAtHour < fullRefreshHours;
+        int fetchFromHour = incremental
+            ? Math.max(previous.refreshedToHour - lateArrivalHours, windowStartHour)
+            : windowStartHour;
+
+        CubeBuilder builder = incremental ? new CubeBuilder(previous) : new CubeBuilder();
+        int keptCells = 0;
+        if (incremental) {
+            // Keep cells still inside the window that won't be re-read
+            for (int i = 0; i < previous.size; i++) {
+                if (previous.utcHour[i] >= windowStartHour && previous.utcHour[i] < fetchFromHour) {
+                    builder.copyCell(previous, i);
+                    keptCells++;
+                }
+            }
+        }
+
+        String sql = """
+            SELECT
+                DATEADD(hour, DATEDIFF(hour, 0, logged_on_utc), 0) as hour_utc,
+                DATEADD(hour, DATEDIFF(hour, 0, logged_on_local), 0) as hour_local,
+                resource_name,
+                user_id,
+                machine_id,
+                COUNT(*) as message_count,
+                MIN(logged_on_local) as first_activity,
+                MAX(logged_on_local) as last_activity
+            FROM ADV.dbo.t_log_message WITH (NOLOCK)
+            WHERE logged_on_utc >= ?
+            GROUP BY
+                DATEADD(hour, DATEDIFF(hour, 0, logged_on_utc), 0),
+                DATEADD(hour, DATEDIFF(hour, 0, logged_on_local), 0),
+                resource_name, user_id, machine_id
+            """;
+
+        long fetchedCells;
+        try {
+            fetchedCells = connectionManager.streamQuery(sql, List.of(Timestamp.valueOf(toDateTime(fetchFromHour))), fetchSize, rs ->
+                builder.addCell(
+                    epochHour(rs.getTimestamp("hour_utc").toLocalDateTime()),
+                    epochHour(rs.getTimestamp("hour_local").toLocalDateTime()),
+                    rs.getString("resource_name"),
+                    rs.getString("user_id"),
+                    rs.getString("machine_id"),
+                    rs.getLong("message_count"),
+                    epochSecond(rs.getTimestamp("first_activity")),
+                    epochSecond(rs.getTimestamp("last_activity"))));
+        } catch (Exception e) {
+            lastRefreshError = e.getMessage();
+            throw e;
+        }
+
+        int builtAtHour = incremental ? previous.builtAtHour : currentHour;
+        cube = builder.build(windowDays, windowStartHour, currentHour, builtAtHour, now);
+        lastRefreshError = null;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("incremental", incremental);
+        result.put("keptCells", keptCells);
+        result.put("fetchedCells", fetchedCells);
+        result.put("fetchedFrom", toDateTime(fetchFromHour).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        result.put("executionTime", System.currentTimeMillis() - startTime);
+        result.put("cube", describe(cube));
+        return result;
+    }
+
+    /**
+     * A disabled cube is never loaded, so queries would otherwise pull the whole window on the request thread
+     */
+    private void requireEnabled() {
+        if (!enabled) {
+            throw new IllegalStateException("The log cube is disabled (set log.cube.enabled=true); "
+                + "use the /api/logs reports to query SQL Server directly");
+        }
+    }
+
+    /**
+     * Roll up and slice the cached window
+     * @param request dimensions (list), measures (list), filters (map of dimension to allowed values,
+     *                plus errorsOnly and resourceContains/userContains/machineContains), daysBack,
+     *                orderBy (dimension or measure), descending, limit
+     * @return Map in the same columns/data shape as the SQL-backed reports
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> query(Map<String, Object> request) throws Exception {
+        requireEnabled();
+        long startTime = System.currentTimeMillis();
+        CubeData data = cube;
+        if (data == null) {
+            // Enabled but not loaded yet (first query before the scheduled load)
+            refresh(true);
+            data = cube;
+        }
+
+        List<String> dimensions = stringList(request.get("dimensions"), List.of());
+        List<String> measures = stringList(request.get("measures"), List.of("message_count"));
+        for (String dimension : dimensions) {
+            if (!DIMENSIONS.contains(dimension)) {
+                throw new IllegalArgumentException("Unknown dimension: " + dimension + " (supported: " + DIMENSIONS + ")");
+            }
+        }
+        for (String measure : measures) {
+            if (!MEASURES.contains(measure)) {
+                throw new IllegalArgumentException("Unknown measure: " + measure + " (supported: " + MEASURES + ")");
+            }
+        }
+
+        int daysBack = toInt(request.get("daysBack"), data.windowDays);
+        if (daysBack < 1 || daysBack > data.windowDays) {
+            throw new IllegalArgumentException("daysBack must be between 1 and the cube window (" + data.windowDays + " days)");
+        }
+
+        Map<String, Object> filters = request.get("filters") instanceof Map
+            ? (Map<String, Object>) request.get("filters") : Map.of();
+        CellFilter filter = new CellFilter(data, filters, data.refreshedToHour - daysBack * 24);
+
+        boolean needUsers = measures.contains("unique_users");
+        boolean needMachines = measures.contains("unique_machines");
+        Map<List<Integer>, Group> groups = new HashMap<>();
+        int matchedCells = 0;
+        for (int i = 0; i < data.size; i++) {
+            if (!filter.matches(i)) {
+                continue;
+            }
+            matchedCells++;
+
+            List<Integer> key = new ArrayList<>(dimensions.size());
+            for (String dimension : dimensions) {
+                key.add(data.dimensionValue(dimension, i));
+            }
+            Group group = groups.computeIfAbsent(key, k -> new Group());
+            group.messages += data.count[i];
+            if (data.errorResource[data.resource[i]]) {
+                group.errors += data.count[i];
+            }
+            group.first = Math.min(group.first, data.firstActivity[i]);
+            group.last = Math.max(group.last, data.lastActivity[i]);
+            if (needUsers) {
+                group.users.set(data.user[i]);
+            }
+            if (needMachines) {
+                group.machines.set(data.machine[i]);
+            }
+        }
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map.Entry<List<Integer>, Group> entry : groups.entrySet()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int d = 0; d < dimensions.size(); d++) {
+                row.put(dimensions.get(d), data.formatDimension(dimensions.get(d), entry.getKey().get(d)));
+            }
+            Group group = entry.getValue();
+            for (String measure : measures) {
+                row.put(measure, switch (measure) {
+                    case "message_count" -> group.messages;
+                    case "error_count" -> group.errors;
+                    case "unique_users" -> (long) group.users.cardinality();
+                    case "unique_machines" -> (long) group.machines.cardinality();
+                    case "first_activity" -> formatSecond(group.first);
+                    default -> formatSecond(group.last);
+                });
+            }
+            rows.add(row);
+        }
+
+        String orderBy = request.get("orderBy") != null ? request.get("orderBy").toString()
+            : (!measures.isEmpty() ? measures.get(0) : null);
+        if (orderBy != null) {
+            if (!rows.isEmpty() && !rows.get(0).containsKey(orderBy)) {
+                throw new IllegalArgumentException("orderBy must be one of the requested dimensions or measures: " + orderBy);
+            }
+            // Measures default to largest first, dates newest first, other dimensions ascending
+            boolean descending = request.get("descending") != null
+                ? Boolean.parseBoolean(request.get("descending").toString())
+                : MEASURES.contains(orderBy) || "log_date".equals(orderBy) || "hour_bucket".equals(orderBy);
+            Comparator<Map<String, Object>> comparator = rowComparator(orderBy);
+            if (!measures.isEmpty() && !measures.get(0).equals(orderBy)) {
+                // Ties on the sort key keep the largest first measure first, as the SQL reports do
+                comparator = (descending ? comparator.reversed() : comparator)
+                    .thenComparing(rowComparator(measures.get(0)).reversed());
+                rows.sort(comparator);
+            } else {
+                rows.sort(descending ? comparator.reversed() : comparator);
+            }
+        }
+
+        int limit = toInt(request.get("limit"), 0);
+        boolean hasMoreRows = limit > 0 && rows.size() > limit;
+        if (hasMoreRows) {
+            rows = new ArrayList<>(rows.subList(0, limit));
+        }
+
+        List<String> columns = new ArrayList<>(dimensions);
+        columns.addAll(measures);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("columns", columns);
+        result.put("data", rows);
+        result.put("rowCount", rows.size());
+        result.put("hasMoreRows", hasMoreRows);
+        result.put("cellsScanned", data.size);
+        result.put("cellsMatched", matchedCells);
+        result.put("daysBack", daysBack);
+        result.put("executionTime", System.currentTimeMillis() - startTime);
+        result.put("cube", describe(data));
+        result.put("queryType", "log_cube_query");
+        result.put("description", "Roll-up of cached t_log_message window by " + (dimensions.isEmpty() ? "(all)" : dimensions));
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+
+    /**
+     * Run one of the named report presets against the cube
+     * @param name Preset name (see getPresets)
+     * @param daysBack Days to include
+     * @param topCount Row limit for top-N presets (0 keeps the preset default)
+     * @return Map containing the report rows
+     */
+    public Map<String, Object> queryPreset(String name, int daysBack, int topCount) throws Exception {
+        Map<String, Object> preset = presets.get(name);
+        if (preset == null) {
+            throw new IllegalArgumentException("Unknown cube preset: " + name + " (supported: " + presets.keySet() + ")");
+        }
+        Map<String, Object> request = new HashMap<>(preset);
+        request.put("daysBack", daysBack);
+        if (topCount > 0) {
+            request.put("limit", topCount);
+        }
+        Map<String, Object> result = query(request);
+        result.put("queryType", "log_cube_" + name.replace('-', '_'));
+        result.put("preset", name);
+        return result;
+    }
+
+    public Map<String, Map<String, Object>> getPresets() {
+        return presets;
+    }
+
+    /**
+     * Describe the cached window
+     * @return Map containing cube size, window and refresh status
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("dimensions", DIMENSIONS);
+        result.put("measures", MEASURES);
+        result.put("presets", presets.keySet());
+        result.put("cube", cube != null ? describe(cube) : null);
+        result.put("lastRefreshError", lastRefreshError);
+        result.put("queryType", "log_cube_status");
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+
+    private Map<String, Object> describe(CubeData data) {
+        Map<String, Object> info = new HashMap<>();
+        info.put("cells", data.size);
+        info.put("messages", data.totalMessages);
+        info.put("windowDays", data.windowDays);
+        info.put("windowStartUtc", toDateTime(data.windowStartHour).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        info.put("refreshedAt", data.refreshedAt.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        info.put("ageSeconds", ChronoUnit.SECONDS.between(data.refreshedAt, LocalDateTime.now(ZoneOffset.UTC)));
+        info.put("distinctResources", data.resources.size());
+        info.put("distinctUsers", data.users.size());
+        info.put("distinctMachines", data.machines.size());
+        return info;
+    }
+
+    // Time helpers: hours and seconds since the epoch, treating the database values as UTC-free wall time
+
+    private static int epochHour(LocalDateTime dateTime) {
+        return (int) (dateTime.toEpochSecond(ZoneOffset.UTC) / 3600);
+    }
+
+    private static LocalDateTime toDateTime(int epochHour) {
+        return LocalDateTime.ofEpochSecond(epochHour * 3600L, 0, ZoneOffset.UTC);
+    }
+
+    private static long epochSecond(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime().toEpochSecond(ZoneOffset.UTC) : 0L;
+    }
+
+    private static String formatSecond(long epochSecond) {
+        if (epochSecond == Long.MAX_VALUE || epochSecond == Long.MIN_VALUE) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<Map<String, Object>> rowComparator(String column) {
+        return Comparator.comparing(row -> (Comparable<Object>) comparable(row.get(column)),
+                                    Comparator.nullsFirst(Comparator.naturalOrder()));
+    }
+
+    private static Object comparable(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : value;
+    }
+
+    private static int toInt(Object value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        return value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+    }
+
+    private static List<String> stringList(Object value, List<String> defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Collection) {
+            List<String> values = new ArrayList<>();
+            for (Object item : (Collection<?>) value) {
+                values.add(String.valueOf(item));
+            }
+            return values;
+        }
+        return Arrays.stream(value.toString().split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    /**
+     * Append-only value dictionary; ids are dense so distinct counts can use a BitSet
+     */
+    private static class Dictionary {
+        final Map<String, Integer> ids;
+        final List<String> values;
+
+        Dictionary() {
+            ids = new HashMap<>();
+            values = new ArrayList<>();
+        }
+
+        Dictionary(Dictionary other) {
+            ids = new HashMap<>(other.ids);
+            values = new ArrayList<>(other.values);
+        }
+
+        int idOf(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    /**
+     * Immutable cube snapshot; queries read it without locking while the next refresh builds a new one
+     */
+    private static class CubeData {
+        int size;
+        int[] utcHour;
+        int[] localHour;
+        int[] resource;
+        int[] user;
+        int[] machine;
+        long[] count;
+        long[] firstActivity;
+        long[] lastActivity;
+        Dictionary resources;
+        Dictionary users;
+        Dictionary machines;
+        boolean[] errorResource;
+        long totalMessages;
+        int windowDays;
+        int windowStartHour;
+        int refreshedToHour;
+        int builtAtHour;
+        LocalDateTime refreshedAt;
+
+        int dimensionValue(String dimension, int cell) {
+            return switch (dimension) {
+                case "log_date" -> Math.floorDiv(localHour[cell], 24);
+                case "hour_of_day" -> Math.floorMod(localHour[cell], 24);
+                case "hour_bucket" -> localHour[cell];
+                case "resource_name" -> resource[cell];
+                case "user_id" -> user[cell];
+                default -> machine[cell];
+            };
+        }
+
+        Object formatDimension(String dimension, int value) {
+            return switch (dimension) {
+                case "log_date" -> LocalDate.ofEpochDay(value).toString();
+                case "hour_of_day" -> value;
+                case "hour_bucket" -> toDateTime(value).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+                case "resource_name" -> resources.values.get(value);
+                case "user_id" -> users.values.get(value);
+                default -> machines.values.get(value);
+            };
+        }
+    }
+
+    private static class CubeBuilder {
+        final Dictionary resources;
+        final Dictionary users;
+        final Dictionary machines;
+        int size;
+        int[] utcHour = new int[1024];
+        int[] localHour = new int[1024];
+        int[] resource = new int[1024];
+        int[] user = new int[1024];
+        int[] machine = new int[1024];
+        long[] count = new long[1024];
+        long[] firstActivity = new long[1024];
+        long[] lastActivity = new long[1024];
+
+        CubeBuilder() {
+            resources = new Dictionary();
+            users = new Dictionary();
+            machines = new Dictionary();
+        }
+
+        CubeBuilder(CubeData previous) {
+            resources = new Dictionary(previous.resources);
+            users = new Dictionary(previous.users);
+            machines = new Dictionary(previous.machines);
+        }
+
+        void copyCell(CubeData from, int i) {
+            // Same dictionaries (copied), so ids carry over unchanged
+            append(from.utcHour[i], from.localHour[i], from.resource[i], from.user[i], from.machine[i],
+                   from.count[i], from.firstActivity[i], from.lastActivity[i]);
+        }
+
+        void addCell(int utc, int local, String resourceName, String userId, String machineId,
+                     long messages, long first, long last) {
+            append(utc, local, resources.idOf(resourceName), users.idOf(userId), machines.idOf(machineId),
+                   messages, first, last);
+        }
+
+        private void append(int utc, int local, int resourceId, int userId, int machineId,
+                            long messages, long first, long last) {
+            if (size == utcHour.length) {
+                int capacity = size * 2;
+                utcHour = Arrays.copyOf(utcHour, capacity);
+                localHour = Arrays.copyOf(localHour, capacity);
+                resource = Arrays.copyOf(resource, capacity);
+                user = Arrays.copyOf(user, capacity);
+                machine = Arrays.copyOf(machine, capacity);
+                count = Arrays.copyOf(count, capacity);
+                firstActivity = Arrays.copyOf(firstActivity, capacity);
+                lastActivity = Arrays.copyOf(lastActivity, capacity);
+            }
+            utcHour[size] = utc;
+            localHour[size] = local;
+            resource[size] = resourceId;
+            user[size] = userId;
+            machine[size] = machineId;
+            count[size] = messages;
+            firstActivity[size] = first;
+            lastActivity[size] = last;
+            size++;
+        }
+
+        CubeData build(int windowDays, int windowStartHour, int refreshedToHour, int builtAtHour, LocalDateTime refreshedAt) {
+            CubeData data = new CubeData();
+            data.size = size;
+            data.utcHour = Arrays.copyOf(utcHour, size);
+            data.localHour = Arrays.copyOf(localHour, size);
+            data.resource = Arrays.copyOf(resource, size);
+            data.user = Arrays.copyOf(user, size);
+            data.machine = Arrays.copyOf(machine, size);
+            data.count = Arrays.copyOf(count, size);
+            data.firstActivity = Arrays.copyOf(firstActivity, size);
+            data.lastActivity = Arrays.copyOf(lastActivity, size);
+            data.resources = resources;
+            data.users = users;
+            data.machines = machines;
+            data.errorResource = new boolean[resources.size()];
+            for (int id = 0; id < resources.size(); id++) {
+                String name = resources.values.get(id);
+                // Same test as resource_name LIKE '%ERROR%' under the default case-insensitive collation
+                data.errorResource[id] = name != null && name.toUpperCase().contains(ERROR_MARKER);
+            }
+            for (int i = 0; i < size; i++) {
+                data.totalMessages += count[i];
+            }
+            data.windowDays = windowDays;
+            data.windowStartHour = windowStartHour;
+            data.refreshedToHour = refreshedToHour;
+            data.builtAtHour = builtAtHour;
+            data.refreshedAt = refreshedAt;
+            return data;
+        }
+    }
+
+    /**
+     * Filters resolved once against the dictionaries, so matching a cell is array lookups only
+     */
+    private static class CellFilter {
+        final CubeData data;
+        final int minUtcHour;
+        final boolean[] resources;
+        final boolean[] users;
+        final boolean[] machines;
+        final Set<Integer> dates;
+        final Set<Integer> hours;
+        final boolean errorsOnly;
+
+        CellFilter(CubeData data, Map<String, Object> filters, int minUtcHour) {
+            this.data = data;
+            this.minUtcHour = minUtcHour;
+            this.resources = dictionaryFilter(data.resources, filters.get("resource_name"), filters.get("resourceContains"));
+            this.users = dictionaryFilter(data.users, filters.get("user_id"), filters.get("userContains"));
+            this.machines = dictionaryFilter(data.machines, filters.get("machine_id"), filters.get("machineContains"));
+            this.dates = filters.containsKey("log_date")
+                ? new HashSet<>(stringList(filters.get("log_date"), List.of()).stream()
+                    .map(d -> (int) LocalDate.parse(d).toEpochDay()).toList())
+                : null;
+            this.hours = filters.containsKey("hour_of_day")
+                ? new HashSet<>(stringList(filters.get("hour_of_day"), List.of()).stream().map(Integer::parseInt).toList())
+                : null;
+            this.errorsOnly = filters.get("errorsOnly") != null && Boolean.parseBoolean(filters.get("errorsOnly").toString());
+        }
+
+        private static boolean[] dictionaryFilter(Dictionary dictionary, Object values, Object contains) {
+            if (values == null && contains == null) {
+                return null;
+            }
+            boolean[] allowed = new boolean[dictionary.size()];
+            if (values != null) {
+                for (String value : stringList(values, List.of())) {
+                    Integer id = dictionary.ids.get(value);
+                    if (id != null) {
+                        allowed[id] = true;
+                    }
+                }
+            }
+            if (contains != null) {
+                String needle = contains.toString().toUpperCase();
+                for (int id = 0; id < dictionary.size(); id++) {
+                    String value = dictionary.values.get(id);
+                    allowed[id] |= value != null && value.toUpperCase().contains(needle);
+                }
+            }
+            return allowed;
+        }
+
+        boolean matches(int i) {
+            if (data.utcHour[i] < minUtcHour) {
+                return false;
+            }
+            if (errorsOnly && !data.errorResource[data.resource[i]]) {
+                return false;
+            }
+            if (resources != null && !resources[data.resource[i]]) {
+                return false;
+            }
+            if (users != null && !users[data.user[i]]) {
+                return false;
+            }
+            if (machines != null && !machines[data.machine[i]]) {
+                return false;
+            }
+            if (dates != null && !dates.contains(Math.floorDiv(data.localHour[i], 24))) {
+                return false;
+            }
+            return hours == null || hours.contains(Math.floorMod(data.localHour[i], 24));
+        }
+    }
+
+    private static class Group {
+        long messages;
+        long errors;
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        final BitSet users = new BitSet();
+        final BitSet machines = new BitSet();
+    }
+}
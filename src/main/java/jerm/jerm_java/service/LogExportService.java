@@ -0,0 +1,613 @@
+package jerm.jerm_java.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+public class LogExportService {
+
+    public static final List<String> SUPPORTED_FORMATS = List.of("csv", "columnar");
+
+    // Reports that return raw log rows; these are streamed newest first and can be resumed
+    private static final Set<String> ROW_REPORTS = Set.of("recent-errors", "search");
+
+    private static final Map<String, String> REPORT_DESCRIPTIONS = new LinkedHashMap<>();
+    static {
+        REPORT_DESCRIPTIONS.put("recent-errors", "CANT_EXE_DB errors for the last daysBack days (resumable)");
+        REPORT_DESCRIPTIONS.put("search", "Log messages matching search criteria (POST only, resumable)");
+        REPORT_DESCRIPTIONS.put("daily-summary", "Daily message counts by resource type");
+        REPORT_DESCRIPTIONS.put("hourly-error-trends", "Error counts by hour of day");
+        REPORT_DESCRIPTIONS.put("top-users", "Most active users (topCount)");
+        REPORT_DESCRIPTIONS.put("user-activity-by-hour", "Unique users and activity by hour of day");
+        REPORT_DESCRIPTIONS.put("daily-volume", "Daily volume trends");
+    }
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private static final String EXPORT_TABLE = "ADV.dbo.t_log_message";
+
+    // Columns of t_log_message with their declared type and whether a single-column unique index covers them
+    private static final String SCHEMA_SQL = """
+            SELECT c.name AS column_name,
+                   t.name AS type_name,
+                   c.scale,
+                   c.is_identity,
+                   CASE WHEN EXISTS (
+                       SELECT 1
+                       FROM ADV.sys.indexes i
+                       JOIN ADV.sys.index_columns ic ON ic.object_id = i.object_id AND ic.index_id = i.index_id
+                       WHERE i.object_id = c.object_id
+                         AND i.is_unique = 1
+                         AND ic.column_id = c.column_id
+                         AND ic.key_ordinal = 1
+                         AND NOT EXISTS (
+                             SELECT 1 FROM ADV.sys.index_columns other
+                             WHERE other.object_id = i.object_id AND other.index_id = i.index_id AND other.key_ordinal > 1)
+                   ) THEN 1 ELSE 0 END AS is_unique_key
+            FROM ADV.sys.columns c
+            JOIN ADV.sys.types t ON t.user_type_id = c.user_type_id
+            WHERE c.object_id = OBJECT_ID('ADV.dbo.t_log_message')
+            ORDER BY c.column_id""";
+
+    private static final Set<String> TIMESTAMP_TYPES = Set.of("datetime", "smalldatetime", "datetime2", "datetimeoffset");
+
+    // Cursors carry the key as a long
+    private static final Set<String> KEY_TYPES = Set.of("tinyint", "smallint", "int", "bigint");
+
+    private static final String ROW_COLUMNS = """
+            logged_on_utc,
+            logged_on_local,
+            machine_id,
+            user_id,
+            resource_name,
+            details,
+            call_stack,
+            arguments""";
+
+    @Autowired
+    private SqlServerConnectionManager connectionManager;
+
+    @Autowired
+    private LogMessageService logMessageService;
+
+    @Value("${log.export.fetch.size:1000}")
+    private int fetchSize;
+
+    @Value("${log.export.flush.rows:1000}")
+    private int flushRows;
+
+    @Value("${log.export.columnar.block.rows:4096}")
+    private int columnarBlockRows;
+
+    // Unique column of t_log_message that breaks timestamp ties so row exports can be resumed exactly;
+    // empty = the table's single-column unique key or identity column
+    @Value("${log.export.key.column:}")
+    private String keyColumn = "";
+
+    // Export timeout in milliseconds; 0 or less lets an export run for as long as the client keeps reading
+    @Value("${log.export.timeout.ms:-1}")
+    private long timeoutMs = -1;
+
+    // Key column and logged_on_utc type read from the table; null until the database has been reached
+    private volatile ExportSchema schema;
+
+    /**
+     * Check the resume key against the real table at startup. A key column that does not exist
+     * or is not unique fails startup; an unreachable database defers the check to the first row export.
+     */
+    @PostConstruct
+    public void verifySchema() {
+        try {
+            schema = loadSchema();
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (Exception e) {
+            System.out.println("Log export schema check deferred until the database is reachable: " + e.getMessage());
+        }
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public Map<String, String> getSupportedReports() {
+        return Collections.unmodifiableMap(REPORT_DESCRIPTIONS);
+    }
+
+    /**
+     * Validate an export request before the response is committed, so bad input
+     * still gets a normal JSON error instead of a truncated download
+     */
+    public void validateExportRequest(String report, String format, String cursor) {
+        if (!REPORT_DESCRIPTIONS.containsKey(report)) {
+            throw new IllegalArgumentException("Unknown report: " + report);
+        }
+        if (!SUPPORTED_FORMATS.contains(format)) {
+            throw new IllegalArgumentException("Unsupported format: " + format + " (expected one of " + SUPPORTED_FORMATS + ")");
+        }
+        if (cursor != null && !cursor.isEmpty()) {
+            if (!ROW_REPORTS.contains(report)) {
+                throw new IllegalArgumentException("Report " + report + " is aggregated and cannot be resumed from a cursor");
+            }
+            ExportCursor.decode(cursor);
+        }
+    }
+
+    public String getExportFileName(String report, String format) {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        String extension = "columnar".equals(format) ? ".jcol.gz" : ".csv.gz";
+        return "logs-" + report + "-" + timestamp + extension;
+    }
+
+    /**
+     * Stream a log report or search straight from the JDBC cursor to a gzip-compressed file.
+     * Rows are written as they are read, so memory use is constant and a slow client
+     * simply blocks the writer (and with it the cursor) until it catches up.
+     *
+     * For row reports every CSV row carries an export_cursor column (and every columnar block
+     * ends with one); passing the last one received resumes the export after that row.
+     * @param report Report name (see getSupportedReports)
+     * @param daysBack Number of days to export
+     * @param topCount Number of users for the top-users report
+     * @param searchCriteria Search criteria for the search report (ignored otherwise)
+     * @param format csv or columnar
+     * @param cursor Optional resume cursor from a previous export
+     * @param out Destination stream
+     * @return Map containing export statistics
+     */
+    public Map<String, Object> exportReport(String report, int daysBack, int topCount, Map<String, Object> searchCriteria,
+                                            String format, String cursor, OutputStream out) throws Exception {
+        validateExportRequest(report, format, cursor);
+        long startTime = System.currentTimeMillis();
+
+        List<Object> parameters = new ArrayList<>();
+        ExportCursor resumeFrom = cursor != null && !cursor.isEmpty() ? ExportCursor.decode(cursor) : null;
+        boolean rowReport = ROW_REPORTS.contains(report);
+        ExportSchema rowSchema = rowReport ? schema() : null;
+        String sql = buildExportSql(report, daysBack, topCount, searchCriteria, rowSchema, resumeFrom, parameters);
+
+        ExportWriter writer = "columnar".equals(format)
+            ? new ColumnarExportWriter(out, columnarBlockRows)
+            : new CsvExportWriter(out, flushRows, rowReport);
+
+        String[] lastCursor = {null};
+        long[] rowsWritten = {0};
+
+        connectionManager.streamQuery(sql, parameters, fetchSize, rs -> {
+            ResultSetMetaData metaData = rs.getMetaData();
+            if (!writer.hasHeader()) {
+                writer.writeHeader(columnNames(metaData));
+            }
+
+            String rowCursor = null;
+            if (rowReport) {
+                Timestamp loggedOnUtc = rs.getTimestamp("logged_on_utc");
+                if (loggedOnUtc != null) {
+                    lastCursor[0] = new ExportCursor(loggedOnUtc.toLocalDateTime(), rs.getLong(rowSchema.keyColumn())).encode();
+                }
+                rowCursor = lastCursor[0];
+            }
+
+            int columnCount = metaData.getColumnCount();
+            String[] values = new String[columnCount];
+            for (int i = 1; i <= columnCount; i++) {
+                values[i - 1] = formatValue(rs.getObject(i));
+            }
+            writer.writeRow(values, rowCursor);
+            rowsWritten[0]++;
+        });
+
+        writer.finish();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("report", report);
+        stats.put("format", format);
+        stats.put("rowsWritten", rowsWritten[0]);
+        stats.put("resumed", resumeFrom != null);
+        stats.put("lastCursor", lastCursor[0]);
+        stats.put("executionTime", System.currentTimeMillis() - startTime);
+        return stats;
+    }
+
+    private String buildExportSql(String report, int daysBack, int topCount, Map<String, Object> searchCriteria,
+                                  ExportSchema rowSchema, ExportCursor resumeFrom, List<Object> parameters) {
+        switch (report) {
+            case "daily-summary":
+                return logMessageService.dailySummaryByResourceTypeSql(daysBack);
+            case "hourly-error-trends":
+                return logMessageService.hourlyErrorTrendsSql(daysBack);
+            case "top-users":
+                return logMessageService.topUsersByActivitySql(daysBack, topCount);
+            case "user-activity-by-hour":
+                return logMessageService.userActivityByHourSql(daysBack);
+            case "daily-volume":
+                return logMessageService.dailyVolumeTrendsSql(daysBack);
+            default:
+                break;
+        }
+
+        List<String> conditions = new ArrayList<>();
+        if ("recent-errors".equals(report)) {
+            conditions.add(logMessageService.recentDatabaseErrorsFilter(daysBack));
+        } else {
+            conditions.addAll(logMessageService.searchConditions(searchCriteria != null ? searchCriteria : Map.of()));
+        }
+
+        if (resumeFrom != null) {
+            conditions.add(resumeFrom.condition(rowSchema, parameters));
+        }
+
+        // (logged_on_utc, key) is unique, so the order is total and the cursor names exactly one row
+        StringBuilder sql = new StringBuilder("SELECT ").append(rowSchema.keyColumn()).append(",").append(ROW_COLUMNS)
+            .append(" FROM ").append(EXPORT_TABLE).append(" WITH (NOLOCK) WHERE 1=1");
+        for (String condition : conditions) {
+            sql.append(" AND ").append(condition);
+        }
+        sql.append(" ORDER BY logged_on_utc DESC, ").append(rowSchema.keyColumn()).append(" DESC");
+        return sql.toString();
+    }
+
+    private List<String> columnNames(ResultSetMetaData metaData) throws Exception {
+        List<String> columns = new ArrayList<>();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            columns.add(metaData.getColumnName(i));
+        }
+        return columns;
+    }
+
+    private String formatValue(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime().toString();
+        }
+        return String.valueOf(value);
+    }
+
+    // Resume key helpers
+
+    private ExportSchema schema() throws Exception {
+        ExportSchema current = schema;
+        if (current == null) {
+            synchronized (this) {
+                if (schema == null) {
+                    schema = loadSchema();
+                }
+                current = schema;
+            }
+        }
+        return current;
+    }
+
+    private ExportSchema loadSchema() throws Exception {
+        List<TableColumn> columns = new ArrayList<>();
+        connectionManager.streamQuery(SCHEMA_SQL, List.of(), 100, rs -> columns.add(new TableColumn(
+            rs.getString("column_name"), rs.getString("type_name"), rs.getInt("scale"),
+            rs.getBoolean("is_identity"), rs.getInt("is_unique_key") == 1)));
+        ExportSchema resolved = resolveSchema(columns, keyColumn);
+        System.out.println("Log export resumes row exports on logged_on_utc " + resolved.timestampType()
+            + ", " + resolved.keyColumn());
+        return resolved;
+    }
+
+    /**
+     * Pick the resume key from the table's integer columns: the configured column if it exists and is unique,
+     * otherwise the only single-column unique key (or identity column) of the table
+     */
+    static ExportSchema resolveSchema(List<TableColumn> columns, String configuredKey) {
+        if (columns.isEmpty()) {
+            throw new IllegalStateException("Log export: table " + EXPORT_TABLE + " not found");
+        }
+
+        TableColumn loggedOnUtc = columns.stream()
+            .filter(column -> column.name().equalsIgnoreCase("logged_on_utc"))
+            .findFirst()
+            .orElseThrow(() -> new IllegalStateException("Log export: " + EXPORT_TABLE + " has no logged_on_utc column"));
+        if (!TIMESTAMP_TYPES.contains(loggedOnUtc.typeName().toLowerCase())) {
+            throw new IllegalStateException("Log export: " + EXPORT_TABLE + ".logged_on_utc has unsupported type "
+                + loggedOnUtc.typeName());
+        }
+
+        List<TableColumn> keys = new ArrayList<>();
+        for (TableColumn column : columns) {
+            if ((column.uniqueKey() || column.identity()) && KEY_TYPES.contains(column.typeName().toLowerCase())) {
+                keys.add(column);
+            }
+        }
+        List<String> keyNames = keys.stream().map(TableColumn::name).toList();
+
+        TableColumn key;
+        if (configuredKey != null && !configuredKey.isBlank()) {
+            key = keys.stream()
+                .filter(column -> column.name().equalsIgnoreCase(configuredKey.trim()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Log export: log.export.key.column=" + configuredKey
+                    + " is not a unique or identity integer column of " + EXPORT_TABLE + " (candidates: " + keyNames + ")"));
+        } else {
+            List<TableColumn> uniqueKeys = keys.stream().filter(TableColumn::uniqueKey).toList();
+            List<TableColumn> candidates = uniqueKeys.size() == 1 ? uniqueKeys : keys;
+            if (candidates.size() != 1) {
+                throw new IllegalStateException("Log export: cannot choose a resume key for " + EXPORT_TABLE
+                    + "; set log.export.key.column to one of " + keyNames);
+            }
+            key = candidates.get(0);
+        }
+        if (!IDENTIFIER.matcher(key.name()).matches()) {
+            throw new IllegalStateException("Log export: unsupported key column name " + key.name());
+        }
+
+        return new ExportSchema(key.name(), loggedOnUtc.sqlType());
+    }
+
+    record TableColumn(String name, String typeName, int scale, boolean identity, boolean uniqueKey) {
+
+        String sqlType() {
+            String type = typeName.toLowerCase();
+            return type.equals("datetime2") || type.equals("datetimeoffset") ? type + "(" + scale + ")" : type;
+        }
+    }
+
+    /**
+     * Resume key of a row export: the unique key column and the declared type of logged_on_utc
+     */
+    record ExportSchema(String keyColumn, String timestampType) {
+    }
+
+    // Resume cursor helpers
+
+    /**
+     * Position in a newest-first row export: the timestamp and unique key of the last exported row
+     */
+    record ExportCursor(LocalDateTime loggedOnUtc, long key) {
+
+        private static final String VERSION = "2";
+
+        String encode() {
+            String raw = VERSION + "|" + loggedOnUtc + "|" + key;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static ExportCursor decode(String cursor) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+                if (parts.length != 3 || !VERSION.equals(parts[0])) {
+                    throw new IllegalArgumentException("Unsupported cursor version");
+                }
+                return new ExportCursor(LocalDateTime.parse(parts[1]), Long.parseLong(parts[2]));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid export cursor: " + cursor);
+            }
+        }
+
+        /**
+         * Keyset predicate selecting the rows after this one in (logged_on_utc DESC, key DESC) order.
+         * The timestamp is cast to the column's own type: the driver sends it as datetime2, and a datetime
+         * value compared as datetime2 (e.g. .003 vs .0033333) never equals the cursor, skipping tied rows.
+         */
+        String condition(ExportSchema schema, List<Object> parameters) {
+            Timestamp timestamp = Timestamp.valueOf(loggedOnUtc);
+            parameters.add(timestamp);
+            parameters.add(timestamp);
+            parameters.add(key);
+            String cursorTime = "CAST(? AS " + schema.timestampType() + ")";
+            return "(logged_on_utc < " + cursorTime + " OR (logged_on_utc = " + cursorTime
+                + " AND " + schema.keyColumn() + " < ?))";
+        }
+    }
+
+    // Output writers
+
+    private interface ExportWriter {
+        boolean hasHeader();
+        void writeHeader(List<String> columns) throws IOException;
+        void writeRow(String[] values, String cursor) throws IOException;
+        void finish() throws IOException;
+    }
+
+    /**
+     * Gzip-compressed CSV (RFC 4180 quoting). Flushes through the gzip stream every
+     * flushRows rows so the client receives data continuously.
+     */
+    private static class CsvExportWriter implements ExportWriter {
+        private final GZIPOutputStream gzip;
+        private final Writer writer;
+        private final int flushRows;
+        private final boolean includeCursor;
+        private boolean headerWritten;
+        private long rowsSinceFlush;
+
+        CsvExportWriter(OutputStream out, int flushRows, boolean includeCursor) throws IOException {
+            this.gzip = new GZIPOutputStream(out, 64 * 1024, true);
+            this.writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), 64 * 1024);
+            this.flushRows = flushRows;
+            this.includeCursor = includeCursor;
+        }
+
+        @Override
+        public boolean hasHeader() {
+            return headerWritten;
+        }
+
+        @Override
+        public void writeHeader(List<String> columns) throws IOException {
+            if (includeCursor) {
+                writer.write("export_cursor,");
+            }
+            writeFields(columns.toArray(new String[0]));
+            headerWritten = true;
+        }
+
+        @Override
+        public void writeRow(String[] values, String cursor) throws IOException {
+            if (includeCursor) {
+                writer.write(cursor != null ? cursor : "");
+                writer.write(',');
+            }
+            writeFields(values);
+            if (++rowsSinceFlush >= flushRows) {
+                writer.flush();
+                rowsSinceFlush = 0;
+            }
+        }
+
+        private void writeFields(String[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeField(values[i]);
+            }
+            writer.write("\r\n");
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean needsQuotes = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            if (!needsQuotes) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+            gzip.finish();
+            gzip.flush();
+        }
+    }
+
+    /**
+     * Gzip-compressed columnar file (.jcol.gz). Rows are buffered into fixed-size blocks
+     * and each column of a block is dictionary encoded, which collapses the heavily
+     * repeated machine/user/resource values far better than row-wise CSV.
+     *
+     * Layout (all lengths and indexes are unsigned LEB128 varints, strings UTF-8):
+     *   "JCOL" version:byte columnCount { name }
+     *   { rowCount (>0) { dictSize { value } rowCount x index (0 = null, n = dict[n-1]) } cursor }
+     *   0
+     * cursor is empty for aggregated reports.
+     */
+    private static class ColumnarExportWriter implements ExportWriter {
+        private static final byte VERSION = 1;
+
+        private final GZIPOutputStream gzip;
+        private final DataOutputStream data;
+        private final int blockRows;
+        private List<List<String>> blockColumns;
+        private int rowsInBlock;
+        private String blockCursor;
+
+        ColumnarExportWriter(OutputStream out, int blockRows) throws IOException {
+            this.gzip = new GZIPOutputStream(out, 64 * 1024, true);
+            this.data = new DataOutputStream(gzip);
+            this.blockRows = blockRows;
+        }
+
+        @Override
+        public boolean hasHeader() {
+            return blockColumns != null;
+        }
+
+        @Override
+        public void writeHeader(List<String> columns) throws IOException {
+            data.writeBytes("JCOL");
+            data.writeByte(VERSION);
+            writeVarInt(columns.size());
+            for (String column : columns) {
+                writeString(column);
+            }
+            blockColumns = new ArrayList<>();
+            for (int i = 0; i < columns.size(); i++) {
+                blockColumns.add(new ArrayList<>(blockRows));
+            }
+        }
+
+        @Override
+        public void writeRow(String[] values, String cursor) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                blockColumns.get(i).add(values[i]);
+            }
+            blockCursor = cursor;
+            if (++rowsInBlock >= blockRows) {
+                writeBlock();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (rowsInBlock == 0) {
+                return;
+            }
+            writeVarInt(rowsInBlock);
+            for (List<String> column : blockColumns) {
+                Map<String, Integer> dictionary = new LinkedHashMap<>();
+                int[] indexes = new int[column.size()];
+                for (int row = 0; row < column.size(); row++) {
+                    String value = column.get(row);
+                    indexes[row] = value == null ? 0 : dictionary.computeIfAbsent(value, v -> dictionary.size() + 1);
+                }
+                writeVarInt(dictionary.size());
+                for (String value : dictionary.keySet()) {
+                    writeString(value);
+                }
+                for (int index : indexes) {
+                    writeVarInt(index);
+                }
+                column.clear();
+            }
+            writeString(blockCursor != null ? blockCursor : "");
+            rowsInBlock = 0;
+            data.flush();
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            data.write(bytes);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                data.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data.writeByte(value);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (blockColumns == null) {
+                writeHeader(List.of());
+            }
+            writeBlock();
+            writeVarInt(0);
+            data.flush();
+            gzip.finish();
+            gzip.flush();
+        }
+    }
+}
@@ -29,13 +29,11 @@ public class LogMessageService {
                 call_stack, 
                 arguments 
             FROM ADV.dbo.t_log_message WITH (NOLOCK) 
-            WHERE logged_on_utc >= DATEADD(day, ?, GETUTCDATE()) 
-                AND resource_name LIKE 'CANT_EXE_DB%' 
-                AND call_stack <> '1: Process Exacta Divert Confirmation:32' 
+            WHERE %s 
             ORDER BY logged_on_utc DESC
-            """;
+            """.formatted(recentDatabaseErrorsFilter(daysBack));
         
-        Map<String, Object> result = connectionManager.executeQuery(sql.replace("?", String.valueOf(-daysBack)));
+        Map<String, Object> result = connectionManager.executeQuery(sql);
         
         // Add metadata
         result.put("queryType", "recent_database_errors");
@@ -52,18 +50,9 @@ public class LogMessageService {
      * @return Map containing aggregated daily statistics
      */
     public Map<String, Object> getDailySummaryByResourceType(int daysBack) throws Exception {
-        String sql = """
-            SELECT 
-                CAST(logged_on_local AS DATE) as log_date, 
-                resource_name, 
-                COUNT(*) as message_count 
-            FROM ADV.dbo.t_log_message WITH (NOLOCK) 
-            WHERE logged_on_utc >= DATEADD(day, ?, GETUTCDATE()) 
-            GROUP BY CAST(logged_on_local AS DATE), resource_name 
-            ORDER BY log_date DESC, message_count DESC
-            """;
+        String sql = dailySummaryByResourceTypeSql(daysBack);
         
-        Map<String, Object> result = connectionManager.executeQuery(sql.replace("?", String.valueOf(-daysBack)));
+        Map<String, Object> result = connectionManager.executeQuery(sql);
         
         result.put("queryType", "daily_summary_by_resource");
         result.put("daysBack", daysBack);
@@ -79,18 +68,9 @@ public class LogMessageService {
      * @return Map containing hourly error statistics
      */
     public Map<String, Object> getHourlyErrorTrends(int daysBack) throws Exception {
-        String sql = """
-            SELECT 
-                DATEPART(hour, logged_on_local) as hour_of_day, 
-                COUNT(*) as error_count 
-            FROM ADV.dbo.t_log_message WITH (NOLOCK) 
-            WHERE logged_on_utc >= DATEADD(day, ?, GETUTCDATE()) 
-                AND resource_name LIKE '%ERROR%' 
-            GROUP BY DATEPART(hour, logged_on_local) 
-            ORDER BY hour_of_day
-            """;
+        String sql = hourlyErrorTrendsSql(daysBack);
         
-        Map<String, Object> result = connectionManager.executeQuery(sql.replace("?", String.valueOf(-daysBack)));
+        Map<String, Object> result = connectionManager.executeQuery(sql);
         
         result.put("queryType", "hourly_error_trends");
         result.put("daysBack", daysBack);
@@ -107,19 +87,9 @@ public class LogMessageService {
      * @return Map containing top user activity statistics
      */
     public Map<String, Object> getTopUsersByActivity(int daysBack, int topCount) throws Exception {
-        String sql = """
-            SELECT TOP %d 
-                user_id, 
-                COUNT(*) as activity_count, 
-                MIN(logged_on_local) as first_activity, 
-                MAX(logged_on_local) as last_activity 
-            FROM ADV.dbo.t_log_message WITH (NOLOCK) 
-            WHERE logged_on_utc >= DATEADD(day, ?, GETUTCDATE()) 
-            GROUP BY user_id 
-            ORDER BY activity_count DESC
-            """.formatted(topCount);
+        String sql = topUsersByActivitySql(daysBack, topCount);
         
-        Map<String, Object> result = connectionManager.executeQuery(sql.replace("?", String.valueOf(-daysBack)));
+        Map<String, Object> result = connectionManager.executeQuery(sql);
         
         result.put("queryType", "top_users_by_activity");
         result.put("daysBack", daysBack);
@@ -136,18 +106,9 @@ public class LogMessageService {
      * @return Map containing hourly user activity patterns
      */
     public Map<String, Object> getUserActivityByHour(int daysBack) throws Exception {
-        String sql = """
-            SELECT 
-                DATEPART(hour, logged_on_local) as hour_of_day, 
-                COUNT(DISTINCT user_id) as unique_users, 
-                COUNT(*) as total_activities 
-            FROM ADV.dbo.t_log_message WITH (NOLOCK) 
-            WHERE logged_on_utc >= DATEADD(day, ?, GETUTCDATE()) 
-            GROUP BY DATEPART(hour, logged_on_local) 
-            ORDER BY hour_of_day
-            """;
+        String sql = userActivityByHourSql(daysBack);
         
-        Map<String, Object> result = connectionManager.executeQuery(sql.replace("?", String.valueOf(-daysBack)));
+        Map<String, Object> result = connectionManager.executeQuery(sql);
         
         result.put("queryType", "user_activity_by_hour");
         result.put("daysBack", daysBack);
@@ -196,20 +157,9 @@ public class LogMessageService {
      * @return Map containing daily volume trend data
      */
     public Map<String, Object> getDailyVolumeTrends(int daysBack) throws Exception {
-        String sql = """
-            SELECT 
-                CAST(logged_on_local AS DATE) as log_date, 
-                COUNT(*) as total_messages, 
-                COUNT(DISTINCT user_id) as unique_users, 
-                COUNT(DISTINCT machine_id) as unique_machines,
-                COUNT(CASE WHEN resource_name LIKE '%ERROR%' THEN 1 END) as error_count
-            FROM ADV.dbo.t_log_message WITH (NOLOCK) 
-            WHERE logged_on_utc >= DATEADD(day, ?, GETUTCDATE()) 
-            GROUP BY CAST(logged_on_local AS DATE) 
-            ORDER BY log_date DESC
-            """;
+        String sql = dailyVolumeTrendsSql(daysBack);
         
-        Map<String, Object> result = connectionManager.executeQuery(sql.replace("?", String.valueOf(-daysBack)));
+        Map<String, Object> result = connectionManager.executeQuery(sql);
         
         result.put("queryType", "daily_volume_trends");
         result.put("daysBack", daysBack);
@@ -238,6 +188,90 @@ public class LogMessageService {
             WHERE 1=1
             """);
         
+        List<String> conditions = searchConditions(searchCriteria);
+        
+        // Add conditions to SQL
+        for (String condition : conditions) {
+            sql.append(" AND ").append(condition);
+        }
+        
+        sql.append(" ORDER BY logged_on_utc DESC");
+        
+        Map<String, Object> result = connectionManager.executeQuery(sql.toString());
+        
+        result.put("queryType", "search_log_messages");
+        result.put("searchCriteria", searchCriteria);
+        result.put("description", "Filtered log messages based on search criteria");
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return result;
+    }
+
+    // Dashboard aggregates
+    
+    /**
+     * Get the system monitoring dashboard (recent errors, hourly error trends, system health)
+     * @param daysBack Number of days to analyze
+     * @return Map containing the dashboard sections
+     */
+    public Map<String, Object> getSystemMonitoringDashboard(int daysBack) throws Exception {
+        Map<String, Object> dashboard = new HashMap<>();
+        
+        // Get multiple metrics for the dashboard
+        dashboard.put("recentErrors", getRecentDatabaseErrors(daysBack));
+        dashboard.put("errorTrends", getHourlyErrorTrends(daysBack));
+        dashboard.put("systemHealth", getSystemHealthSummary());
+        
+        dashboard.put("dashboardType", "system-monitoring");
+        dashboard.put("daysBack", daysBack);
+        
+        return dashboard;
+    }
+    
+    /**
+     * Get the user analytics dashboard (top users, activity by hour)
+     * @param daysBack Number of days to analyze
+     * @return Map containing the dashboard sections
+     */
+    public Map<String, Object> getUserAnalyticsDashboard(int daysBack) throws Exception {
+        Map<String, Object> dashboard = new HashMap<>();
+        
+        dashboard.put("topUsers", getTopUsersByActivity(daysBack, 20));
+        dashboard.put("activityByHour", getUserActivityByHour(daysBack));
+        
+        dashboard.put("dashboardType", "user-analytics");
+        dashboard.put("daysBack", daysBack);
+        
+        return dashboard;
+    }
+    
+    /**
+     * Get the operations overview dashboard (daily summary, volume trends)
+     * @param daysBack Number of days to analyze
+     * @return Map containing the dashboard sections
+     */
+    public Map<String, Object> getOperationsOverviewDashboard(int daysBack) throws Exception {
+        Map<String, Object> dashboard = new HashMap<>();
+        
+        dashboard.put("dailySummary", getDailySummaryByResourceType(daysBack));
+        dashboard.put("volumeTrends", getDailyVolumeTrends(daysBack));
+        
+        dashboard.put("dashboardType", "operations-overview");
+        dashboard.put("daysBack", daysBack);
+        
+        return dashboard;
+    }
+
+    // SQL builders, shared with the export and federation paths
+
+    String recentDatabaseErrorsFilter(int daysBack) {
+        return """
+            logged_on_utc >= DATEADD(day, %d, GETUTCDATE()) 
+                AND resource_name LIKE 'CANT_EXE_DB%%' 
+                AND call_stack <> '1: Process Exacta Divert Confirmation:32'""".formatted(-daysBack);
+    }
+
+    List<String> searchConditions(Map<String, Object> searchCriteria) {
         List<String> conditions = new ArrayList<>();
         
         // Add dynamic conditions based on search criteria
@@ -261,20 +295,74 @@ public class LogMessageService {
             conditions.add("machine_id LIKE '%" + machineId.replace("'", "''") + "%'");
         }
         
-        // Add conditions to SQL
-        for (String condition : conditions) {
-            sql.append(" AND ").append(condition);
-        }
-        
-        sql.append(" ORDER BY logged_on_utc DESC");
-        
-        Map<String, Object> result = connectionManager.executeQuery(sql.toString());
-        
-        result.put("queryType", "search_log_messages");
-        result.put("searchCriteria", searchCriteria);
-        result.put("description", "Filtered log messages based on search criteria");
-        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        
-        return result;
+        return conditions;
+    }
+
+    String dailySummaryByResourceTypeSql(int daysBack) {
+        return """
+            SELECT 
+                CAST(logged_on_local AS DATE) as log_date, 
+                resource_name, 
+                COUNT(*) as message_count 
+            FROM ADV.dbo.t_log_message WITH (NOLOCK) 
+            WHERE logged_on_utc >= DATEADD(day, ?, GETUTCDATE()) 
+            GROUP BY CAST(logged_on_local AS DATE), resource_name 
+            ORDER BY log_date DESC, message_count DESC
+            """.replace("?", String.valueOf(-daysBack));
+    }
+
+    String hourlyErrorTrendsSql(int daysBack) {
+        return """
+            SELECT 
+                DATEPART(hour, logged_on_local) as hour_of_day, 
+                COUNT(*) as error_count 
+            FROM ADV.dbo.t_log_message WITH (NOLOCK) 
+            WHERE logged_on_utc >= DATEADD(day, ?, GETUTCDATE()) 
+                AND resource_name LIKE '%ERROR%' 
+            GROUP BY DATEPART(hour, logged_on_local) 
+            ORDER BY hour_of_day
+            """.replace("?", String.valueOf(-daysBack));
+    }
+
+    String topUsersByActivitySql(int daysBack, int topCount) {
+        return """
+            SELECT TOP %d 
+                user_id, 
+                COUNT(*) as activity_count, 
+                MIN(logged_on_local) as first_activity, 
+                MAX(logged_on_local) as last_activity 
+            FROM ADV.dbo.t_log_message WITH (NOLOCK) 
+            WHERE logged_on_utc >= DATEADD(day, ?, GETUTCDATE()) 
+            GROUP BY user_id 
+            ORDER BY activity_count DESC
+            """.formatted(topCount).replace("?", String.valueOf(-daysBack));
+    }
+
+    String userActivityByHourSql(int daysBack) {
+        return """
+            SELECT 
+                DATEPART(hour, logged_on_local) as hour_of_day, 
+                COUNT(DISTINCT user_id) as unique_users, 
+                COUNT(*) as total_activities 
+            FROM ADV.dbo.t_log_message WITH (NOLOCK) 
+            WHERE logged_on_utc >= DATEADD(day, ?, GETUTCDATE()) 
+            GROUP BY DATEPART(hour, logged_on_local) 
+            ORDER BY hour_of_day
+            """.replace("?", String.valueOf(-daysBack));
+    }
+
+    String dailyVolumeTrendsSql(int daysBack) {
+        return """
+            SELECT 
+                CAST(logged_on_local AS DATE) as log_date, 
+                COUNT(*) as total_messages, 
+                COUNT(DISTINCT user_id) as unique_users, 
+                COUNT(DISTINCT machine_id) as unique_machines,
+                COUNT(CASE WHEN resource_name LIKE '%ERROR%' THEN 1 END) as error_count
+            FROM ADV.dbo.t_log_message WITH (NOLOCK) 
+            WHERE logged_on_utc >= DATEADD(day, ?, GETUTCDATE()) 
+            GROUP BY CAST(logged_on_local AS DATE) 
+            ORDER BY log_date DESC
+            """.replace("?", String.valueOf(-daysBack));
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
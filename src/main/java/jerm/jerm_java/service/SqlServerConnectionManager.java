@@ -20,8 +20,10 @@ import java.util.concurrent.atomic.AtomicLong;
 @Service
 public class SqlServerConnectionManager {
     
-    private HikariDataSource dataSource;
+    private volatile HikariDataSource dataSource;
     private SqlServerConfig config;
+    private int maximumPoolSize = 10;
+    private int queryTimeoutSeconds = 0;
     
     // Statistics
     private final AtomicInteger totalConnections = new AtomicInteger(0);
@@ -49,6 +51,21 @@ public class SqlServerConnectionManager {
     @Value("${DB_INTEGRATED_SECURITY:false}")
     private Boolean integratedSecurity;
     
+    public SqlServerConnectionManager() {}
+    
+    /**
+     * Standalone manager for an additional server (e.g. a federated site), outside the
+     * environment-driven default. The pool is created lazily on first use.
+     * @param config Server connection configuration
+     * @param maximumPoolSize Pool size for this server
+     * @param queryTimeoutSeconds Statement timeout for streamed queries (0 = none)
+     */
+    public SqlServerConnectionManager(SqlServerConfig config, int maximumPoolSize, int queryTimeoutSeconds) {
+        this.config = config;
+        this.maximumPoolSize = maximumPoolSize;
+        this.queryTimeoutSeconds = queryTimeoutSeconds;
+    }
+    
     @PostConstruct
     public void initialize() {
         // Debug: Print the actual values being used
@@ -87,8 +104,8 @@ public class SqlServerConnectionManager {
         }
         
         // Connection pool settings
-        hikariConfig.setMaximumPoolSize(10);
-        hikariConfig.setMinimumIdle(2);
+        hikariConfig.setMaximumPoolSize(maximumPoolSize);
+        hikariConfig.setMinimumIdle(Math.min(2, maximumPoolSize));
         hikariConfig.setConnectionTimeout(30000);
         hikariConfig.setIdleTimeout(600000);
         hikariConfig.setMaxLifetime(1800000);
@@ -96,6 +113,9 @@ public class SqlServerConnectionManager {
         // SQL Server specific settings
         hikariConfig.setDriverClassName("com.microsoft.sqlserver.jdbc.SQLServerDriver");
         hikariConfig.addDataSourceProperty("applicationName", "Jerm Java App");
+        if (config.getName() != null) {
+            hikariConfig.setPoolName("sqlserver-" + config.getName());
+        }
         
         dataSource = new HikariDataSource(hikariConfig);
         
@@ -105,10 +125,14 @@ public class SqlServerConnectionManager {
     public Connection getConnection() throws SQLException {
         if (dataSource == null) {
             // Try to initialize lazily
-            try {
-                initializeConnectionPool();
-            } catch (Exception e) {
-                throw new SQLException("Failed to initialize connection pool: " + e.getMessage());
+            synchronized (this) {
+                if (dataSource == null) {
+                    try {
+                        initializeConnectionPool();
+                    } catch (Exception e) {
+                        throw new SQLException("Failed to initialize connection pool: " + e.getMessage());
+                    }
+                }
             }
         }
         
@@ -197,6 +221,85 @@ public class SqlServerConnectionManager {
         }
     }
     
+    /**
+     * Callback invoked once per row while a query is streamed
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        void handleRow(ResultSet rs) throws Exception;
+    }
+
+    /**
+     * Stream a query row by row from the JDBC cursor instead of materializing it.
+     * Unlike executeQuery there is no row cap; memory use depends only on the fetch size.
+     * If the handler throws (e.g. the HTTP client went away) the statement is cancelled
+     * so the driver doesn't drain the remaining rows before closing.
+     * @param sql Query to run (positional ? parameters)
+     * @param parameters Values bound to the ? placeholders, in order
+     * @param fetchSize Rows the driver fetches per round trip
+     * @param handler Callback invoked for each row
+     * @return Number of rows handed to the handler
+     */
+    public long streamQuery(String sql, java.util.List<Object> parameters, int fetchSize, RowHandler handler) throws Exception {
+        return streamQuery(sql, parameters, fetchSize, queryTimeoutSeconds, handler);
+    }
+
+    /**
+     * Stream a query with its own statement timeout, so the server stops the query even when
+     * the caller has already given up on it
+     * @param timeoutSeconds Statement timeout in seconds (0 = none)
+     */
+    public long streamQuery(String sql, java.util.List<Object> parameters, int fetchSize, int timeoutSeconds,
+                            RowHandler handler) throws Exception {
+        totalQueries.incrementAndGet();
+
+        Connection connection = getConnection();
+        PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize);
+            if (timeoutSeconds > 0) {
+                stmt.setQueryTimeout(timeoutSeconds);
+            }
+            for (int i = 0; i < parameters.size(); i++) {
+                stmt.setObject(i + 1, parameters.get(i));
+            }
+
+            long rowCount = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                try {
+                    while (rs.next()) {
+                        handler.handleRow(rs);
+                        rowCount++;
+                    }
+                } catch (Exception e) {
+                    // Cancel while the result set is still open; closing it first would drain the remaining rows
+                    try {
+                        stmt.cancel();
+                    } catch (SQLException cancelError) {
+                        System.err.println("Error cancelling streamed query: " + cancelError.getMessage());
+                    }
+                    throw e;
+                }
+            }
+
+            successfulQueries.incrementAndGet();
+            return rowCount;
+        } catch (Exception e) {
+            failedQueries.incrementAndGet();
+            throw e;
+        } finally {
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException closeError) {
+                    System.err.println("Error closing streamed query: " + closeError.getMessage());
+                }
+            }
+            releaseConnection(connection);
+        }
+    }
+
     public Map<String, Object> getConnectionStatistics() {
         Map<String, Object> stats = new HashMap<>();
         stats.put("totalConnections", totalConnections.get());
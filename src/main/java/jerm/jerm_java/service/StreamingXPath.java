@@ -0,0 +1,286 @@
+package jerm.jerm_java.service;
+
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * StAX evaluator for the XPath subset used by the XML extraction endpoints:
+ *
+ *   /a/b, //a, //a//b, /*, //*           child and descendant steps, names or *
+ *   //a[@type], //a[@type='error']       attribute presence / equality predicates
+ *   //a/@id, //@id                       final attribute selection
+ *
+ * Anything else (functions, positional predicates, text(), axes) is rejected by compile()
+ * so the caller can fall back to DOM. Matching runs a small NFA over the element stack: each
+ * open element keeps a bitmask of which steps may match its children, so memory depends on
+ * nesting depth, not on document size. Results are delivered in document order with the same
+ * value/attributes a DOM evaluation would give (text content for elements, the value for
+ * attributes), except that the bounded evaluate() cuts off element text at its value limit.
+ * The evaluation itself is done by StreamingXPathSet, which runs any number of paths in one pass.
+ */
+public final class StreamingXPath {
+
+    @FunctionalInterface
+    public interface MatchHandler {
+        void onMatch(String value, Map<String, String> attributes) throws Exception;
+    }
+
+    private final String expression;
+    final Step[] steps;
+    final String attribute;
+
+    private StreamingXPath(String expression, Step[] steps, String attribute) {
+        this.expression = expression;
+        this.steps = steps;
+        this.attribute = attribute;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Names every matching document must contain: named element steps, predicate attributes
+     * and the selected attribute. Wildcard steps contribute nothing.
+     */
+    public List<String> requiredNames() {
+        Set<String> names = new LinkedHashSet<>();
+        for (Step step : steps) {
+            if (step.name != null) {
+                names.add(step.name);
+            }
+            for (String[] predicate : step.predicates) {
+                names.add(predicate[0]);
+            }
+        }
+        if (attribute != null) {
+            names.add(attribute);
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Attribute values every matching document must contain (from [@a='v'] predicates)
+     */
+    public List<String> requiredValues() {
+        Set<String> values = new LinkedHashSet<>();
+        for (Step step : steps) {
+            for (String[] predicate : step.predicates) {
+                if (predicate[1] != null && !predicate[1].isEmpty()) {
+                    values.add(predicate[1]);
+                }
+            }
+        }
+        return new ArrayList<>(values);
+    }
+
+    /**
+     * Compile an expression if it falls inside the streamable subset
+     * @param expression XPath expression
+     * @return Compiled path, or null if the expression needs DOM evaluation
+     */
+    public static StreamingXPath compile(String expression) {
+        if (expression == null) {
+            return null;
+        }
+        Parser parser = new Parser(expression.trim());
+        List<Step> steps = new ArrayList<>();
+        String attribute = null;
+
+        while (!parser.atEnd()) {
+            boolean descendant;
+            if (parser.consume("//")) {
+                descendant = true;
+            } else if (parser.consume("/")) {
+                descendant = false;
+            } else {
+                return null;
+            }
+
+            if (parser.consume("@")) {
+                attribute = parser.name();
+                // Only a leading //@x (every element) or a final /@x on an element step is supported
+                if (attribute == null || !parser.atEnd() || (descendant && !steps.isEmpty()) || (!descendant && steps.isEmpty())) {
+                    return null;
+                }
+                if (descendant) {
+                    steps.add(new Step(null, true, List.of()));
+                }
+                break;
+            }
+
+            boolean wildcard = parser.consume("*");
+            String name = wildcard ? null : parser.name();
+            if (!wildcard && name == null) {
+                return null;
+            }
+
+            List<String[]> predicates = new ArrayList<>();
+            while (parser.consume("[")) {
+                if (!parser.consume("@")) {
+                    return null;
+                }
+                String predicateName = parser.name();
+                if (predicateName == null) {
+                    return null;
+                }
+                String predicateValue = null;
+                if (parser.consume("=")) {
+                    predicateValue = parser.quoted();
+                    if (predicateValue == null) {
+                        return null;
+                    }
+                }
+                if (!parser.consume("]")) {
+                    return null;
+                }
+                predicates.add(new String[] { predicateName, predicateValue });
+            }
+            steps.add(new Step(name, descendant, predicates));
+
+            if (!parser.atEnd() && parser.peek() != '/') {
+                return null;
+            }
+        }
+
+        if (steps.isEmpty() || steps.size() > 63) {
+            return null;
+        }
+        return new StreamingXPath(expression, steps.toArray(new Step[0]), attribute);
+    }
+
+    /**
+     * Stream a document and report every match in document order
+     * @param input XML document
+     * @param handler Receives each match's value and attributes
+     */
+    public void evaluate(InputStream input, MatchHandler handler) throws Exception {
+        evaluate(input, handler, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Stream a document and report matches in document order, holding at most a bounded amount
+     * of it (see StreamingXPathSet)
+     * @param input XML document
+     * @param handler Receives each match's value and attributes
+     * @param maxMatches Stop reading as soon as a match past this many starts
+     * @param maxValueChars Longest element text reported; longer text is cut off
+     * @return false if the evaluation stopped at maxMatches; matches not yet reported then are dropped
+     */
+    public boolean evaluate(InputStream input, MatchHandler handler, int maxMatches, int maxValueChars) throws Exception {
+        return new StreamingXPathSet(List.of(this)).evaluate(input,
+            (selector, value, attributes) -> handler.onMatch(value, attributes), maxMatches, maxValueChars);
+    }
+
+    static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    // Matches DOM XPath over a non-namespace-aware document: element tests see the raw
+    // qualified name, attribute tests see the part after the colon
+    static String localPart(String name) {
+        int colon = name.indexOf(':');
+        return colon >= 0 ? name.substring(colon + 1) : name;
+    }
+
+    /**
+     * Attributes of the element being matched, from either a StAX reader or a DOM element
+     */
+    interface AttributeSource {
+        int count();
+
+        String name(int index);
+
+        String value(int index);
+
+        default String value(String localName) {
+            for (int i = 0; i < count(); i++) {
+                if (localName.equals(localPart(name(i)))) {
+                    return value(i);
+                }
+            }
+            return null;
+        }
+    }
+
+    static class Step {
+        final String name;
+        final boolean descendant;
+        final List<String[]> predicates;
+
+        Step(String name, boolean descendant, List<String[]> predicates) {
+            this.name = name;
+            this.descendant = descendant;
+            this.predicates = predicates;
+        }
+
+        boolean matches(String elementName, AttributeSource attributes) {
+            if (name != null && !name.equals(elementName)) {
+                return false;
+            }
+            for (String[] predicate : predicates) {
+                String value = attributes.value(predicate[0]);
+                if (value == null || (predicate[1] != null && !predicate[1].equals(value))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Parser {
+        private final String input;
+        private int position;
+
+        Parser(String input) {
+            this.input = input;
+        }
+
+        boolean atEnd() {
+            return position >= input.length();
+        }
+
+        char peek() {
+            return input.charAt(position);
+        }
+
+        boolean consume(String token) {
+            if (input.startsWith(token, position)) {
+                position += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        String name() {
+            int start = position;
+            while (position < input.length()) {
+                char c = input.charAt(position);
+                boolean valid = Character.isLetter(c) || c == '_'
+                    || (position > start && (Character.isDigit(c) || c == '-' || c == '.'));
+                if (!valid) {
+                    break;
+                }
+                position++;
+            }
+            return position > start ? input.substring(start, position) : null;
+        }
+
+        String quoted() {
+            if (atEnd()) {
+                return null;
+            }
+            char quote = peek();
+            if (quote != '\'' && quote != '"') {
+                return null;
+            }
+            int end = input.indexOf(quote, position + 1);
+            if (end < 0) {
+                return null;
+            }
+            String value = input.substring(position + 1, end);
+            position = end + 1;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package jerm.jerm_java.service;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Evaluates several streamable paths in a single traversal of a document, either a StAX pass
+ * over the raw file or one walk of an already-parsed DOM. Every path keeps its own NFA bitmask
+ * per open element (see StreamingXPath), while the element stack and the document traversal
+ * are shared, so the cost grows with document size rather than with document size times the
+ * number of selectors. Matches are reported per path in document order with the value/attributes
+ * a DOM XPath evaluation would give.
+ *
+ * Memory is bounded by the limits passed to evaluate(), not by the document. Each element match
+ * keeps its own text, up to maxValueChars, and is reported as soon as its value is known: at its
+ * end tag or once its text reaches the limit. So an outer match (the root under //*) doesn't hold
+ * back everything inside it. If more than MAX_PENDING_MATCHES matches of a path queue up behind
+ * an outer match that is still open, its value is cut off there too.
+ */
+public final class StreamingXPathSet {
+
+    @FunctionalInterface
+    public interface MatchHandler {
+        void onMatch(int path, String value, Map<String, String> attributes) throws Exception;
+    }
+
+    // Matches of one path that may wait behind an outer match whose value isn't known yet
+    static final int MAX_PENDING_MATCHES = 4096;
+
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORIES = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
+
+    private final StreamingXPath[] paths;
+
+    public StreamingXPathSet(List<StreamingXPath> paths) {
+        this.paths = paths.toArray(new StreamingXPath[0]);
+    }
+
+    /**
+     * Stream a document once and report the matches of every path
+     * @param input XML document
+     * @param handler Receives each match with the index of the path that produced it
+     */
+    public void evaluate(InputStream input, MatchHandler handler) throws Exception {
+        evaluate(input, handler, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Stream a document once and report the matches of every path, holding a bounded amount of it
+     * @param input XML document
+     * @param handler Receives each match with the index of the path that produced it
+     * @param maxMatches Stop reading as soon as a match past this many (over all paths) starts
+     * @param maxValueChars Longest element text reported; longer text is cut off
+     * @return false if the evaluation stopped at maxMatches; matches not yet reported then are dropped
+     */
+    public boolean evaluate(InputStream input, MatchHandler handler, int maxMatches, int maxValueChars) throws Exception {
+        XMLStreamReader reader = INPUT_FACTORIES.get().createXMLStreamReader(input);
+        try {
+            Evaluation evaluation = new Evaluation(handler, maxMatches, maxValueChars);
+            StreamingXPath.AttributeSource attributes = new StreamingXPath.AttributeSource() {
+                @Override
+                public int count() {
+                    return reader.getAttributeCount();
+                }
+
+                @Override
+                public String name(int index) {
+                    return StreamingXPath.qualifiedName(reader.getAttributePrefix(index), reader.getAttributeLocalName(index));
+                }
+
+                @Override
+                public String value(int index) {
+                    return reader.getAttributeValue(index);
+                }
+            };
+
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> {
+                        if (!evaluation.startElement(StreamingXPath.qualifiedName(reader.getPrefix(), reader.getLocalName()), attributes)) {
+                            return false;
+                        }
+                    }
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                        if (evaluation.collectingText()) {
+                            evaluation.text(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                    }
+                    case XMLStreamConstants.END_ELEMENT -> evaluation.endElement();
+                    default -> {
+                    }
+                }
+                evaluation.flush();
+            }
+            return true;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Walk a parsed (non-namespace-aware) document once and report the matches of every path
+     * @param document Parsed document
+     * @param handler Receives each match with the index of the path that produced it
+     */
+    public void evaluate(Document document, MatchHandler handler) throws Exception {
+        evaluate(document, handler, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Walk a parsed document once with the same limits as a bounded StAX pass, so both give the same values
+     * @return false if the walk stopped at maxMatches
+     */
+    public boolean evaluate(Document document, MatchHandler handler, int maxMatches, int maxValueChars) throws Exception {
+        Evaluation evaluation = new Evaluation(handler, maxMatches, maxValueChars);
+        Node node = document.getFirstChild();
+        while (node != null) {
+            switch (node.getNodeType()) {
+                case Node.ELEMENT_NODE -> {
+                    if (!evaluation.startElement(((Element) node).getTagName(), domAttributes(node.getAttributes()))) {
+                        return false;
+                    }
+                }
+                case Node.TEXT_NODE, Node.CDATA_SECTION_NODE -> {
+                    if (evaluation.collectingText()) {
+                        String text = node.getNodeValue();
+                        evaluation.text(text.toCharArray(), 0, text.length());
+                    }
+                }
+                default -> {
+                }
+            }
+            evaluation.flush();
+
+            // Entity references hold their replacement nodes as children; text content includes them
+            Node child = node.getNodeType() == Node.ELEMENT_NODE || node.getNodeType() == Node.ENTITY_REFERENCE_NODE
+                ? node.getFirstChild() : null;
+            if (child != null) {
+                node = child;
+                continue;
+            }
+
+            // Leave this node and any ancestors whose last child it was
+            while (node != null) {
+                if (node.getNodeType() == Node.ELEMENT_NODE) {
+                    evaluation.endElement();
+                    evaluation.flush();
+                }
+                Node sibling = node.getNextSibling();
+                if (sibling != null) {
+                    node = sibling;
+                    break;
+                }
+                node = node.getParentNode();
+                if (node == document) {
+                    node = null;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static StreamingXPath.AttributeSource domAttributes(NamedNodeMap attributes) {
+        return new StreamingXPath.AttributeSource() {
+            @Override
+            public int count() {
+                return attributes.getLength();
+            }
+
+            @Override
+            public String name(int index) {
+                return attributes.item(index).getNodeName();
+            }
+
+            @Override
+            public String value(int index) {
+                return attributes.item(index).getNodeValue();
+            }
+        };
+    }
+
+    /**
+     * Matching state for one traversal: per path and depth, the bitmask of steps that may match
+     * the children of the open element, plus the open and not-yet-reported matches
+     */
+    private class Evaluation {
+        private final MatchHandler handler;
+        private final int maxMatches;
+        private final int maxValueChars;
+        private long[][] masks;
+        private Match[][] openMatches;
+        private final List<Deque<Match>> pending = new ArrayList<>();
+        // Open element matches still collecting text, outermost first
+        private final List<Match> collecting = new ArrayList<>();
+        private int depth;
+        private int matchCount;
+
+        Evaluation(MatchHandler handler, int maxMatches, int maxValueChars) {
+            this.handler = handler;
+            this.maxMatches = maxMatches;
+            this.maxValueChars = maxValueChars;
+            this.masks = new long[32][paths.length];
+            this.openMatches = new Match[32][paths.length];
+            for (int p = 0; p < paths.length; p++) {
+                masks[0][p] = 1L;
+                pending.add(new ArrayDeque<>());
+            }
+        }
+
+        boolean collectingText() {
+            return !collecting.isEmpty();
+        }
+
+        /**
+         * @return false once a match past maxMatches starts
+         */
+        boolean startElement(String elementName, StreamingXPath.AttributeSource attributes) {
+            depth++;
+            if (depth == masks.length) {
+                masks = Arrays.copyOf(masks, depth * 2);
+                openMatches = Arrays.copyOf(openMatches, depth * 2);
+            }
+            if (masks[depth] == null) {
+                masks[depth] = new long[paths.length];
+                openMatches[depth] = new Match[paths.length];
+            }
+
+            Map<String, String> attributeMap = null;
+            for (int p = 0; p < paths.length; p++) {
+                StreamingXPath path = paths[p];
+                long active = masks[depth - 1][p];
+                long next = 0L;
+                boolean matched = false;
+                while (active != 0) {
+                    int k = Long.numberOfTrailingZeros(active);
+                    active &= active - 1;
+                    StreamingXPath.Step step = path.steps[k];
+                    if (step.descendant) {
+                        next |= 1L << k;
+                    }
+                    if (step.matches(elementName, attributes)) {
+                        if (k + 1 == path.steps.length) {
+                            matched = true;
+                        } else {
+                            next |= 1L << (k + 1);
+                        }
+                    }
+                }
+                masks[depth][p] = next;
+                openMatches[depth][p] = null;
+
+                if (matched) {
+                    String value = path.attribute == null ? null : attributes.value(path.attribute);
+                    if (path.attribute != null && value == null) {
+                        continue;
+                    }
+                    if (++matchCount > maxMatches) {
+                        return false;
+                    }
+                    if (path.attribute == null) {
+                        if (attributeMap == null) {
+                            attributeMap = attributeMap(attributes);
+                        }
+                        // Each match gets its own copy; handlers may keep or change the map
+                        Match match = new Match(new HashMap<>(attributeMap));
+                        match.text = new StringBuilder();
+                        openMatches[depth][p] = match;
+                        collecting.add(match);
+                        pending.get(p).add(match);
+                    } else {
+                        Match match = new Match(new HashMap<>());
+                        match.value = value;
+                        pending.get(p).add(match);
+                    }
+                }
+            }
+            return true;
+        }
+
+        void text(char[] characters, int start, int length) {
+            for (int i = collecting.size() - 1; i >= 0; i--) {
+                Match match = collecting.get(i);
+                match.text.append(characters, start, Math.min(length, maxValueChars - match.text.length()));
+                if (match.text.length() >= maxValueChars) {
+                    match.finish();
+                    collecting.remove(i);
+                }
+            }
+        }
+
+        void endElement() {
+            for (int p = 0; p < paths.length; p++) {
+                Match match = openMatches[depth][p];
+                if (match != null && match.value == null) {
+                    // Anything opened after it has closed, so it is at the end of collecting
+                    match.finish();
+                    collecting.remove(collecting.lastIndexOf(match));
+                }
+                openMatches[depth][p] = null;
+            }
+            depth--;
+        }
+
+        // An outer match precedes the nested matches it contains, so hold those until its value is known
+        void flush() throws Exception {
+            for (int p = 0; p < paths.length; p++) {
+                Deque<Match> queue = pending.get(p);
+                if (queue.size() > MAX_PENDING_MATCHES && queue.peek().value == null) {
+                    Match match = queue.peek();
+                    match.finish();
+                    collecting.remove(collecting.lastIndexOf(match));
+                }
+                while (!queue.isEmpty() && queue.peek().value != null) {
+                    Match match = queue.poll();
+                    handler.onMatch(p, match.value, match.attributes);
+                }
+            }
+        }
+    }
+
+    private static Map<String, String> attributeMap(StreamingXPath.AttributeSource attributes) {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < attributes.count(); i++) {
+            map.put(attributes.name(i), attributes.value(i));
+        }
+        return map;
+    }
+
+    private static class Match {
+        final Map<String, String> attributes;
+        StringBuilder text;
+        String value;
+
+        Match(Map<String, String> attributes) {
+            this.attributes = attributes;
+        }
+
+        void finish() {
+            value = text.toString();
+            text = null;
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package jerm.jerm_java.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Embedded history of individual test cases across runs, one store per suite. A suite is named by
+ * its directory on the share and its files by their path within the directory they were read from,
+ * so reading from a mirror of the share continues the same history.
+ *
+ * Every result file is one run, and runs are numbered in (modification time, path) order. New files
+ * normally sort after every recorded run and are appended; a file older than the latest run, or a
+ * rewritten file (which replaces its earlier run), renumbers the runs and rebuilds the bitmaps.
+ * Each test keeps three bitmaps indexed by run from its first appearance
+ * (ran, passed, failed or errored) and its durations as zigzag-varint deltas in milliseconds, so
+ * thousands of runs of thousands of tests take a few hundred KB and the flaky, failing-since and
+ * per-test queries are answered from the bitmaps without reading any XML. One JSON file per
+ * directory is kept under testing.history.store.directory.
+ */
+@Service
+public class TestCaseHistoryStore {
+
+    private static final int FORMAT_VERSION = 2;
+    private static final Comparator<Run> RUN_ORDER =
+        Comparator.comparingLong((Run run) -> run.timestamp).thenComparing(run -> run.path);
+
+    @Value("${testing.history.store.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${testing.history.store.directory:${java.io.tmpdir}/jerm-testing-history}")
+    private String storeDirectory = System.getProperty("java.io.tmpdir") + "/jerm-testing-history";
+
+    private final JsonFileStore<SuiteFile> fileStore =
+        new JsonFileStore<>("Test case history", SuiteFile.class, FORMAT_VERSION, stored -> stored.runs.size() + " runs");
+
+    private final Map<String, Suite> suites = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether this version of a result file is already recorded
+     */
+    public boolean isRecorded(String rootPath, Path directory, XMLSource source) {
+        if (!enabled) {
+            return true;
+        }
+        Suite suite = forRoot(rootPath);
+        synchronized (suite) {
+            Long recorded = suite.data.recorded.get(source.getPathWithin(directory));
+            return recorded != null && recorded == source.getLastModified();
+        }
+    }
+
+    /**
+     * Record result files as runs in time order; file versions already recorded are skipped and a
+     * new version of a recorded file replaces its earlier run
+     * @param rootPath Suite the history belongs to
+     * @param directory Directory the files were listed from (the suite's directory, or a copy of it)
+     * @param runs Test cases of each file
+     * @return Number of new runs recorded
+     */
+    public int record(String rootPath, Path directory, Map<XMLSource, List<TestCaseResult>> runs) {
+        if (!enabled || runs.isEmpty()) {
+            return 0;
+        }
+        Map<Run, List<TestCaseResult>> testCases = new IdentityHashMap<>();
+        for (Map.Entry<XMLSource, List<TestCaseResult>> run : runs.entrySet()) {
+            XMLSource source = run.getKey();
+            testCases.put(new Run(source.getLastModified(), source.getPathWithin(directory)), run.getValue());
+        }
+
+        Suite suite = forRoot(rootPath);
+        synchronized (suite) {
+            List<Run> fresh = new ArrayList<>();
+            for (Run run : testCases.keySet()) {
+                Long previous = suite.data.recorded.get(run.path);
+                if (previous == null || previous != run.timestamp) {
+                    fresh.add(run);
+                }
+            }
+            if (fresh.isEmpty()) {
+                return 0;
+            }
+            fresh.sort(RUN_ORDER);
+            List<Run> recordedRuns = suite.data.runs;
+            boolean append = fresh.stream().noneMatch(run -> suite.data.recorded.containsKey(run.path))
+                && (recordedRuns.isEmpty() || RUN_ORDER.compare(fresh.get(0), recordedRuns.get(recordedRuns.size() - 1)) > 0);
+            if (append) {
+                for (Run run : fresh) {
+                    suite.add(run, testCases.get(run));
+                }
+            } else {
+                suite.rebuild(fresh, testCases);
+            }
+            suite.save();
+            return fresh.size();
+        }
+    }
+
+    /**
+     * Tests whose outcome flips between pass and fail within the last runs
+     * @param runs Number of most recent runs to look at
+     * @param minFlips Fewest pass/fail changes for a test to be reported
+     * @param limit Most tests to return
+     */
+    public Map<String, Object> getFlakyTests(String rootPath, int runs, int minFlips, int limit) {
+        if (runs < 2) {
+            throw new IllegalArgumentException("At least 2 runs are needed to detect flaky tests");
+        }
+        Suite suite = forRoot(rootPath);
+        List<Map<String, Object>> flaky = new ArrayList<>();
+        int runCount;
+        int windowStart;
+        synchronized (suite) {
+            runCount = suite.data.runs.size();
+            windowStart = Math.max(0, runCount - runs);
+            for (Map.Entry<String, TestHistory> test : suite.data.tests.entrySet()) {
+                TestHistory history = test.getValue();
+                int executions = 0;
+                int decided = 0;
+                int failures = 0;
+                int flips = 0;
+                Boolean lastPassed = null;
+                int lastFlipRun = -1;
+                for (int bit = history.ran.nextSetBit(Math.max(0, windowStart - history.firstRun)); bit >= 0;
+                        bit = history.ran.nextSetBit(bit + 1)) {
+                    executions++;
+                    boolean passed = history.passed.get(bit);
+                    if (!passed && !history.failed.get(bit)) {
+                        continue;
+                    }
+                    decided++;
+                    if (!passed) {
+                        failures++;
+                    }
+                    if (lastPassed != null && lastPassed != passed) {
+                        flips++;
+                        lastFlipRun = history.firstRun + bit;
+                    }
+                    lastPassed = passed;
+                }
+                if (flips < minFlips || flips == 0) {
+                    continue;
+                }
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("name", test.getKey());
+                row.put("flips", flips);
+                row.put("flipRate", (double) flips / (decided - 1));
+                row.put("executions", executions);
+                row.put("failures", failures);
+                row.put("lastFlip", suite.describeRun(lastFlipRun));
+                row.put("currentlyPassing", lastPassed);
+                flaky.add(row);
+            }
+        }
+        flaky.sort(Comparator.comparing((Map<String, Object> row) -> (Integer) row.get("flips")).reversed()
+            .thenComparing(row -> (Double) row.get("flipRate"), Comparator.reverseOrder())
+            .thenComparing(row -> (String) row.get("name")));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("directoryPath", canonical(rootPath));
+        result.put("runsExamined", runCount - windowStart);
+        result.put("minFlips", minFlips);
+        result.put("flakyTestCount", flaky.size());
+        result.put("flakyTests", flaky.size() > limit ? flaky.subList(0, limit) : flaky);
+        result.put("queryType", "flaky_tests");
+        result.put("description", "Tests alternating between pass and fail across recent runs");
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+
+    /**
+     * Tests whose most recent execution failed, with the run their current failure streak started in
+     */
+    public Map<String, Object> getFailingTests(String rootPath, int limit) {
+        Suite suite = forRoot(rootPath);
+        List<Map<String, Object>> failing = new ArrayList<>();
+        int runCount;
+        synchronized (suite) {
+            runCount = suite.data.runs.size();
+            for (Map.Entry<String, TestHistory> test : suite.data.tests.entrySet()) {
+                TestHistory history = test.getValue();
+                int last = history.ran.length() - 1;
+                if (last < 0 || !history.failed.get(last)) {
+                    continue;
+                }
+                // Walk back over the executions while they keep failing (skipped runs don't end a streak)
+                int streakStart = last;
+                int consecutiveFailures = 0;
+                int lastPassed = -1;
+                for (int bit = last; bit >= 0; bit = history.ran.previousSetBit(bit - 1)) {
+                    if (history.failed.get(bit)) {
+                        streakStart = bit;
+                        consecutiveFailures++;
+                    } else if (history.passed.get(bit)) {
+                        lastPassed = bit;
+                        break;
+                    }
+                }
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("name", test.getKey());
+                row.put("failingSince", suite.describeRun(history.firstRun + streakStart));
+                row.put("consecutiveFailures", consecutiveFailures);
+                row.put("lastPassed", lastPassed >= 0 ? suite.describeRun(history.firstRun + lastPassed) : null);
+                row.put("lastExecuted", suite.describeRun(history.firstRun + last));
+                row.put("inLatestRun", history.firstRun + last == runCount - 1);
+                row.put("failingSinceRun", history.firstRun + streakStart);
+                failing.add(row);
+            }
+        }
+        failing.sort(Comparator.comparing((Map<String, Object> row) -> (Integer) row.get("failingSinceRun"))
+            .thenComparing(row -> (String) row.get("name")));
+        failing.forEach(row -> row.remove("failingSinceRun"));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("directoryPath", canonical(rootPath));
+        result.put("runsRecorded", runCount);
+        result.put("failingTestCount", failing.size());
+        result.put("failingTests", failing.size() > limit ? failing.subList(0, limit) : failing);
+        result.put("queryType", "failing_tests");
+        result.put("description", "Currently failing tests, longest failing first");
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+
+    /**
+     * One test's outcome and duration in each of the last runs it ran in
+     * @param runs Number of most recent runs to cover
+     */
+    public Map<String, Object> getTestHistory(String rootPath, String testName, int runs) {
+        Suite suite = forRoot(rootPath);
+        List<Map<String, Object>> executions = new ArrayList<>();
+        int passedCount = 0;
+        int failedCount = 0;
+        long totalMillis = 0;
+        synchronized (suite) {
+            TestHistory history = suite.data.tests.get(testName);
+            if (history == null) {
+                throw new IllegalArgumentException("No history recorded for test: " + testName);
+            }
+            long[] durations = history.decodeDurations();
+            int windowStart = Math.max(0, suite.data.runs.size() - runs);
+            int execution = 0;
+            for (int bit = history.ran.nextSetBit(0); bit >= 0; bit = history.ran.nextSetBit(bit + 1), execution++) {
+                int run = history.firstRun + bit;
+                if (run < windowStart) {
+                    continue;
+                }
+                TestCaseResult.Outcome outcome = history.outcome(bit);
+                if (outcome == TestCaseResult.Outcome.PASSED) {
+                    passedCount++;
+                } else if (outcome == TestCaseResult.Outcome.FAILED) {
+                    failedCount++;
+                }
+                totalMillis += durations[execution];
+                Map<String, Object> row = suite.describeRun(run);
+                row.put("outcome", outcome.name());
+                row.put("durationSeconds", durations[execution] / 1000.0);
+                executions.add(row);
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("directoryPath", canonical(rootPath));
+        result.put("name", testName);
+        result.put("executions", executions);
+        result.put("executionCount", executions.size());
+        result.put("passed", passedCount);
+        result.put("failed", failedCount);
+        result.put("successRate", passedCount + failedCount > 0 ? (double) passedCount / (passedCount + failedCount) * 100 : 0.0);
+        result.put("averageDurationSeconds", executions.isEmpty() ? 0.0 : totalMillis / 1000.0 / executions.size());
+        result.put("queryType", "test_case_history");
+        result.put("description", "Outcome and duration of one test across recent runs");
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+
+    public Map<String, Object> getStatistics() {
+        List<Map<String, Object>> suiteStats = new ArrayList<>();
+        for (Suite suite : suites.values()) {
+            synchronized (suite) {
+                long bitmapBytes = 0;
+                long durationBytes = 0;
+                for (TestHistory history : suite.data.tests.values()) {
+                    bitmapBytes += (history.ran.length() + 7) / 8 * 3;
+                    durationBytes += history.durationLength;
+                }
+                Map<String, Object> stats = new HashMap<>();
+                stats.put("directoryPath", suite.data.rootPath);
+                stats.put("runs", suite.data.runs.size());
+                stats.put("tests", suite.data.tests.size());
+                stats.put("bitmapBytes", bitmapBytes);
+                stats.put("durationBytes", durationBytes);
+                stats.put("storeFile", suite.storeFile.toString());
+                suiteStats.add(stats);
+            }
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("storeDirectory", storeDirectory);
+        result.put("suites", suiteStats);
+        return result;
+    }
+
+    private Suite forRoot(String rootPath) {
+        return suites.computeIfAbsent(canonical(rootPath), this::load);
+    }
+
+    private Suite load(String rootPath) {
+        Suite suite = new Suite(JsonFileStore.fileFor(storeDirectory, rootPath));
+        suite.data.rootPath = rootPath;
+        SuiteFile stored = enabled ? fileStore.load(suite.storeFile, file -> rootPath.equals(file.rootPath)) : null;
+        if (stored != null) {
+            stored.tests.values().forEach(TestHistory::unpack);
+            suite.data = stored;
+        }
+        return suite;
+    }
+
+    private static String canonical(String rootPath) {
+        return Paths.get(rootPath).toAbsolutePath().normalize().toString();
+    }
+
+    private class Suite {
+        private final Path storeFile;
+        private SuiteFile data = new SuiteFile();
+
+        Suite(Path storeFile) {
+            this.storeFile = storeFile;
+        }
+
+        void add(Run added, List<TestCaseResult> testCases) {
+            int run = data.runs.size();
+            data.runs.add(added);
+            data.recorded.put(added.path, added.timestamp);
+            for (TestCaseResult testCase : testCases) {
+                TestHistory history = data.tests.computeIfAbsent(testCase.getName(), name -> new TestHistory(run));
+                history.add(run, testCase.getOutcome(), Math.round(testCase.getDurationSeconds() * 1000));
+            }
+        }
+
+        /**
+         * Merge new runs into their place in time order, dropping the runs of files they replace,
+         * and rebuild every test's bitmaps and durations against the new run numbers
+         */
+        void rebuild(List<Run> fresh, Map<Run, List<TestCaseResult>> testCases) {
+            Set<String> replaced = new HashSet<>();
+            fresh.forEach(run -> replaced.add(run.path));
+            List<Run> merged = new ArrayList<>();
+            for (Run run : data.runs) {
+                if (!replaced.contains(run.path)) {
+                    merged.add(run);
+                }
+            }
+            merged.addAll(fresh);
+            merged.sort(RUN_ORDER);
+            Map<Run, Integer> position = new IdentityHashMap<>();
+            for (int i = 0; i < merged.size(); i++) {
+                position.put(merged.get(i), i);
+            }
+
+            Map<String, List<Execution>> executions = new HashMap<>();
+            for (Map.Entry<String, TestHistory> test : data.tests.entrySet()) {
+                TestHistory history = test.getValue();
+                long[] durations = history.decodeDurations();
+                int execution = 0;
+                for (int bit = history.ran.nextSetBit(0); bit >= 0; bit = history.ran.nextSetBit(bit + 1), execution++) {
+                    Integer run = position.get(data.runs.get(history.firstRun + bit));
+                    if (run != null) {
+                        executions.computeIfAbsent(test.getKey(), name -> new ArrayList<>())
+                            .add(new Execution(run, history.outcome(bit), durations[execution]));
+                    }
+                }
+            }
+            for (Run run : fresh) {
+                int index = position.get(run);
+                for (TestCaseResult testCase : testCases.get(run)) {
+                    executions.computeIfAbsent(testCase.getName(), name -> new ArrayList<>())
+                        .add(new Execution(index, testCase.getOutcome(), Math.round(testCase.getDurationSeconds() * 1000)));
+                }
+            }
+
+            TreeMap<String, TestHistory> tests = new TreeMap<>();
+            for (Map.Entry<String, List<Execution>> test : executions.entrySet()) {
+                List<Execution> list = test.getValue();
+                list.sort(Comparator.comparingInt(Execution::run));
+                TestHistory history = new TestHistory(list.get(0).run());
+                for (Execution execution : list) {
+                    history.add(execution.run(), execution.outcome(), execution.millis());
+                }
+                tests.put(test.getKey(), history);
+            }
+            data.runs = merged;
+            data.tests = tests;
+            fresh.forEach(run -> data.recorded.put(run.path, run.timestamp));
+        }
+
+        Map<String, Object> describeRun(int run) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            if (run < 0 || run >= data.runs.size()) {
+                return row;
+            }
+            Run recorded = data.runs.get(run);
+            row.put("run", run);
+            row.put("timestamp", Instant.ofEpochMilli(recorded.timestamp).toString());
+            row.put("path", recorded.path);
+            return row;
+        }
+
+        void save() {
+            data.tests.values().forEach(TestHistory::pack);
+            fileStore.save(storeFile, data);
+        }
+    }
+
+    /**
+     * On-disk form of one directory's history
+     */
+    public static class SuiteFile extends JsonFileStore.Stored {
+        public String rootPath;
+        // Path within the suite directory -> modification time of the last version recorded
+        public Map<String, Long> recorded = new HashMap<>();
+        public List<Run> runs = new ArrayList<>();
+        public TreeMap<String, TestHistory> tests = new TreeMap<>();
+    }
+
+    private record Execution(int run, TestCaseResult.Outcome outcome, long millis) {
+    }
+
+    /**
+     * One recorded result file, by its path within the suite directory
+     */
+    public static class Run {
+        public long timestamp;
+        public String path;
+
+        public Run() {
+        }
+
+        Run(long timestamp, String path) {
+            this.timestamp = timestamp;
+            this.path = path;
+        }
+    }
+
+    /**
+     * One test's outcomes and durations. Bit i of each bitmap is run firstRun + i; the public
+     * byte arrays are the stored form and are only brought up to date by pack().
+     */
+    public static class TestHistory {
+        public int firstRun;
+        public byte[] ranBits;
+        public byte[] passedBits;
+        public byte[] failedBits;
+        // Zigzag-varint deltas between consecutive durations (milliseconds), one per execution
+        public byte[] durations;
+        public long lastDurationMillis;
+
+        private BitSet ran = new BitSet();
+        private BitSet passed = new BitSet();
+        private BitSet failed = new BitSet();
+        private byte[] durationBuffer = new byte[16];
+        private int durationLength;
+
+        public TestHistory() {
+        }
+
+        TestHistory(int firstRun) {
+            this.firstRun = firstRun;
+        }
+
+        void add(int run, TestCaseResult.Outcome outcome, long millis) {
+            int bit = run - firstRun;
+            if (ran.get(bit)) {
+                // Same name twice in one file: keep the first
+                return;
+            }
+            ran.set(bit);
+            if (outcome == TestCaseResult.Outcome.PASSED) {
+                passed.set(bit);
+            } else if (outcome == TestCaseResult.Outcome.FAILED || outcome == TestCaseResult.Outcome.ERROR) {
+                failed.set(bit);
+            }
+            appendVarint(zigzag(millis - lastDurationMillis));
+            lastDurationMillis = millis;
+        }
+
+        TestCaseResult.Outcome outcome(int bit) {
+            return passed.get(bit) ? TestCaseResult.Outcome.PASSED
+                : failed.get(bit) ? TestCaseResult.Outcome.FAILED : TestCaseResult.Outcome.SKIPPED;
+        }
+
+        long[] decodeDurations() {
+            long[] values = new long[ran.cardinality()];
+            long value = 0;
+            int position = 0;
+            for (int i = 0; i < values.length && position < durationLength; i++) {
+                long encoded = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = durationBuffer[position++];
+                    encoded |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                value += (encoded >>> 1) ^ -(encoded & 1);
+                values[i] = value;
+            }
+            return values;
+        }
+
+        void pack() {
+            ranBits = ran.toByteArray();
+            passedBits = passed.toByteArray();
+            failedBits = failed.toByteArray();
+            durations = Arrays.copyOf(durationBuffer, durationLength);
+        }
+
+        void unpack() {
+            ran = ranBits != null ? BitSet.valueOf(ranBits) : new BitSet();
+            passed = passedBits != null ? BitSet.valueOf(passedBits) : new BitSet();
+            failed = failedBits != null ? BitSet.valueOf(failedBits) : new BitSet();
+            durationBuffer = durations != null && durations.length > 0 ? durations.clone() : new byte[16];
+            durationLength = durations != null ? durations.length : 0;
+        }
+
+        private void appendVarint(long value) {
+            if (durationLength + 10 > durationBuffer.length) {
+                durationBuffer = Arrays.copyOf(durationBuffer, durationBuffer.length * 2);
+            }
+            while ((value & ~0x7FL) != 0) {
+                durationBuffer[durationLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            durationBuffer[durationLength++] = (byte) value;
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+}
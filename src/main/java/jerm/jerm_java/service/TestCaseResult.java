@@ -0,0 +1,77 @@
+package jerm.jerm_java.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Outcome of one test case in one run, as read from a Pester (NUnit) or tSQLt result file
+ */
+public final class TestCaseResult {
+
+    public enum Outcome {
+        PASSED, FAILED, ERROR, SKIPPED;
+
+        /**
+         * Map a result attribute ("Success", "Failure", "Passed", "Error", "Ignored", ...) to an outcome;
+         * anything that isn't a pass, failure or error counts as skipped
+         */
+        public static Outcome of(String result) {
+            if (result == null) {
+                return SKIPPED;
+            }
+            switch (result.trim().toLowerCase()) {
+                case "success":
+                case "pass":
+                case "passed":
+                    return PASSED;
+                case "failure":
+                case "fail":
+                case "failed":
+                    return FAILED;
+                case "error":
+                    return ERROR;
+                default:
+                    return SKIPPED;
+            }
+        }
+    }
+
+    private final String name;
+    private final Outcome outcome;
+    private final String result;
+    private final double durationSeconds;
+
+    public TestCaseResult(String name, String result, double durationSeconds) {
+        this.name = name;
+        this.outcome = Outcome.of(result);
+        this.result = result;
+        this.durationSeconds = durationSeconds;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * The result attribute as written in the file
+     */
+    public String getResult() {
+        return result;
+    }
+
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("name", name);
+        map.put("result", result);
+        map.put("durationSeconds", durationSeconds);
+        return map;
+    }
+}
@@ -0,0 +1,298 @@
+package jerm.jerm_java.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local mirror of the testing history share (testing.history.base.directory).
+ *
+ * On a schedule, the result files of the last testing.history.mirror.days days in each suite
+ * directory are compared with a manifest of what was copied before: a file with the same size
+ * and modification time is left alone, anything else is copied and hashed, and a copy whose
+ * hash matches the manifest (the file was only touched) is discarded. Files gone from the share
+ * or past the window are removed. Copies keep the share's modification times, so the trend
+ * windows work on the mirror unchanged, and the share is only listed once per sync no matter how
+ * many requests are served.
+ */
+@Service
+public class TestingHistoryMirrorService {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String MANIFEST_FILE = ".mirror-manifest.json";
+    private static final List<String> SUITE_DIRECTORIES = List.of("Pester", "tSQLt");
+
+    @Value("${testing.history.base.directory:\\\\wmsdev-dev\\wmsdev\\Development Work\\AutomatedTestingHistory}")
+    private String sourceDirectory;
+
+    @Value("${testing.history.mirror.enabled:false}")
+    private boolean enabled;
+
+    @Value("${testing.history.mirror.directory:${java.io.tmpdir}/jerm-testing-mirror}")
+    private String mirrorDirectory = System.getProperty("java.io.tmpdir") + "/jerm-testing-mirror";
+
+    @Value("${testing.history.mirror.days:45}")
+    private int mirrorDays = 45;
+
+    @Value("${testing.history.mirror.sync.interval.ms:300000}")
+    private long syncIntervalMs = 300000;
+
+    private final JsonFileStore<MirrorManifest> fileStore = new JsonFileStore<>("Testing history mirror manifest",
+        MirrorManifest.class, FORMAT_VERSION, stored -> stored.files.size() + " files");
+
+    private MirrorManifest manifest;
+    private volatile Instant lastSyncStarted;
+    private volatile Instant lastSuccessfulSync;
+    private volatile String lastSyncError;
+    private volatile Map<String, Object> lastSyncResult;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether reads covering this many days can be served from the mirror
+     * (it is enabled, has completed a sync, and its window is wide enough)
+     */
+    public boolean covers(int days) {
+        return enabled && lastSuccessfulSync != null && days <= mirrorDays;
+    }
+
+    public Path getMirrorDirectory() {
+        return Paths.get(mirrorDirectory).toAbsolutePath().normalize();
+    }
+
+    @Scheduled(fixedDelayString = "${testing.history.mirror.sync.interval.ms:300000}",
+               initialDelayString = "${testing.history.mirror.initial.delay.ms:10000}")
+    public void syncScheduled() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            sync();
+        } catch (Exception e) {
+            System.err.println("Testing history mirror sync failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Bring the mirror up to date with the share
+     * @return Map containing sync statistics
+     */
+    public synchronized Map<String, Object> sync() throws IOException {
+        if (!enabled) {
+            throw new IllegalStateException("Testing history mirror is disabled");
+        }
+        long startTime = System.currentTimeMillis();
+        lastSyncStarted = Instant.ofEpochMilli(startTime);
+        if (manifest == null) {
+            manifest = loadManifest();
+        }
+
+        long cutoff = startTime - mirrorDays * 24L * 60L * 60L * 1000L;
+        Path mirrorRoot = getMirrorDirectory();
+        Map<String, ManifestEntry> seen = new HashMap<>();
+        int unchanged = 0;
+        int copied = 0;
+        int touched = 0;
+        int failed = 0;
+        long bytesCopied = 0;
+
+        try {
+            if (!Files.isDirectory(Paths.get(sourceDirectory))) {
+                // Share unreachable: keep serving the current mirror rather than emptying it
+                throw new IOException("Testing history directory not reachable: " + sourceDirectory);
+            }
+            for (String suite : SUITE_DIRECTORIES) {
+                Path source = Paths.get(sourceDirectory, suite);
+                if (!Files.isDirectory(source)) {
+                    // Same as an unreachable share: removing the suite's mirrored files would lose them
+                    throw new IOException("Testing history directory not reachable: " + source);
+                }
+                Path target = mirrorRoot.resolve(suite);
+                Files.createDirectories(target);
+
+                Map<Path, long[]> listing = new ConcurrentHashMap<>();
+                DirectoryScanner.of(source)
+                    .recursive(false)
+                    .filter(XMLSource::isCandidate)
+                    .modifiedSince(cutoff)
+                    .scan((file, attributes) -> listing.put(file,
+                        new long[] { attributes.size(), attributes.lastModifiedTime().toMillis() }));
+
+                for (Map.Entry<Path, long[]> file : listing.entrySet()) {
+                    String name = file.getKey().getFileName().toString();
+                    String key = suite + "/" + name;
+                    long size = file.getValue()[0];
+                    long lastModified = file.getValue()[1];
+                    ManifestEntry previous = manifest.files.get(key);
+                    Path copy = target.resolve(name);
+
+                    if (previous != null && previous.size == size && previous.lastModified == lastModified
+                            && Files.exists(copy)) {
+                        seen.put(key, previous);
+                        unchanged++;
+                        continue;
+                    }
+                    Path temp = target.resolve(name + ".part");
+                    try {
+                        String hash = copyWithHash(file.getKey(), temp);
+                        if (previous != null && hash.equals(previous.sha256) && Files.exists(copy)) {
+                            // Same content under a new modification time
+                            Files.delete(temp);
+                            Files.setLastModifiedTime(copy, FileTime.fromMillis(lastModified));
+                            touched++;
+                        } else {
+                            Files.setLastModifiedTime(temp, FileTime.fromMillis(lastModified));
+                            Files.move(temp, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                            copied++;
+                            bytesCopied += size;
+                        }
+                        seen.put(key, new ManifestEntry(size, lastModified, hash));
+                    } catch (IOException e) {
+                        // Probably still being written; try again next sync
+                        failed++;
+                        if (previous != null) {
+                            seen.put(key, previous);
+                        }
+                        System.err.println("Failed to mirror " + file.getKey() + ": " + e.getMessage());
+                    } finally {
+                        // Left behind when the copy or the move failed
+                        try {
+                            Files.deleteIfExists(temp);
+                        } catch (IOException e) {
+                            System.err.println("Failed to remove " + temp + ": " + e.getMessage());
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            lastSyncError = e.getMessage();
+            throw e;
+        }
+
+        // Remove files that left the share or the window
+        int removed = 0;
+        for (String key : manifest.files.keySet()) {
+            if (!seen.containsKey(key)) {
+                Files.deleteIfExists(mirrorRoot.resolve(key));
+                removed++;
+            }
+        }
+        manifest.files = new TreeMap<>(seen);
+        saveManifest();
+
+        lastSuccessfulSync = Instant.now();
+        lastSyncError = null;
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("filesMirrored", seen.size());
+        result.put("unchanged", unchanged);
+        result.put("copied", copied);
+        result.put("touchedOnly", touched);
+        result.put("removed", removed);
+        result.put("failed", failed);
+        result.put("bytesCopied", bytesCopied);
+        result.put("executionTimeMs", System.currentTimeMillis() - startTime);
+        lastSyncResult = result;
+        if (copied > 0 || removed > 0) {
+            System.out.println("Testing history mirror synced: " + copied + " copied, " + removed + " removed in "
+                + result.get("executionTimeMs") + "ms");
+        }
+
+        Map<String, Object> response = new HashMap<>(result);
+        response.putAll(getStatus());
+        response.put("queryType", "testing_mirror_sync");
+        response.put("description", "Incremental sync of the testing history share");
+        return response;
+    }
+
+    /**
+     * Mirror configuration, last sync and how old the mirrored data is
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("sourceDirectory", sourceDirectory);
+        status.put("mirrorDirectory", getMirrorDirectory().toString());
+        status.put("mirrorDays", mirrorDays);
+        status.put("syncIntervalMs", syncIntervalMs);
+        status.put("ready", lastSuccessfulSync != null);
+        status.put("lastSyncStarted", lastSyncStarted != null ? lastSyncStarted.toString() : null);
+        status.put("lastSuccessfulSync", lastSuccessfulSync != null ? lastSuccessfulSync.toString() : null);
+        status.put("lastSyncError", lastSyncError);
+        status.put("lastSync", lastSyncResult);
+        if (lastSuccessfulSync != null) {
+            long stalenessMs = System.currentTimeMillis() - lastSuccessfulSync.toEpochMilli();
+            status.put("stalenessSeconds", stalenessMs / 1000);
+            // A sync was missed (or has been failing) if the last success is more than two intervals old
+            status.put("stale", stalenessMs > 2 * syncIntervalMs);
+        }
+        status.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return status;
+    }
+
+    private String copyWithHash(Path source, Path target) throws IOException {
+        MessageDigest digest = JsonFileStore.sha256Digest();
+        try (InputStream input = new DigestInputStream(Files.newInputStream(source), digest)) {
+            Files.copy(input, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private MirrorManifest loadManifest() {
+        MirrorManifest stored = fileStore.load(getMirrorDirectory().resolve(MANIFEST_FILE),
+            file -> sourceDirectory.equals(file.sourceDirectory));
+        if (stored != null) {
+            return stored;
+        }
+        MirrorManifest fresh = new MirrorManifest();
+        fresh.sourceDirectory = sourceDirectory;
+        return fresh;
+    }
+
+    private void saveManifest() {
+        fileStore.save(getMirrorDirectory().resolve(MANIFEST_FILE), manifest);
+    }
+
+    /**
+     * On-disk record of what the mirror holds, keyed by "suite/file name"
+     */
+    public static class MirrorManifest extends JsonFileStore.Stored {
+        public String sourceDirectory;
+        public Map<String, ManifestEntry> files = new TreeMap<>();
+    }
+
+    /**
+     * Size and modification time on the share when copied, and the content hash
+     */
+    public static class ManifestEntry {
+        public long size;
+        public long lastModified;
+        public String sha256;
+
+        public ManifestEntry() {
+        }
+
+        ManifestEntry(long size, long lastModified, String sha256) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+        }
+    }
+}
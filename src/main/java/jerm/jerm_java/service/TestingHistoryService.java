@@ -1,15 +1,18 @@
 package jerm.jerm_java.service;
 
 import org.springframework.stereotype.Service;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.springframework.scheduling.annotation.Scheduled;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -17,6 +20,11 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -28,6 +36,54 @@ public class TestingHistoryService {
     @Value("${testing.history.days.back:7}")
     private int daysBack;
     
+    @Value("${testing.pester.test.cases:false}")
+    private boolean includePesterTestCases;
+    
+    @Value("${testing.tsqlt.test.cases:false}")
+    private boolean includeTSQLtTestCases;
+    
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORIES = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
+    
+    @Value("${testing.history.store.days:30}")
+    private int historyStoreDays;
+    
+    @Autowired
+    private DirectoryCatalogService directoryCatalog;
+    
+    @Autowired
+    private TestCaseHistoryStore testCaseHistory;
+    
+    @Value("${testing.trends.working.set.days:30}")
+    private int workingSetDays;
+    
+    @Autowired
+    private TestingHistoryMirrorService mirror;
+    
+    private final RunWorkingSet pesterRuns = new RunWorkingSet(true);
+    private final RunWorkingSet tsqltRuns = new RunWorkingSet(false);
+    private ExecutorService trendExecutor;
+    
+    @PostConstruct
+    public void initialize() {
+        trendExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "testing-trends");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        if (trendExecutor != null) {
+            trendExecutor.shutdownNow();
+        }
+    }
+    
     /**
      * Get testing trends for the last N days
      * @param days Number of days to look back (default 7)
@@ -39,6 +95,13 @@ public class TestingHistoryService {
         Map<String, Object> result = new HashMap<>();
         result.put("lookbackDays", lookbackDays);
         result.put("baseDirectory", baseDirectory);
+        result.put("readFrom", getReadDirectory(lookbackDays));
+        if (mirror.isEnabled()) {
+            result.put("mirror", mirror.getStatus());
+        }
+        
+        // tSQLt trends are loaded in the background while Pester trends load here
+        Future<Map<String, Object>> tsqltFuture = trendExecutor.submit(() -> getTSQLtTrends(lookbackDays));
         
         try {
             // Get Pester test trends
@@ -50,10 +113,10 @@ public class TestingHistoryService {
         
         try {
             // Get tSQLt test trends
-            Map<String, Object> tsqltTrends = getTSQLtTrends(lookbackDays);
+            Map<String, Object> tsqltTrends = tsqltFuture.get();
             result.put("tsqltTrends", tsqltTrends);
-        } catch (Exception e) {
-            result.put("tsqltError", e.getMessage());
+        } catch (ExecutionException e) {
+            result.put("tsqltError", e.getCause().getMessage());
         }
         
         try {
@@ -71,35 +134,147 @@ public class TestingHistoryService {
         return result;
     }
     
+    /**
+     * Get tests whose outcome keeps flipping between pass and fail
+     * @param suite "pester" or "tsqlt"
+     * @param runs Number of most recent runs to look at
+     * @param minFlips Fewest pass/fail changes for a test to count as flaky
+     * @param limit Most tests to return
+     */
+    public Map<String, Object> getFlakyTests(String suite, int runs, int minFlips, int limit) throws Exception {
+        String suiteName = getSuiteName(suite);
+        int recorded = updateTestCaseHistory(suiteName);
+        Map<String, Object> result = testCaseHistory.getFlakyTests(getHistoryKey(suiteName), runs, minFlips, limit);
+        result.put("suite", suite);
+        result.put("historyRunsRecorded", recorded);
+        return result;
+    }
+    
+    /**
+     * Get tests that are currently failing and the run each started failing in
+     * @param suite "pester" or "tsqlt"
+     * @param limit Most tests to return
+     */
+    public Map<String, Object> getFailingTests(String suite, int limit) throws Exception {
+        String suiteName = getSuiteName(suite);
+        int recorded = updateTestCaseHistory(suiteName);
+        Map<String, Object> result = testCaseHistory.getFailingTests(getHistoryKey(suiteName), limit);
+        result.put("suite", suite);
+        result.put("historyRunsRecorded", recorded);
+        return result;
+    }
+    
+    /**
+     * Get one test's outcome and duration across recent runs
+     * @param suite "pester" or "tsqlt"
+     * @param testName Full test name as reported in the result files
+     * @param runs Number of most recent runs to cover
+     */
+    public Map<String, Object> getTestCaseHistory(String suite, String testName, int runs) throws Exception {
+        if (testName == null || testName.isBlank()) {
+            throw new IllegalArgumentException("Test name is required");
+        }
+        String suiteName = getSuiteName(suite);
+        int recorded = updateTestCaseHistory(suiteName);
+        Map<String, Object> result = testCaseHistory.getTestHistory(getHistoryKey(suiteName), testName, runs);
+        result.put("suite", suite);
+        result.put("historyRunsRecorded", recorded);
+        return result;
+    }
+    
+    /**
+     * Scheduled recording of new result files into the test case history. Trend loads only read
+     * the run totals of each file, so the history is brought up to date here and before each
+     * per-test query instead.
+     */
+    @Scheduled(fixedDelayString = "${testing.history.store.refresh.interval.ms:900000}",
+               initialDelayString = "${testing.history.store.refresh.interval.ms:900000}")
+    public void updateTestCaseHistoryScheduled() {
+        if (!testCaseHistory.isEnabled()) {
+            return;
+        }
+        for (String suiteName : List.of("Pester", "tSQLt")) {
+            try {
+                updateTestCaseHistory(suiteName);
+            } catch (Exception e) {
+                System.err.println("Test case history update failed for " + suiteName + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Directory to read result files from: the local mirror once it has synced and covers the
+     * window, the share otherwise
+     */
+    private String getReadDirectory(int days) {
+        return mirror.covers(days) ? mirror.getMirrorDirectory().toString() : baseDirectory;
+    }
+    
+    private String getSuiteName(String suite) {
+        if (!testCaseHistory.isEnabled()) {
+            throw new IllegalStateException("Test case history store is disabled");
+        }
+        if ("pester".equalsIgnoreCase(suite)) {
+            return "Pester";
+        }
+        if ("tsqlt".equalsIgnoreCase(suite)) {
+            return "tSQLt";
+        }
+        throw new IllegalArgumentException("Unknown test suite: " + suite + " (expected pester or tsqlt)");
+    }
+    
+    /**
+     * Key of a suite's test case history: its directory on the share, wherever the files are read from
+     */
+    private String getHistoryKey(String suiteName) {
+        return baseDirectory + File.separator + suiteName;
+    }
+    
+    /**
+     * Record the result files of the last testing.history.store.days days the store hasn't seen yet
+     */
+    private int updateTestCaseHistory(String suiteName) throws IOException {
+        Path directory = Paths.get(getReadDirectory(historyStoreDays) + File.separator + suiteName);
+        if (!Files.exists(directory)) {
+            throw new RuntimeException("Test results directory not found: " + directory);
+        }
+        boolean pester = "Pester".equals(suiteName);
+        String historyKey = getHistoryKey(suiteName);
+        Map<XMLSource, List<TestCaseResult>> newRuns = new HashMap<>();
+        for (XMLSource xmlFile : findRecentXmlFiles(directory.toFile(), historyStoreDays)) {
+            if (testCaseHistory.isRecorded(historyKey, directory, xmlFile)) {
+                continue;
+            }
+            List<TestCaseResult> testCases = new ArrayList<>();
+            try {
+                if (pester) {
+                    parsePesterXml(xmlFile, testCases::add);
+                } else {
+                    parseTSQLtXml(xmlFile, testCases::add);
+                }
+                newRuns.put(xmlFile, testCases);
+            } catch (Exception e) {
+                System.err.println("Error reading test cases from " + xmlFile.getName() + ": " + e.getMessage());
+            }
+        }
+        return testCaseHistory.record(historyKey, directory, newRuns);
+    }
+    
     /**
      * Parse Pester XML test results
      * Pester typically uses NUnit XML format
      */
     private Map<String, Object> getPesterTrends(int days) throws Exception {
-        String pesterPath = baseDirectory + File.separator + "Pester";
+        String pesterPath = getReadDirectory(days) + File.separator + "Pester";
         Path pesterDir = Paths.get(pesterPath);
         
         if (!Files.exists(pesterDir)) {
             throw new RuntimeException("Pester directory not found: " + pesterPath);
         }
         
-        List<Map<String, Object>> dailyResults = new ArrayList<>();
-        LocalDate startDate = LocalDate.now().minusDays(days);
-        
-        // Look for XML files in the last N days
-        List<File> xmlFiles = findRecentXmlFiles(pesterDir.toFile(), days);
-        
-        for (File xmlFile : xmlFiles) {
-            try {
-                Map<String, Object> testResult = parsePesterXml(xmlFile);
-                if (testResult != null) {
-                    dailyResults.add(testResult);
-                }
-            } catch (Exception e) {
-                // Log error but continue processing other files
-                System.err.println("Error parsing Pester file " + xmlFile.getName() + ": " + e.getMessage());
-            }
-        }
+        // Results of the files in the last N days, parsed once and shared by every window
+        WindowLoad load = loadWindow(pesterRuns, pesterPath, days);
+        List<Map<String, Object>> dailyResults = load.results;
         
         // Sort by date
         dailyResults.sort((a, b) -> 
@@ -108,7 +283,9 @@ public class TestingHistoryService {
         
         Map<String, Object> trends = new HashMap<>();
         trends.put("testType", "Pester");
-        trends.put("totalFiles", xmlFiles.size());
+        trends.put("totalFiles", load.totalFiles);
+        trends.put("filesParsed", load.filesParsed);
+        trends.put("historyRunsRecorded", load.historyRunsRecorded);
         trends.put("dailyResults", dailyResults);
         trends.put("trendAnalysis", analyzePesterTrends(dailyResults));
         
@@ -120,29 +297,15 @@ public class TestingHistoryService {
      * tSQLt typically uses custom XML format for SQL Server unit tests
      */
     private Map<String, Object> getTSQLtTrends(int days) throws Exception {
-        String tsqltPath = baseDirectory + File.separator + "tSQLt";
+        String tsqltPath = getReadDirectory(days) + File.separator + "tSQLt";
         Path tsqltDir = Paths.get(tsqltPath);
         
         if (!Files.exists(tsqltDir)) {
             throw new RuntimeException("tSQLt directory not found: " + tsqltPath);
         }
         
-        List<Map<String, Object>> dailyResults = new ArrayList<>();
-        
-        // Look for XML files in the last N days
-        List<File> xmlFiles = findRecentXmlFiles(tsqltDir.toFile(), days);
-        
-        for (File xmlFile : xmlFiles) {
-            try {
-                Map<String, Object> testResult = parseTSQLtXml(xmlFile);
-                if (testResult != null) {
-                    dailyResults.add(testResult);
-                }
-            } catch (Exception e) {
-                // Log error but continue processing other files
-                System.err.println("Error parsing tSQLt file " + xmlFile.getName() + ": " + e.getMessage());
-            }
-        }
+        WindowLoad load = loadWindow(tsqltRuns, tsqltPath, days);
+        List<Map<String, Object>> dailyResults = load.results;
         
         // Sort by date
         dailyResults.sort((a, b) -> 
@@ -151,128 +314,195 @@ public class TestingHistoryService {
         
         Map<String, Object> trends = new HashMap<>();
         trends.put("testType", "tSQLt");
-        trends.put("totalFiles", xmlFiles.size());
+        trends.put("totalFiles", load.totalFiles);
+        trends.put("filesParsed", load.filesParsed);
+        trends.put("historyRunsRecorded", load.historyRunsRecorded);
         trends.put("dailyResults", dailyResults);
         trends.put("trendAnalysis", analyzeTSQLtTrends(dailyResults));
         
         return trends;
     }
     
+    /**
+     * Get the parsed results of a suite's files in the last N days. Windows up to
+     * testing.trends.working.set.days come from the shared working set, which only parses files
+     * that are new or changed since it was last brought up to date; longer windows are parsed
+     * on their own.
+     */
+    private WindowLoad loadWindow(RunWorkingSet workingSet, String suitePath, int days) throws IOException {
+        if (days > workingSetDays) {
+            workingSet = new RunWorkingSet(workingSet.pester);
+        }
+        long cutoffTime = System.currentTimeMillis() - (days * 24L * 60L * 60L * 1000L);
+        return workingSet.load(suitePath, Math.max(days, workingSetDays), cutoffTime);
+    }
+    
     /**
      * Parse Pester NUnit XML format
+     * The run totals are attributes of the root element, so unless per-test details are wanted
+     * only the root start tag is read and the rest of the file is never parsed; otherwise the
+     * file is streamed once and each test-case is handed over as it goes by.
+     * @param testCaseHandler Receives every test-case (2.x: name/result/time, 3.x: fullname/result/duration), may be null
      */
-    private Map<String, Object> parsePesterXml(File xmlFile) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.parse(xmlFile);
-        doc.getDocumentElement().normalize();
-        
+    private Map<String, Object> parsePesterXml(XMLSource xmlFile, Consumer<TestCaseResult> testCaseHandler) throws Exception {
         Map<String, Object> result = new HashMap<>();
         result.put("fileName", xmlFile.getName());
         result.put("fileDate", getFileDate(xmlFile));
         result.put("date", LocalDate.now().toString()); // Will be overridden by actual date parsing
         
-        // Parse test-results or test-run element (NUnit format)
-        Element root = doc.getDocumentElement();
-        
-        if ("test-results".equals(root.getNodeName()) || "test-run".equals(root.getNodeName())) {
-            // NUnit 2.x or 3.x format
-            result.put("total", getIntAttribute(root, "total", 0));
-            result.put("passed", getIntAttribute(root, "passed", 0));
-            result.put("failed", getIntAttribute(root, "failed", 0));
-            result.put("skipped", getIntAttribute(root, "skipped", 0));
-            result.put("errors", getIntAttribute(root, "errors", 0));
-            result.put("inconclusive", getIntAttribute(root, "inconclusive", 0));
-            
-            // Try to get execution time
-            String time = root.getAttribute("time");
-            if (time != null && !time.isEmpty()) {
-                result.put("executionTimeSeconds", Double.parseDouble(time));
-            }
-            
-            // Try to get date from attributes
-            String date = root.getAttribute("date");
-            String startTime = root.getAttribute("start-time");
-            if (date != null && !date.isEmpty()) {
-                result.put("date", date);
+        try (InputStream input = xmlFile.openStream()) {
+            XMLStreamReader reader = INPUT_FACTORIES.get().createXMLStreamReader(xmlFile.getSystemId(), input);
+            try {
+                while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    // Skip the prolog
+                }
+                if (!reader.isStartElement()) {
+                    throw new IllegalStateException("No root element in " + xmlFile.getName());
+                }
+                
+                String rootName = reader.getLocalName();
+                if ("test-results".equals(rootName) || "test-run".equals(rootName)) {
+                    // NUnit 2.x or 3.x format
+                    result.put("total", getIntAttribute(reader, "total", 0));
+                    result.put("passed", getIntAttribute(reader, "passed", 0));
+                    result.put("failed", getIntAttribute(reader, "failed", 0));
+                    result.put("skipped", getIntAttribute(reader, "skipped", 0));
+                    result.put("errors", getIntAttribute(reader, "errors", 0));
+                    result.put("inconclusive", getIntAttribute(reader, "inconclusive", 0));
+                    
+                    String time = reader.getAttributeValue(null, "time");
+                    if (time != null && !time.isEmpty()) {
+                        result.put("executionTimeSeconds", Double.parseDouble(time));
+                    }
+                    
+                    String date = reader.getAttributeValue(null, "date");
+                    if (date != null && !date.isEmpty()) {
+                        result.put("date", date);
+                    }
+                    
+                    while (testCaseHandler != null && reader.hasNext()) {
+                        if (reader.next() == XMLStreamConstants.START_ELEMENT && "test-case".equals(reader.getLocalName())) {
+                            String name = firstAttribute(reader, "fullname", "name");
+                            testCaseHandler.accept(new TestCaseResult(name != null ? name : "",
+                                reader.getAttributeValue(null, "result"), parseSeconds(firstAttribute(reader, "duration", "time"))));
+                        }
+                    }
+                } else {
+                    result.put("total", 0);
+                    result.put("passed", 0);
+                    result.put("failed", 0);
+                    result.put("skipped", 0);
+                }
+            } finally {
+                reader.close();
             }
-            
-        } else {
-            // Try to parse as generic XML
-            result.put("total", 0);
-            result.put("passed", 0);
-            result.put("failed", 0);
-            result.put("skipped", 0);
         }
         
-        // Calculate success rate
         int total = (Integer) result.get("total");
         int passed = (Integer) result.get("passed");
-        if (total > 0) {
-            result.put("successRate", (double) passed / total * 100);
-        } else {
-            result.put("successRate", 0.0);
-        }
+        result.put("successRate", total > 0 ? (double) passed / total * 100 : 0.0);
         
         return result;
     }
     
     /**
      * Parse tSQLt XML format
+     * Streams the file once: TestCase elements are tallied as they go by and only the current
+     * test case is held, so memory doesn't grow with the size of the file.
+     * @param testCaseHandler Receives each test case with its name and duration, may be null
      */
-    private Map<String, Object> parseTSQLtXml(File xmlFile) throws Exception {
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder builder = factory.newDocumentBuilder();
-        Document doc = builder.parse(xmlFile);
-        doc.getDocumentElement().normalize();
-        
+    private Map<String, Object> parseTSQLtXml(XMLSource xmlFile, Consumer<TestCaseResult> testCaseHandler) throws Exception {
         Map<String, Object> result = new HashMap<>();
         result.put("fileName", xmlFile.getName());
         result.put("fileDate", getFileDate(xmlFile));
         result.put("date", LocalDate.now().toString());
         
-        Element root = doc.getDocumentElement();
-        
-        // tSQLt specific parsing
-        if ("TestResults".equals(root.getNodeName()) || "tSQLt".equals(root.getNodeName())) {
-            // Count test cases
-            NodeList testCases = doc.getElementsByTagName("TestCase");
-            int total = testCases.getLength();
-            int passed = 0;
-            int failed = 0;
-            
-            for (int i = 0; i < testCases.getLength(); i++) {
-                Element testCase = (Element) testCases.item(i);
-                String result_attr = testCase.getAttribute("Result");
-                if ("Success".equalsIgnoreCase(result_attr) || "Pass".equalsIgnoreCase(result_attr)) {
-                    passed++;
-                } else if ("Failure".equalsIgnoreCase(result_attr) || "Fail".equalsIgnoreCase(result_attr)) {
-                    failed++;
+        try (InputStream input = xmlFile.openStream()) {
+            XMLStreamReader reader = INPUT_FACTORIES.get().createXMLStreamReader(xmlFile.getSystemId(), input);
+            try {
+                while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    // Skip the prolog
                 }
-            }
-            
-            result.put("total", total);
-            result.put("passed", passed);
-            result.put("failed", failed);
-            result.put("skipped", total - passed - failed);
-            
-            // Try to get execution time from XML
-            NodeList durations = doc.getElementsByTagName("Duration");
-            if (durations.getLength() > 0) {
-                String duration = durations.item(0).getTextContent();
-                try {
-                    result.put("executionTimeSeconds", Double.parseDouble(duration));
-                } catch (NumberFormatException e) {
-                    result.put("executionTimeSeconds", 0.0);
+                String rootName = reader.isStartElement() ? reader.getLocalName() : null;
+                
+                // tSQLt specific parsing
+                if ("TestResults".equals(rootName) || "tSQLt".equals(rootName)) {
+                    int total = 0;
+                    int passed = 0;
+                    int failed = 0;
+                    String firstDuration = null;
+                    
+                    // Current test case, and the text of a Duration element being read
+                    String caseName = null;
+                    String caseResult = null;
+                    String caseDuration = null;
+                    StringBuilder durationText = null;
+                    int durationDepth = 0;
+                    
+                    while (reader.hasNext()) {
+                        int event = reader.next();
+                        if (event == XMLStreamConstants.START_ELEMENT) {
+                            if (durationText != null) {
+                                durationDepth++;
+                            } else if ("TestCase".equals(reader.getLocalName())) {
+                                total++;
+                                caseResult = reader.getAttributeValue(null, "Result");
+                                TestCaseResult.Outcome outcome = TestCaseResult.Outcome.of(caseResult);
+                                if (outcome == TestCaseResult.Outcome.PASSED) {
+                                    passed++;
+                                } else if (outcome == TestCaseResult.Outcome.FAILED) {
+                                    failed++;
+                                }
+                                caseName = getTestCaseName(reader);
+                                caseDuration = firstAttribute(reader, "Duration", "time");
+                            } else if ("Duration".equals(reader.getLocalName())) {
+                                durationText = new StringBuilder();
+                                durationDepth = 1;
+                            }
+                        } else if (durationText != null && (event == XMLStreamConstants.CHARACTERS
+                                || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE)) {
+                            durationText.append(reader.getText());
+                        } else if (event == XMLStreamConstants.END_ELEMENT) {
+                            if (durationText != null) {
+                                if (--durationDepth == 0) {
+                                    String duration = durationText.toString();
+                                    if (firstDuration == null) {
+                                        firstDuration = duration;
+                                    }
+                                    if (caseName != null && caseDuration == null) {
+                                        caseDuration = duration;
+                                    }
+                                    durationText = null;
+                                }
+                            } else if ("TestCase".equals(reader.getLocalName()) && caseName != null) {
+                                if (testCaseHandler != null) {
+                                    testCaseHandler.accept(new TestCaseResult(caseName, caseResult, parseSeconds(caseDuration)));
+                                }
+                                caseName = null;
+                            }
+                        }
+                    }
+                    
+                    result.put("total", total);
+                    result.put("passed", passed);
+                    result.put("failed", failed);
+                    result.put("skipped", total - passed - failed);
+                    
+                    // Execution time is the first Duration element in the file
+                    if (firstDuration != null) {
+                        result.put("executionTimeSeconds", parseSeconds(firstDuration));
+                    }
+                    
+                } else {
+                    // Generic XML parsing
+                    result.put("total", 0);
+                    result.put("passed", 0);
+                    result.put("failed", 0);
+                    result.put("skipped", 0);
                 }
+            } finally {
+                reader.close();
             }
-            
-        } else {
-            // Generic XML parsing
-            result.put("total", 0);
-            result.put("passed", 0);
-            result.put("failed", 0);
-            result.put("skipped", 0);
         }
         
         // Calculate success rate
@@ -290,23 +520,17 @@ public class TestingHistoryService {
     /**
      * Find XML files modified within the last N days
      */
-    private List<File> findRecentXmlFiles(File directory, int days) {
-        List<File> xmlFiles = new ArrayList<>();
+    private List<XMLSource> findRecentXmlFiles(File directory, int days) throws IOException {
         long cutoffTime = System.currentTimeMillis() - (days * 24L * 60L * 60L * 1000L);
         
-        if (directory.exists() && directory.isDirectory()) {
-            File[] files = directory.listFiles((dir, name) -> 
-                name.toLowerCase().endsWith(".xml") && 
-                new File(dir, name).lastModified() >= cutoffTime
-            );
-            
-            if (files != null) {
-                Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
-                xmlFiles.addAll(Arrays.asList(files));
-            }
+        if (!directory.isDirectory()) {
+            return new ArrayList<>();
         }
         
-        return xmlFiles;
+        return directoryCatalog.listXmlSources(directory.toPath(), false, cutoffTime).stream()
+            .filter(source -> source.getLastModified() >= cutoffTime)
+            .sorted(Comparator.comparingLong(XMLSource::getLastModified).reversed())
+            .collect(Collectors.toList());
     }
     
     /**
@@ -408,11 +632,102 @@ public class TestingHistoryService {
         return summary;
     }
     
+    /**
+     * Parsed results of one suite's recent files, keyed by path within the suite directory and kept
+     * while the file's modification time is unchanged. The mirror keeps the share's modification
+     * times, so switching between the share and the mirror keeps the set.
+     */
+    private class RunWorkingSet {
+        private final boolean pester;
+        private final Map<String, ParsedRun> runs = new HashMap<>();
+        
+        RunWorkingSet(boolean pester) {
+            this.pester = pester;
+        }
+        
+        /**
+         * Bring the set up to date with the files of the last loadDays days and return those
+         * modified at or after windowStart
+         */
+        synchronized WindowLoad load(String suitePath, int loadDays, long windowStart) throws IOException {
+            Path directory = Paths.get(suitePath);
+            String historyKey = getHistoryKey(pester ? "Pester" : "tSQLt");
+            boolean includeTestCases = pester ? includePesterTestCases : includeTSQLtTestCases;
+            List<XMLSource> xmlFiles = findRecentXmlFiles(new File(suitePath), loadDays);
+            Map<XMLSource, List<TestCaseResult>> newRuns = new HashMap<>();
+            Set<String> present = new HashSet<>();
+            int filesParsed = 0;
+            
+            for (XMLSource xmlFile : xmlFiles) {
+                String key = xmlFile.getPathWithin(directory);
+                present.add(key);
+                ParsedRun cached = runs.get(key);
+                if (cached != null && cached.lastModified == xmlFile.getLastModified()) {
+                    continue;
+                }
+                filesParsed++;
+                Map<String, Object> testResult = null;
+                try {
+                    // Test cases are only read when listed; the history store takes them if it hasn't seen the file
+                    List<TestCaseResult> testCases = includeTestCases ? new ArrayList<>() : null;
+                    boolean record = testCases != null && !testCaseHistory.isRecorded(historyKey, directory, xmlFile);
+                    Consumer<TestCaseResult> handler = testCases != null ? testCases::add : null;
+                    testResult = pester ? parsePesterXml(xmlFile, handler) : parseTSQLtXml(xmlFile, handler);
+                    if (includeTestCases) {
+                        testResult.put("testCases", testCases.stream().map(TestCaseResult::toMap).collect(Collectors.toList()));
+                    }
+                    if (record) {
+                        newRuns.put(xmlFile, testCases);
+                    }
+                } catch (Exception e) {
+                    // Log error but continue processing other files (not retried until the file changes)
+                    System.err.println("Error parsing " + (pester ? "Pester" : "tSQLt") + " file "
+                        + xmlFile.getName() + ": " + e.getMessage());
+                }
+                runs.put(key, new ParsedRun(xmlFile.getLastModified(), testResult));
+            }
+            runs.keySet().retainAll(present);
+            
+            WindowLoad load = new WindowLoad();
+            load.filesParsed = filesParsed;
+            load.historyRunsRecorded = testCaseHistory.record(historyKey, directory, newRuns);
+            // Listing order (newest first), which the date sort keeps for runs on the same date
+            for (XMLSource xmlFile : xmlFiles) {
+                ParsedRun run = runs.get(xmlFile.getPathWithin(directory));
+                if (run.lastModified >= windowStart) {
+                    load.totalFiles++;
+                    if (run.result != null) {
+                        // Copy, since the cached map outlives this response
+                        load.results.add(new HashMap<>(run.result));
+                    }
+                }
+            }
+            return load;
+        }
+    }
+    
+    private static class ParsedRun {
+        final long lastModified;
+        final Map<String, Object> result;
+        
+        ParsedRun(long lastModified, Map<String, Object> result) {
+            this.lastModified = lastModified;
+            this.result = result;
+        }
+    }
+    
+    private static class WindowLoad {
+        final List<Map<String, Object>> results = new ArrayList<>();
+        int totalFiles;
+        int filesParsed;
+        int historyRunsRecorded;
+    }
+    
     /**
      * Helper methods
      */
-    private int getIntAttribute(Element element, String attributeName, int defaultValue) {
-        String value = element.getAttribute(attributeName);
+    private int getIntAttribute(XMLStreamReader reader, String attributeName, int defaultValue) {
+        String value = reader.getAttributeValue(null, attributeName);
         if (value != null && !value.isEmpty()) {
             try {
                 return Integer.parseInt(value);
@@ -423,8 +738,41 @@ public class TestingHistoryService {
         return defaultValue;
     }
     
-    private String getFileDate(File file) {
-        long lastModified = file.lastModified();
+    /**
+     * tSQLt test name, qualified with its test class when the file has one
+     */
+    private String getTestCaseName(XMLStreamReader reader) {
+        String name = firstAttribute(reader, "Name", "name");
+        String testClass = firstAttribute(reader, "Class", "classname");
+        if (name == null) {
+            name = "";
+        }
+        return testClass != null ? testClass + "." + name : name;
+    }
+    
+    private String firstAttribute(XMLStreamReader reader, String... attributeNames) {
+        for (String attributeName : attributeNames) {
+            String value = reader.getAttributeValue(null, attributeName);
+            if (value != null && !value.isEmpty()) {
+                return value;
+            }
+        }
+        return null;
+    }
+    
+    private double parseSeconds(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0.0;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+    
+    private String getFileDate(XMLSource file) {
+        long lastModified = file.getLastModified();
         return LocalDateTime.ofEpochSecond(lastModified / 1000, 0, java.time.ZoneOffset.UTC)
             .format(DateTimeFormatter.ISO_LOCAL_DATE);
     }
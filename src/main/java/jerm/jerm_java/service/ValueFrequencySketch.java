@@ -0,0 +1,222 @@
+package jerm.jerm_java.service;
+
+import java.util.*;
+
+/**
+ * Fixed-memory frequency summary of a stream of values: a HyperLogLog sketch estimates the number
+ * of distinct values and a Space-Saving summary keeps the most frequent ones, so memory depends on
+ * the configuration (2^precision one-byte registers plus the counters, each holding a value of at
+ * most MAX_VALUE_LENGTH characters) rather than on how many distinct values the stream has.
+ *
+ * While the stream has no more distinct values than there are counters nothing is evicted and
+ * both figures are exact. After that, the distinct count has a relative standard error of
+ * 1.04 / sqrt(2^precision), and each reported count may overstate the true count by at most its
+ * "overcount" (the count of the counter it replaced), never understate it. Longer values are
+ * counted under their first MAX_VALUE_LENGTH characters (plus "..."), so values sharing that
+ * prefix share a counter; the distinct count still sees the whole value.
+ */
+public final class ValueFrequencySketch {
+
+    public static final int MAX_VALUE_LENGTH = 256;
+
+    private final HyperLogLog distinct;
+
+    // Space-Saving counters kept as a binary min-heap on count
+    private final Map<String, Counter> counters;
+    private final Counter[] heap;
+    private int size;
+    private boolean evicted;
+    private long total;
+
+    /**
+     * @param precision HyperLogLog precision, 4..18 (2^precision registers)
+     * @param capacity Number of Space-Saving counters, at least the number of top values reported
+     */
+    public ValueFrequencySketch(int precision, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Counter capacity must be positive: " + capacity);
+        }
+        this.distinct = new HyperLogLog(precision);
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    public void add(String value) {
+        total++;
+        distinct.add(value);
+        if (value.length() > MAX_VALUE_LENGTH) {
+            value = value.substring(0, MAX_VALUE_LENGTH) + "...";
+        }
+
+        Counter counter = counters.get(value);
+        if (counter != null) {
+            counter.count++;
+            siftDown(counter.position);
+        } else if (size < heap.length) {
+            counter = new Counter(value, 1, 0);
+            counters.put(value, counter);
+            heap[size] = counter;
+            counter.position = size;
+            siftUp(size++);
+        } else {
+            // Replace the least frequent value; the newcomer inherits its count as possible overcount
+            Counter minimum = heap[0];
+            counters.remove(minimum.value);
+            counter = new Counter(value, minimum.count + 1, minimum.count);
+            counters.put(value, counter);
+            heap[0] = counter;
+            counter.position = 0;
+            siftDown(0);
+            evicted = true;
+        }
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Whether the counts are exact (no counter has been evicted yet)
+     */
+    public boolean isExact() {
+        return !evicted;
+    }
+
+    /**
+     * Number of distinct values: exact while nothing was evicted, a HyperLogLog estimate otherwise
+     */
+    public long estimateDistinct() {
+        if (!evicted) {
+            return size;
+        }
+        // At least as many values as are held in counters right now
+        return Math.max(distinct.estimate(), size);
+    }
+
+    /**
+     * Relative standard error of the distinct count (0 while exact)
+     */
+    public double distinctStandardError() {
+        return evicted ? distinct.relativeStandardError() : 0.0;
+    }
+
+    /**
+     * The most frequent values, most frequent first
+     * @param limit Number of values to return
+     */
+    public List<TopValue> top(int limit) {
+        List<Counter> sorted = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sorted.add(heap[i]);
+        }
+        sorted.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.value.compareTo(b.value));
+
+        int returned = Math.min(limit, sorted.size());
+        // A value outside the counters has occurred at most as often as the smallest counter
+        long unseenBound = evicted && size > 0 ? heap[0].count : 0;
+        List<TopValue> top = new ArrayList<>(returned);
+        for (int i = 0; i < returned; i++) {
+            Counter counter = sorted.get(i);
+            long nextCount = i + 1 < sorted.size() ? sorted.get(i + 1).count : 0;
+            long guaranteed = counter.count - counter.overcount;
+            top.add(new TopValue(counter.value, counter.count, counter.overcount,
+                guaranteed >= Math.max(nextCount, unseenBound)));
+        }
+        return top;
+    }
+
+    /**
+     * Approximate memory held by the sketch: registers, counter slots and the values they hold
+     */
+    public long footprintBytes() {
+        long bytes = (1L << distinct.getPrecision()) + heap.length * 48L;
+        for (int i = 0; i < size; i++) {
+            bytes += 40 + 2L * heap[i].value.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * One reported value: count is an upper bound, count - overcount a lower bound
+     */
+    public static final class TopValue {
+        private final String value;
+        private final long count;
+        private final long overcount;
+        private final boolean rankGuaranteed;
+
+        TopValue(String value, long count, long overcount, boolean rankGuaranteed) {
+            this.value = value;
+            this.count = count;
+            this.overcount = overcount;
+            this.rankGuaranteed = rankGuaranteed;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getOvercount() {
+            return overcount;
+        }
+
+        /**
+         * Whether the value certainly occurs at least as often as every value ranked after it
+         */
+        public boolean isRankGuaranteed() {
+            return rankGuaranteed;
+        }
+    }
+
+    private void siftUp(int position) {
+        Counter counter = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(counter, position);
+    }
+
+    private void siftDown(int position) {
+        Counter counter = heap[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(counter, position);
+    }
+
+    private void place(Counter counter, int position) {
+        heap[position] = counter;
+        counter.position = position;
+    }
+
+    private static class Counter {
+        final String value;
+        final long overcount;
+        long count;
+        int position;
+
+        Counter(String value, long count, long overcount) {
+            this.value = value;
+            this.count = count;
+            this.overcount = overcount;
+        }
+    }
+}
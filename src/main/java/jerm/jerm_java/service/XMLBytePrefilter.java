@@ -0,0 +1,328 @@
+package jerm.jerm_java.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Byte-level check that rules out files which cannot match a streamable XPath before they're parsed.
+ *
+ * Every named step, predicate attribute and predicate value of the path has to appear literally
+ * somewhere in a matching file, so a file missing any of them is skipped. The check only says "no"
+ * when that is certain: files that aren't in an ASCII-compatible encoding (UTF-16, UTF-32, EBCDIC),
+ * files with a DOCTYPE (entities and defaulted attributes can supply text that isn't in the bytes),
+ * and value tokens in files using character references are all passed on to the parser, as are
+ * compressed documents (their bytes aren't the XML), as are files over 2 GB.
+ *
+ * Files are read in chunks into a buffer reused by each thread, carrying the tail of one chunk
+ * into the next so tokens split across a boundary are still found. Reading stops as soon as every
+ * token has been seen; only files that end up skipped are read to the end. Nothing is
+ * memory-mapped, which would keep files on network shares locked until the mapping is collected.
+ */
+public final class XMLBytePrefilter {
+
+    private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z0-9._-]+)[\"']");
+    private static final byte[] DOCTYPE = "<!DOCTYPE".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHARACTER_REFERENCE = "&#".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[][] names;
+    private final byte[][] values;
+    private final boolean[] nameAscii;
+    private final boolean[] valueAscii;
+    // Bytes kept from the end of one chunk for tokens that span into the next
+    private final int overlap;
+    private final ThreadLocal<byte[]> buffers;
+
+    private final AtomicLong filesScanned = new AtomicLong();
+    private final AtomicLong filesSkipped = new AtomicLong();
+    private final AtomicLong filesUndecidable = new AtomicLong();
+    private final AtomicLong bytesScanned = new AtomicLong();
+
+    private XMLBytePrefilter(List<String> names, List<String> values, int chunkBytes) {
+        this.names = encode(names);
+        this.values = encode(values);
+        this.nameAscii = ascii(this.names);
+        this.valueAscii = ascii(this.values);
+        int longest = CHARACTER_REFERENCE.length;
+        for (byte[] token : this.names) {
+            longest = Math.max(longest, token.length);
+        }
+        for (byte[] token : this.values) {
+            longest = Math.max(longest, token.length);
+        }
+        this.overlap = longest - 1;
+        // Room for the overlap plus a useful amount of new data, and for the prolog checks
+        int size = Math.max(chunkBytes, Math.max(4 * longest, 4096));
+        this.buffers = ThreadLocal.withInitial(() -> new byte[size]);
+    }
+
+    /**
+     * Build a prefilter for a streamable path
+     * @param path Compiled path, may be null
+     * @param chunkBytes Size of the read buffer each scanning thread reuses
+     * @return Prefilter, or null if the path has no literal the file must contain
+     */
+    public static XMLBytePrefilter forPath(StreamingXPath path, int chunkBytes) {
+        if (path == null) {
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        for (String value : path.requiredValues()) {
+            // Attribute values are whitespace-normalized and may use the predefined entities,
+            // so only values whose bytes must appear verbatim are usable
+            if (value.chars().noneMatch(c -> Character.isWhitespace(c) || "&<>\"'".indexOf(c) >= 0)) {
+                values.add(value);
+            }
+        }
+        List<String> names = path.requiredNames();
+        if (names.isEmpty() && values.isEmpty()) {
+            return null;
+        }
+        return new XMLBytePrefilter(names, values, chunkBytes);
+    }
+
+    /**
+     * Check whether a file could contain a match
+     * @return false only if the file certainly has no match
+     */
+    public boolean mayMatch(XMLSource source) throws IOException {
+        if (source.isCompressed()) {
+            filesUndecidable.incrementAndGet();
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(source.getFile(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                filesUndecidable.incrementAndGet();
+                return true;
+            }
+            filesScanned.incrementAndGet();
+            return scan(channel);
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        List<String> tokens = new ArrayList<>();
+        for (byte[] name : names) {
+            tokens.add(new String(name, StandardCharsets.UTF_8));
+        }
+        for (byte[] value : values) {
+            tokens.add(new String(value, StandardCharsets.UTF_8));
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("tokens", tokens);
+        stats.put("filesScanned", filesScanned.get());
+        stats.put("filesSkipped", filesSkipped.get());
+        stats.put("filesUndecidable", filesUndecidable.get());
+        stats.put("bytesScanned", bytesScanned.get());
+        stats.put("note", "Skipped files are not parsed, so a malformed file that cannot match is counted "
+            + "in filesSkipped instead of reported in processingErrors");
+        return stats;
+    }
+
+    private boolean scan(FileChannel channel) throws IOException {
+        byte[] buffer = buffers.get();
+        int length = fill(channel, buffer, 0);
+        boolean whole = length < buffer.length;
+
+        Boolean utf8 = asciiCompatibleEncoding(buffer, length);
+        if (utf8 == null || hasDoctype(buffer, length, whole)) {
+            filesUndecidable.incrementAndGet();
+            return true;
+        }
+
+        // A non-ASCII token is encoded differently outside UTF-8; such tokens are left to the parser
+        boolean[] nameFound = new boolean[names.length];
+        boolean[] valueFound = new boolean[values.length];
+        int missing = 0;
+        for (int i = 0; i < names.length; i++) {
+            nameFound[i] = !utf8 && !nameAscii[i];
+            missing += nameFound[i] ? 0 : 1;
+        }
+        for (int i = 0; i < values.length; i++) {
+            valueFound[i] = !utf8 && !valueAscii[i];
+            missing += valueFound[i] ? 0 : 1;
+        }
+        boolean characterReference = false;
+
+        while (true) {
+            for (int i = 0; i < names.length; i++) {
+                if (!nameFound[i] && indexOf(buffer, length, names[i], 0) >= 0) {
+                    nameFound[i] = true;
+                    missing--;
+                }
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (!valueFound[i] && indexOf(buffer, length, values[i], 0) >= 0) {
+                    valueFound[i] = true;
+                    missing--;
+                }
+            }
+            if (!characterReference) {
+                characterReference = indexOf(buffer, length, CHARACTER_REFERENCE, 0) >= 0;
+            }
+            if (missing == 0 || length < buffer.length) {
+                break;
+            }
+            int keep = Math.min(overlap, length);
+            System.arraycopy(buffer, length - keep, buffer, 0, keep);
+            int filled = fill(channel, buffer, keep);
+            if (filled == keep) {
+                break;
+            }
+            length = filled;
+        }
+
+        for (boolean found : nameFound) {
+            if (!found) {
+                filesSkipped.incrementAndGet();
+                return false;
+            }
+        }
+        for (boolean found : valueFound) {
+            if (!found) {
+                if (characterReference) {
+                    // The value might be spelled with character references
+                    filesUndecidable.incrementAndGet();
+                    return true;
+                }
+                filesSkipped.incrementAndGet();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read from the channel into buffer[offset..] until it is full or the file ends
+     * @return Number of bytes now in the buffer
+     */
+    private int fill(FileChannel channel, byte[] buffer, int offset) throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, offset, buffer.length - offset);
+        while (target.hasRemaining() && channel.read(target) >= 0) {
+            // Keep reading until full or at the end
+        }
+        bytesScanned.addAndGet(target.position() - offset);
+        return target.position();
+    }
+
+    /**
+     * @return true for UTF-8, false for another ASCII-compatible encoding, null if bytes can't be compared
+     */
+    private static Boolean asciiCompatibleEncoding(byte[] buffer, int limit) {
+        if (limit >= 3 && (buffer[0] & 0xFF) == 0xEF && (buffer[1] & 0xFF) == 0xBB && (buffer[2] & 0xFF) == 0xBF) {
+            return true;
+        }
+        if (limit >= 2 && (buffer[0] == 0 || buffer[1] == 0
+                || (buffer[0] & 0xFF) == 0xFE || (buffer[0] & 0xFF) == 0xFF
+                || ((buffer[0] & 0xFF) == 0x4C && (buffer[1] & 0xFF) == 0x6F))) {
+            // UTF-16/UTF-32 (with or without BOM) or EBCDIC "<?"
+            return null;
+        }
+
+        // Encoding from the XML declaration, if there is one
+        if (limit >= 5 && buffer[0] == '<' && buffer[1] == '?') {
+            String prolog = new String(buffer, 0, Math.min(limit, 512), StandardCharsets.ISO_8859_1);
+            int close = prolog.indexOf("?>");
+            Matcher matcher = ENCODING.matcher(close >= 0 ? prolog.substring(0, close) : prolog);
+            if (matcher.find()) {
+                String encoding = matcher.group(1).toLowerCase();
+                if (encoding.equals("utf-8") || encoding.equals("utf8")) {
+                    return true;
+                }
+                if (encoding.equals("us-ascii") || encoding.equals("ascii") || encoding.startsWith("iso-8859-")
+                        || encoding.startsWith("windows-125") || encoding.startsWith("cp125") || encoding.equals("latin1")) {
+                    return false;
+                }
+                return null;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Look for a DOCTYPE in the prolog only (it must precede the root element)
+     * @param whole Whether the buffer holds the whole file; if not, a prolog running past it counts as a DOCTYPE
+     */
+    private static boolean hasDoctype(byte[] buffer, int limit, boolean whole) {
+        int position = 0;
+        while (position < limit) {
+            int open = indexOf(buffer, limit, (byte) '<', position);
+            if (open < 0 || open + 1 >= limit) {
+                return !whole;
+            }
+            byte next = buffer[open + 1];
+            if (next == '?') {
+                position = open + 2;
+            } else if (next == '!') {
+                if (startsWith(buffer, limit, open, DOCTYPE)) {
+                    return true;
+                }
+                // Comment in the prolog
+                position = open + 2;
+            } else {
+                return false;
+            }
+        }
+        return !whole;
+    }
+
+    private static int indexOf(byte[] buffer, int limit, byte target, int from) {
+        for (int i = from; i < limit; i++) {
+            if (buffer[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] buffer, int limit, byte[] token, int from) {
+        int last = limit - token.length;
+        byte first = token[0];
+        for (int i = from; i <= last; i++) {
+            if (buffer[i] == first && startsWith(buffer, limit, i, token)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] buffer, int limit, int position, byte[] token) {
+        if (position + token.length > limit) {
+            return false;
+        }
+        for (int j = 0; j < token.length; j++) {
+            if (buffer[position + j] != token[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[][] encode(List<String> tokens) {
+        byte[][] encoded = new byte[tokens.size()][];
+        for (int i = 0; i < tokens.size(); i++) {
+            encoded[i] = tokens.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    private static boolean[] ascii(byte[][] tokens) {
+        boolean[] ascii = new boolean[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            ascii[i] = true;
+            for (byte b : tokens[i]) {
+                if (b < 0) {
+                    ascii[i] = false;
+                    break;
+                }
+            }
+        }
+        return ascii;
+    }
+}
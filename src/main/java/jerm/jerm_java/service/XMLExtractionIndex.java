@@ -0,0 +1,424 @@
+package jerm.jerm_java.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Persistent per-file cache of XML extraction results.
+ *
+ * Entries are keyed by absolute path and validated by size and mtime; when either changed the
+ * file is re-hashed, and results are only discarded if the content hash differs too (a copy or
+ * touch keeps them). Each entry holds the business metrics and the extracted values per selector
+ * hash, so unchanged files cost a stat instead of a parse. Selector results larger than
+ * xml.index.max.bytes.per.file are recomputed rather than kept.
+ *
+ * Each scanned directory's entries are split by path into SHARD_COUNT JSON files under
+ * xml.index.directory; after a request only the shards holding changed entries are rewritten.
+ *
+ * Entries are also grouped by content hash across every loaded directory, so a re-delivered or
+ * copied document can take its results from another copy instead of being parsed again. New
+ * documents aren't hashed up front: the hash is taken from the bytes of their first full parse,
+ * or computed on demand when a hashed document of the same size has the wanted result or when
+ * duplicates are collapsed.
+ */
+@Service
+public class XMLExtractionIndex {
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int SHARD_COUNT = 64;
+
+    @Value("${xml.index.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${xml.index.directory:${java.io.tmpdir}/jerm-xml-index}")
+    private String indexDirectory = System.getProperty("java.io.tmpdir") + "/jerm-xml-index";
+
+    @Value("${xml.index.max.selectors.per.file:16}")
+    private int maxSelectorsPerFile = 16;
+
+    // Characters of matched values and attributes kept per file across all its selectors
+    @Value("${xml.index.max.bytes.per.file:65536}")
+    private long maxBytesPerFile = 65536;
+
+    private final JsonFileStore<IndexFile> fileStore = new JsonFileStore<>("XML extraction index", IndexFile.class,
+        FORMAT_VERSION, null);
+
+    private final Map<String, RootIndex> roots = new ConcurrentHashMap<>();
+
+    // Entries of every loaded directory by content hash; copies of a document share results
+    private final Map<String, Set<Entry>> entriesByContent = new ConcurrentHashMap<>();
+    // The same entries by size: a document no hashed entry matches in size can't be a copy
+    private final Map<Long, Set<Entry>> entriesBySize = new ConcurrentHashMap<>();
+    private final AtomicLong duplicateReuses = new AtomicLong();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxSelectorsPerFile() {
+        return maxSelectorsPerFile;
+    }
+
+    public long getMaxBytesPerFile() {
+        return maxBytesPerFile;
+    }
+
+    /**
+     * Get the index for a scanned directory, loading it from disk on first use
+     * @param rootPath Directory being scanned
+     * @return Index of the files under that directory
+     */
+    public RootIndex forRoot(String rootPath) {
+        String key = Paths.get(rootPath).toAbsolutePath().normalize().toString();
+        return roots.computeIfAbsent(key, this::load);
+    }
+
+    /**
+     * Stable short hash identifying a selector's results within an entry
+     */
+    public static String selectorKey(String kind, String expression) {
+        return kind + ":" + JsonFileStore.sha256(kind + "\u0000" + expression).substring(0, 32);
+    }
+
+    /**
+     * Hash of a document's XML content (decompressed, for compressed sources)
+     */
+    public static String contentHash(XMLSource source) throws IOException {
+        MessageDigest digest = JsonFileStore.sha256Digest();
+        byte[] buffer = new byte[65536];
+        try (InputStream input = source.openStream()) {
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public Map<String, Object> getStatistics() {
+        List<Map<String, Object>> rootStats = new ArrayList<>();
+        for (RootIndex root : roots.values()) {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("directoryPath", root.rootPath);
+            stats.put("entries", root.entries.size());
+            stats.put("shardsSaved", root.shardsSaved.get());
+            rootStats.add(stats);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("indexDirectory", indexDirectory);
+        result.put("roots", rootStats);
+        result.put("contentGroupsWithCopies", entriesByContent.values().stream().filter(group -> group.size() > 1).count());
+        result.put("resultsReusedFromCopies", duplicateReuses.get());
+        return result;
+    }
+
+    private RootIndex load(String rootPath) {
+        RootIndex root = new RootIndex(rootPath);
+        if (!enabled) {
+            return root;
+        }
+        for (int shard = 0; shard < SHARD_COUNT; shard++) {
+            int expectedShard = shard;
+            IndexFile stored = fileStore.load(root.shardFile(shard), file -> rootPath.equals(file.rootPath)
+                && file.shard == expectedShard && file.entries != null);
+            if (stored != null) {
+                root.entries.putAll(stored.entries);
+                stored.entries.values().forEach(this::group);
+            }
+        }
+        if (!root.entries.isEmpty()) {
+            System.out.println("XML extraction index loaded for " + rootPath + ": " + root.entries.size() + " files");
+        }
+        return root;
+    }
+
+    private static int shardOf(String path) {
+        return Math.floorMod(path.hashCode(), SHARD_COUNT);
+    }
+
+    public class RootIndex {
+        private final String rootPath;
+        private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+        private final Set<Integer> dirtyShards = ConcurrentHashMap.newKeySet();
+        private final AtomicLong shardsSaved = new AtomicLong();
+
+        RootIndex(String rootPath) {
+            this.rootPath = rootPath;
+        }
+
+        private Path shardFile(int shard) {
+            return JsonFileStore.fileFor(indexDirectory, rootPath + "\u0000" + shard);
+        }
+
+        /**
+         * Get the entry for a document, validating it against its current size, mtime and content
+         * @return Entry whose cached results describe the current document content
+         */
+        public Entry entry(XMLSource source) throws IOException {
+            String path = source.getPath();
+            long size = source.getSize();
+            long lastModified = source.getLastModified();
+
+            Entry entry = entries.get(path);
+            if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+                return entry;
+            }
+
+            // Only a changed version of a hashed document is hashed here, to tell a touch or copy
+            // from an edit; a new document gets its hash later (see contentHash)
+            String contentHash = entry != null && entry.contentHash != null ? XMLExtractionIndex.contentHash(source) : null;
+            synchronized (this) {
+                entry = entries.get(path);
+                if (entry != null && contentHash != null && contentHash.equals(entry.contentHash)) {
+                    // Touched or copied, same content: keep the results
+                    ungroup(entry);
+                    entry.size = size;
+                    entry.lastModified = lastModified;
+                    group(entry);
+                } else {
+                    entry = new Entry();
+                    entry.path = path;
+                    entry.size = size;
+                    entry.lastModified = lastModified;
+                    entry.contentHash = contentHash;
+                    ungroup(entries.put(path, entry));
+                    group(entry);
+                }
+                markDirty(entry);
+            }
+            return entry;
+        }
+
+        /**
+         * Content hash of an entry's document, reading the document if it hasn't been hashed yet
+         */
+        public String contentHash(Entry entry, XMLSource source) throws IOException {
+            String hash = entry.contentHash;
+            if (hash == null) {
+                hash = XMLExtractionIndex.contentHash(source);
+                recordContentHash(entry, hash);
+            }
+            return hash;
+        }
+
+        /**
+         * Record the hash of an entry's document, e.g. computed from the bytes of a full parse
+         */
+        public void recordContentHash(Entry entry, String hash) {
+            synchronized (this) {
+                if (entry.contentHash == null) {
+                    entry.contentHash = hash;
+                    if (entries.get(entry.path) == entry) {
+                        group(entry);
+                        markDirty(entry);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Find another copy of an entry's document (same content hash) that has a result. An entry
+         * without a hash is only hashed if a hashed document of the same size has the result.
+         * @param entry Entry missing the result
+         * @param source The entry's document
+         * @param hasResult Whether a copy has the wanted result
+         * @return A copy with the result, or null
+         */
+        public Entry findDuplicate(Entry entry, XMLSource source, Predicate<Entry> hasResult) throws IOException {
+            if (entry.contentHash == null) {
+                Set<Entry> sameSize = entriesBySize.getOrDefault(entry.size, Set.of());
+                if (sameSize.stream().noneMatch(copy -> copy != entry && hasResult.test(copy))) {
+                    return null;
+                }
+                contentHash(entry, source);
+            }
+            for (Entry copy : entriesByContent.getOrDefault(entry.contentHash, Set.of())) {
+                if (copy != entry && hasResult.test(copy)) {
+                    duplicateReuses.incrementAndGet();
+                    return copy;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Drop entries for documents that are no longer present under this directory
+         */
+        public void retainOnly(Collection<XMLSource> presentSources) {
+            Set<String> present = new HashSet<>();
+            for (XMLSource source : presentSources) {
+                present.add(source.getPath());
+            }
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (!present.contains(entry.path)) {
+                    iterator.remove();
+                    ungroup(entry);
+                    dirtyShards.add(shardOf(entry.path));
+                }
+            }
+        }
+
+        /**
+         * Note that an entry's results changed, so its shard is written on the next save
+         */
+        public void markDirty(Entry entry) {
+            dirtyShards.add(shardOf(entry.path));
+        }
+
+        /**
+         * Write the shards whose entries changed since they were loaded or last saved
+         */
+        public void saveIfDirty() {
+            if (!enabled || dirtyShards.isEmpty()) {
+                return;
+            }
+            synchronized (this) {
+                List<Integer> shards = new ArrayList<>(dirtyShards);
+                dirtyShards.removeAll(shards);
+                Map<Integer, Map<String, Entry>> entriesByShard = new HashMap<>();
+                for (Integer shard : shards) {
+                    entriesByShard.put(shard, new TreeMap<>());
+                }
+                for (Entry entry : entries.values()) {
+                    Map<String, Entry> shardEntries = entriesByShard.get(shardOf(entry.path));
+                    if (shardEntries != null) {
+                        shardEntries.put(entry.path, entry);
+                    }
+                }
+                for (Integer shard : shards) {
+                    IndexFile stored = new IndexFile();
+                    stored.rootPath = rootPath;
+                    stored.shard = shard;
+                    stored.entries = entriesByShard.get(shard);
+                    if (fileStore.save(shardFile(shard), stored)) {
+                        shardsSaved.incrementAndGet();
+                    } else {
+                        dirtyShards.add(shard);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Cached results for one file version. Results are replaced as a whole, never mutated in place.
+     */
+    public static class Entry {
+        public String path;
+        public long size;
+        public long lastModified;
+        public String contentHash;
+        public String parseError;
+        public Map<String, Object> businessMetrics;
+        public volatile Map<String, SelectorResult> selectors = new LinkedHashMap<>();
+
+        public SelectorResult getSelector(String key) {
+            return selectors.get(key);
+        }
+
+        /**
+         * Keep a selector's result, evicting the oldest ones beyond maxSelectors or maxBytes
+         * @return Whether the result was kept; a result larger than maxBytes on its own is not
+         */
+        public synchronized boolean putSelector(String key, SelectorResult result, int maxSelectors, long maxBytes) {
+            long resultBytes = result.valueBytes();
+            if (resultBytes > maxBytes) {
+                return false;
+            }
+            // Copy on write, so the index can be serialized while workers add results
+            Map<String, SelectorResult> updated = new LinkedHashMap<>(selectors);
+            updated.remove(key);
+            long totalBytes = resultBytes;
+            for (SelectorResult kept : updated.values()) {
+                totalBytes += kept.valueBytes();
+            }
+            // Oldest selectors go first so ad-hoc queries can't grow an entry without bound
+            Iterator<SelectorResult> oldest = updated.values().iterator();
+            while ((updated.size() >= maxSelectors || totalBytes > maxBytes) && oldest.hasNext()) {
+                totalBytes -= oldest.next().valueBytes();
+                oldest.remove();
+            }
+            updated.put(key, result);
+            selectors = updated;
+            return true;
+        }
+    }
+
+    /**
+     * Values matched by one selector in one file (or the evaluation error)
+     */
+    public static class SelectorResult {
+        public List<Map<String, Object>> matches;
+        public String error;
+
+        public SelectorResult() {}
+
+        public SelectorResult(List<Map<String, Object>> matches, String error) {
+            this.matches = matches;
+            this.error = error;
+        }
+
+        /**
+         * Characters held by the matched values and attributes
+         */
+        long valueBytes() {
+            long bytes = error != null ? error.length() : 0;
+            if (matches != null) {
+                for (Map<String, Object> match : matches) {
+                    bytes += textLength(match);
+                }
+            }
+            return bytes;
+        }
+
+        private static long textLength(Object value) {
+            if (value instanceof Map<?, ?> map) {
+                long length = 0;
+                for (Map.Entry<?, ?> field : map.entrySet()) {
+                    length += String.valueOf(field.getKey()).length() + textLength(field.getValue());
+                }
+                return length;
+            }
+            return value != null ? String.valueOf(value).length() : 0;
+        }
+    }
+
+    public static class IndexFile extends JsonFileStore.Stored {
+        public String rootPath;
+        public int shard;
+        public Map<String, Entry> entries;
+    }
+
+    private void group(Entry entry) {
+        if (entry.contentHash != null) {
+            entriesByContent.computeIfAbsent(entry.contentHash, hash -> ConcurrentHashMap.newKeySet()).add(entry);
+            entriesBySize.computeIfAbsent(entry.size, size -> ConcurrentHashMap.newKeySet()).add(entry);
+        }
+    }
+
+    private void ungroup(Entry entry) {
+        if (entry != null && entry.contentHash != null) {
+            entriesByContent.computeIfPresent(entry.contentHash, (hash, group) -> {
+                group.remove(entry);
+                return group.isEmpty() ? null : group;
+            });
+            entriesBySize.computeIfPresent(entry.size, (size, group) -> {
+                group.remove(entry);
+                return group.isEmpty() ? null : group;
+            });
+        }
+    }
+}
@@ -1,38 +1,205 @@
 package jerm.jerm_java.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.stereotype.Service;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import javax.xml.parsers.DocumentBuilder;
+import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
-import java.io.File;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 
 @Service
 public class XMLFileService {
     
+    // Most common values reported by the trend analysis
+    private static final int TOP_VALUES = 10;
+    
     @Value("${xml.directory.path:/data/xml}")
     private String xmlDirectoryPath;
     
+    // Max files parsed at once across all requests (0 = one per core), so a big directory
+    // scales with cores without flooding the file share
+    @Value("${xml.parse.concurrency:0}")
+    private int parseConcurrency;
+    
+    // Evaluate the streamable XPath subset with StAX instead of building a DOM per file
+    @Value("${xml.streaming.enabled:true}")
+    private boolean streamingEnabled;
+    
+    // Skip files whose bytes lack a literal the XPath requires (element/attribute names, values)
+    @Value("${xml.prefilter.enabled:true}")
+    private boolean prefilterEnabled;
+    
+    // Read buffer each prefilter thread reuses while scanning a file
+    @Value("${xml.prefilter.chunk.bytes:262144}")
+    private int prefilterChunkBytes = 262144;
+    
+    // Trend matches per response page; streamed (NDJSON) extraction isn't paged
+    @Value("${xml.extract.page.size:1000}")
+    private int defaultPageSize;
+    
+    @Value("${xml.extract.max.page.size:10000}")
+    private int maxPageSize;
+    
+    // Matches a parse worker holds per file while earlier files finish; a file with more is
+    // streamed straight to the response when its turn comes
+    @Value("${xml.extract.max.held.matches:10000}")
+    private int maxHeldMatches = 10000;
+    
+    // Longest element text a streamed match reports; longer text is cut off
+    @Value("${xml.extract.max.value.chars:65536}")
+    private int maxValueChars = 65536;
+    
+    // Element names counted as business metrics (a tag counts when its name contains one of these)
+    @Value("${xml.business.tags:error,warning,config,record}")
+    private String businessTags;
+    
+    // Trend value statistics: HyperLogLog precision for the distinct count (2^p one-byte registers)
+    // and Space-Saving counters behind the most common values
+    @Value("${xml.trend.sketch.precision:12}")
+    private int trendSketchPrecision = 12;
+    
+    @Value("${xml.trend.top.counters:100}")
+    private int trendTopCounters = 100;
+    
+    // Limits for in-memory parse requests (/api/xml/test/parse)
+    @Value("${xml.test.max.bytes:1048576}")
+    private int testMaxBytes = 1048576;
+    
+    @Value("${xml.test.max.body.bytes:4194304}")
+    private int testMaxBodyBytes = 4194304;
+    
+    @Value("${xml.test.max.nodes:100000}")
+    private int testMaxNodes = 100000;
+    
+    @Value("${xml.test.max.matches:1000}")
+    private int testMaxMatches = 1000;
+    
+    @Autowired
+    private XPathExpressionCache xpathCache;
+    
+    @Autowired
+    private XMLExtractionIndex extractionIndex;
+    
+    @Autowired
+    private DirectoryCatalogService directoryCatalog;
+    
+    @Autowired
+    private XMLMetricsTimeSeriesStore metricsStore;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
     private final DocumentBuilderFactory documentBuilderFactory;
-    private final XPathFactory xPathFactory;
+    
+    // DocumentBuilder isn't thread-safe; each parse worker keeps its own
+    private final ThreadLocal<DocumentBuilder> documentBuilders;
+    
+    // Builders for request content: no DOCTYPE, so no external entities and no entity expansion
+    private final ThreadLocal<DocumentBuilder> contentBuilders;
+    
+    private static final ThreadLocal<XMLInputFactory> CONTENT_INPUT_FACTORIES = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
+    private ExecutorService parseExecutor;
+    private BusinessMetricsExtractor businessMetricsExtractor;
     
     public XMLFileService() {
         this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        this.xPathFactory = XPathFactory.newInstance();
+        this.documentBuilders = ThreadLocal.withInitial(() -> {
+            synchronized (documentBuilderFactory) {
+                try {
+                    return documentBuilderFactory.newDocumentBuilder();
+                } catch (Exception e) {
+                    throw new IllegalStateException("Failed to create XML DocumentBuilder: " + e.getMessage(), e);
+                }
+            }
+        });
+        
+        DocumentBuilderFactory contentBuilderFactory = DocumentBuilderFactory.newInstance();
+        try {
+            contentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            contentBuilderFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to configure XML DocumentBuilderFactory: " + e.getMessage(), e);
+        }
+        contentBuilderFactory.setXIncludeAware(false);
+        contentBuilderFactory.setExpandEntityReferences(false);
+        this.contentBuilders = ThreadLocal.withInitial(() -> {
+            synchronized (contentBuilderFactory) {
+                try {
+                    return contentBuilderFactory.newDocumentBuilder();
+                } catch (Exception e) {
+                    throw new IllegalStateException("Failed to create XML DocumentBuilder: " + e.getMessage(), e);
+                }
+            }
+        });
+    }
+    
+    @PostConstruct
+    public void initialize() {
+        int threads = parseConcurrency > 0 ? parseConcurrency : Runtime.getRuntime().availableProcessors();
+        parseConcurrency = threads;
+        AtomicInteger threadCount = new AtomicInteger();
+        parseExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "xml-parse-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        businessMetricsExtractor = new BusinessMetricsExtractor(Arrays.asList(businessTags.split(",")));
+    }
+    
+    @PreDestroy
+    public void destroy() {
+        if (parseExecutor != null) {
+            parseExecutor.shutdownNow();
+        }
     }
     
     /**
@@ -48,20 +215,17 @@ public class XMLFileService {
             throw new IllegalArgumentException("Directory does not exist: " + targetPath);
         }
         
-        List<File> xmlFiles = Files.walk(path)
-            .filter(Files::isRegularFile)
-            .filter(p -> p.toString().toLowerCase().endsWith(".xml"))
-            .map(Path::toFile)
-            .collect(Collectors.toList());
+        List<XMLSource> xmlFiles = directoryCatalog.listXmlSources(path, true);
         
         Map<String, Object> result = new HashMap<>();
         result.put("directoryPath", targetPath);
         result.put("totalXMLFiles", xmlFiles.size());
         result.put("files", xmlFiles.stream().map(f -> Map.of(
             "name", f.getName(),
-            "path", f.getAbsolutePath(),
-            "size", f.length(),
-            "lastModified", new Date(f.lastModified()).toString()
+            "path", f.getPath(),
+            "size", f.getSize(),
+            "lastModified", new Date(f.getLastModified()).toString(),
+            "compression", f.getCompression().name().toLowerCase()
         )).collect(Collectors.toList()));
         
         result.put("queryType", "xml_files_summary");
@@ -75,9 +239,135 @@ public class XMLFileService {
      * Parse multiple XML files and extract specific elements for trending
      * @param directoryPath Directory containing XML files
      * @param xpathExpression XPath expression to extract data
-     * @return Map containing aggregated trend data
+     * @return Map containing aggregated trend data and the first page of extracted data
      */
     public Map<String, Object> extractTrendDataFromXMLFiles(String directoryPath, String xpathExpression) throws Exception {
+        return extractTrendDataFromXMLFiles(directoryPath, xpathExpression, null, null, false);
+    }
+    
+    /**
+     * Parse multiple XML files and extract specific elements for trending, one page of matches at a time.
+     * extractedData holds one page of matches, oldest file first and in document order within a file.
+     * The first page also carries the trend analysis over every match; later pages leave it out, start
+     * reading at the cursor's file and stop as soon as the page is full.
+     * @param directoryPath Directory containing XML files
+     * @param xpathExpression XPath expression to extract data
+     * @param cursor nextCursor of the previous page, or null for the first page
+     * @param pageSize Matches per page (default xml.extract.page.size, capped at xml.extract.max.page.size)
+     * @param collapseDuplicates Read only one copy of files with identical content
+     * @return Map containing aggregated trend data and one page of extracted data
+     */
+    public Map<String, Object> extractTrendDataFromXMLFiles(String directoryPath, String xpathExpression,
+                                                            String cursor, Integer pageSize,
+                                                            boolean collapseDuplicates) throws Exception {
+        if (pageSize != null && pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be at least 1");
+        }
+        int limit = Math.min(pageSize != null ? pageSize : defaultPageSize, maxPageSize);
+        List<Map<String, Object>> page = new ArrayList<>();
+        TrendCursor[] nextCursor = new TrendCursor[1];
+        
+        TrendCursor startAt = TrendCursor.decode(cursor);
+        Map<String, Object> result = runTrendExtraction(directoryPath, xpathExpression, startAt, startAt == null,
+            collapseDuplicates, new TrendHandler() {
+                @Override
+                public void onItem(Map<String, Object> item, TrendCursor position) {
+                    if (page.size() < limit) {
+                        page.add(item);
+                    } else if (nextCursor[0] == null) {
+                        nextCursor[0] = position;
+                    }
+                }
+                
+                @Override
+                public boolean isDone() {
+                    return nextCursor[0] != null;
+                }
+            });
+        
+        Map<String, Object> pagination = new HashMap<>();
+        pagination.put("pageSize", limit);
+        pagination.put("returned", page.size());
+        pagination.put("cursor", cursor);
+        pagination.put("nextCursor", nextCursor[0] != null ? nextCursor[0].encode() : null);
+        pagination.put("hasMore", nextCursor[0] != null);
+        
+        result.put("extractedData", page);
+        result.put("pagination", pagination);
+        return result;
+    }
+    
+    /**
+     * Stream every match as NDJSON: one {"type":"item"} line per match carrying the cursor to resume
+     * after it, a {"type":"error"} line per file that failed, and a final {"type":"summary"} line with
+     * the counts and trend analysis. Matches are written as files complete, so memory doesn't depend
+     * on how many there are.
+     * @param cursor Resume after the item that carried this cursor, or null to start at the beginning
+     * @param collapseDuplicates Read only one copy of files with identical content
+     * @return Summary of the streamed extraction
+     */
+    public Map<String, Object> streamTrendData(String directoryPath, String xpathExpression, String cursor,
+                                               boolean collapseDuplicates, OutputStream out) throws Exception {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        
+        Map<String, Object> summary = runTrendExtraction(directoryPath, xpathExpression, TrendCursor.decode(cursor), true,
+            collapseDuplicates, new TrendHandler() {
+                @Override
+                public void onItem(Map<String, Object> item, TrendCursor position) throws IOException {
+                    Map<String, Object> line = new LinkedHashMap<>();
+                    line.put("type", "item");
+                    line.putAll(item);
+                    line.put("cursor", position.next().encode());
+                    writeLine(writer, line);
+                }
+                
+                @Override
+                public void onError(XMLSource xmlFile, String error) throws IOException {
+                    Map<String, Object> line = new LinkedHashMap<>();
+                    line.put("type", "error");
+                    line.put("fileName", xmlFile.getName());
+                    line.put("error", error);
+                    writeLine(writer, line);
+                }
+                
+                @Override
+                public void onFileDone() throws IOException {
+                    writer.flush();
+                }
+            });
+        
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("type", "summary");
+        line.putAll(summary);
+        line.put("cursor", cursor);
+        writeLine(writer, line);
+        writer.flush();
+        return summary;
+    }
+    
+    /**
+     * Check a trend request before a stream is started, so problems still get a normal error response
+     */
+    public void validateTrendRequest(String directoryPath, String xpathExpression, String cursor) {
+        String targetPath = directoryPath != null ? directoryPath : xmlDirectoryPath;
+        if (!Files.isDirectory(Paths.get(targetPath))) {
+            throw new IllegalArgumentException("Directory does not exist: " + targetPath);
+        }
+        compileTrendXPath(xpathExpression);
+        TrendCursor.decode(cursor);
+    }
+    
+    /**
+     * One pass over the directory: matches at or after the cursor are handed to the handler in file
+     * order. With analyzeAll every match also goes through the trend analysis; without it, files
+     * before the cursor are not read and the pass ends once the handler is done.
+     * Files are extracted in parallel and their matches held until their turn, up to
+     * xml.extract.max.held.matches per file; a file with more is streamed straight to the
+     * handler when its turn comes.
+     */
+    private Map<String, Object> runTrendExtraction(String directoryPath, String xpathExpression, TrendCursor startAt,
+                                                   boolean analyzeAll, boolean collapseDuplicates,
+                                                   TrendHandler handler) throws Exception {
         String targetPath = directoryPath != null ? directoryPath : xmlDirectoryPath;
         Path path = Paths.get(targetPath);
         
@@ -85,53 +375,89 @@ public class XMLFileService {
             throw new IllegalArgumentException("Directory does not exist: " + targetPath);
         }
         
-        List<File> xmlFiles = Files.walk(path)
-            .filter(Files::isRegularFile)
-            .filter(p -> p.toString().toLowerCase().endsWith(".xml"))
-            .map(Path::toFile)
-            .sorted((f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()))
+        // Oldest first; the path breaks ties so cursors see a stable order
+        List<XMLSource> listedFiles = directoryCatalog.listXmlSources(path, true).stream()
+            .sorted(Comparator.comparingLong(XMLSource::getLastModified).thenComparing(XMLSource::getPath))
             .collect(Collectors.toList());
+        XMLExtractionIndex.RootIndex index = indexFor(targetPath);
+        List<XMLSource> distinctFiles = collapseDuplicates ? collapseDuplicates(listedFiles, index) : listedFiles;
+        List<XMLSource> xmlFiles = distinctFiles;
+        if (!analyzeAll && startAt != null) {
+            xmlFiles = distinctFiles.stream()
+                .filter(xmlFile -> startAt.firstOffsetIn(xmlFile.getLastModified(), xmlFile.getPath()) != Integer.MAX_VALUE)
+                .collect(Collectors.toList());
+        }
         
-        List<Map<String, Object>> extractedData = new ArrayList<>();
         List<String> processingErrors = new ArrayList<>();
+        TrendAccumulator trends = analyzeAll
+            ? new TrendAccumulator(trendSketchPrecision, Math.max(trendTopCounters, TOP_VALUES)) : null;
         
-        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-        XPath xpath = xPathFactory.newXPath();
+        // Compile once up front: a bad expression is one error, not one per file
+        XPathExpressionCache.CompiledXPath compiledPath = compileTrendXPath(xpathExpression);
         
-        for (File xmlFile : xmlFiles) {
+        StreamingXPath streamingPath = streamingEnabled ? StreamingXPath.compile(xpathExpression) : null;
+        XMLBytePrefilter prefilter = prefilterEnabled
+            ? XMLBytePrefilter.forPath(StreamingXPath.compile(xpathExpression), prefilterChunkBytes) : null;
+        AtomicInteger filesParsed = new AtomicInteger();
+        AtomicInteger filesProcessed = new AtomicInteger();
+        
+        forEachInParallel(xmlFiles, xmlFile -> {
+            FileExtraction extraction = new FileExtraction(xmlFile, index, filesParsed);
+            XMLExtractionIndex.SelectorResult matches = extraction.select(compiledPath, streamingPath, prefilter, maxHeldMatches);
+            if (matches != null && matches.error != null) {
+                throw new XPathExpressionException(matches.error);
+            }
+            return extraction;
+        }, fileResult -> {
+            filesProcessed.incrementAndGet();
+            if (fileResult.error != null) {
+                processingErrors.add("Error processing " + fileResult.file.getName() + ": " + fileResult.error);
+                handler.onError(fileResult.file, fileResult.error);
+                return;
+            }
+            
+            XMLSource xmlFile = fileResult.file;
+            int firstOffset = startAt == null ? 0 : startAt.firstOffsetIn(xmlFile.getLastModified(), xmlFile.getPath());
+            TrendMatchSink sink = new TrendMatchSink(xmlFile, firstOffset, trends, handler);
             try {
-                Document document = documentBuilder.parse(xmlFile);
-                document.getDocumentElement().normalize();
-                
-                // Extract data using XPath
-                NodeList nodes = (NodeList) xpath.evaluate(xpathExpression, document, XPathConstants.NODESET);
-                
-                for (int i = 0; i < nodes.getLength(); i++) {
-                    Node node = nodes.item(i);
-                    Map<String, Object> extractedItem = new HashMap<>();
-                    extractedItem.put("fileName", xmlFile.getName());
-                    extractedItem.put("fileLastModified", new Date(xmlFile.lastModified()));
-                    extractedItem.put("nodeValue", getNodeValue(node));
-                    extractedItem.put("nodeAttributes", getNodeAttributes(node));
-                    
-                    extractedData.add(extractedItem);
+                FileExtraction extraction = fileResult.value;
+                if (extraction.heldMatches != null) {
+                    for (Map<String, Object> match : extraction.heldMatches.matches) {
+                        sink.accept(match.get("value"), match.get("attributes"));
+                    }
+                } else {
+                    extraction.streamMatches(streamingPath, sink::accept);
                 }
-                
+            } catch (EvaluationStopped e) {
+                // The handler has all it needs
             } catch (Exception e) {
-                processingErrors.add("Error processing " + xmlFile.getName() + ": " + e.getMessage());
+                // A file too large to hold failed part-way through; its earlier matches were already handed over
+                processingErrors.add("Error processing " + fileResult.file.getName() + ": " + e.getMessage());
+                handler.onError(fileResult.file, e.getMessage());
             }
-        }
+            if (trends != null && sink.offset > 0) {
+                trends.addFile();
+            }
+            handler.onFileDone();
+        }, () -> trends == null && handler.isDone());
+        saveIndex(index, listedFiles);
         
         Map<String, Object> result = new HashMap<>();
         result.put("directoryPath", targetPath);
         result.put("xpathExpression", xpathExpression);
-        result.put("filesProcessed", xmlFiles.size());
-        result.put("extractedDataCount", extractedData.size());
-        result.put("extractedData", extractedData);
+        result.put("filesProcessed", filesProcessed.get());
+        result.put("duplicatesCollapsed", listedFiles.size() - distinctFiles.size());
+        result.put("filesParsed", filesParsed.get());
         result.put("processingErrors", processingErrors);
+        result.put("parseConcurrency", parseConcurrency);
+        result.put("extractionMode", streamingPath != null ? "streaming" : "dom");
+        result.put("prefilter", prefilter != null ? prefilter.getStatistics() : null);
         
-        // Generate trend analysis
-        result.put("trendAnalysis", generateTrendAnalysis(extractedData));
+        if (trends != null) {
+            // Trend analysis over every match, built up during the pass
+            result.put("extractedDataCount", trends.values.getTotal());
+            result.put("trendAnalysis", trends.result());
+        }
         
         result.put("queryType", "xml_trend_extraction");
         result.put("description", "Trend data extracted from multiple XML files");
@@ -140,43 +466,72 @@ public class XMLFileService {
         return result;
     }
     
+    private XPathExpressionCache.CompiledXPath compileTrendXPath(String xpathExpression) {
+        try {
+            return xpathCache.get(xpathExpression);
+        } catch (XPathExpressionException e) {
+            throw new IllegalArgumentException("Invalid XPath expression '" + xpathExpression + "': " + e.getMessage());
+        }
+    }
+    
+    private void writeLine(Writer writer, Map<String, Object> line) throws IOException {
+        writer.write(objectMapper.writeValueAsString(line));
+        writer.write('\n');
+    }
+    
     /**
      * Parse XML files and extract common business metrics (example for log files, config files, etc.)
      * @param directoryPath Directory path
      * @return Map containing business metrics trends
      */
     public Map<String, Object> extractBusinessMetricsTrends(String directoryPath) throws Exception {
+        return extractBusinessMetricsTrends(directoryPath, false);
+    }
+    
+    /**
+     * Parse XML files and extract common business metrics
+     * @param directoryPath Directory path
+     * @param collapseDuplicates Count files with identical content once
+     * @return Map containing business metrics trends
+     */
+    public Map<String, Object> extractBusinessMetricsTrends(String directoryPath, boolean collapseDuplicates) throws Exception {
         String targetPath = directoryPath != null ? directoryPath : xmlDirectoryPath;
         Path path = Paths.get(targetPath);
         
-        List<File> xmlFiles = Files.walk(path)
-            .filter(Files::isRegularFile)
-            .filter(p -> p.toString().toLowerCase().endsWith(".xml"))
-            .map(Path::toFile)
-            .sorted((f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()))
+        List<XMLSource> listedFiles = directoryCatalog.listXmlSources(path, true).stream()
+            .sorted(Comparator.comparingLong(XMLSource::getLastModified).thenComparing(XMLSource::getPath))
             .collect(Collectors.toList());
+        XMLExtractionIndex.RootIndex index = indexFor(targetPath);
+        List<XMLSource> xmlFiles = collapseDuplicates ? collapseDuplicates(listedFiles, index) : listedFiles;
         
         List<Map<String, Object>> businessMetrics = new ArrayList<>();
-        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        AtomicInteger filesParsed = new AtomicInteger();
         
-        for (File xmlFile : xmlFiles) {
-            try {
-                Document document = documentBuilder.parse(xmlFile);
-                document.getDocumentElement().normalize();
-                
-                Map<String, Object> fileMetrics = extractCommonMetrics(document, xmlFile);
-                businessMetrics.add(fileMetrics);
-                
-            } catch (Exception e) {
+        List<ParseResult<Map<String, Object>>> parsed = processInParallel(xmlFiles,
+            xmlFile -> new FileExtraction(xmlFile, index, filesParsed).businessMetrics());
+        
+        Map<XMLSource, Map<String, Object>> metricsBySource = new HashMap<>();
+        for (ParseResult<Map<String, Object>> fileResult : parsed) {
+            if (fileResult.error != null) {
                 // Continue processing other files, but log the error
-                System.err.println("Error processing " + xmlFile.getName() + ": " + e.getMessage());
+                System.err.println("Error processing " + fileResult.file.getName() + ": " + fileResult.error);
+            } else {
+                businessMetrics.add(fileResult.value);
+                metricsBySource.put(fileResult.file, fileResult.value);
             }
         }
+        saveIndex(index, listedFiles);
+        
+        // Keep the history beyond what's currently in the directory
+        int historyPointsRecorded = metricsStore.record(targetPath, listedFiles, metricsBySource);
         
         Map<String, Object> result = new HashMap<>();
         result.put("directoryPath", targetPath);
         result.put("filesProcessed", xmlFiles.size());
+        result.put("duplicatesCollapsed", listedFiles.size() - xmlFiles.size());
+        result.put("filesParsed", filesParsed.get());
         result.put("businessMetrics", businessMetrics);
+        result.put("historyPointsRecorded", historyPointsRecorded);
         
         // Generate aggregated trends
         result.put("aggregatedTrends", generateBusinessTrends(businessMetrics));
@@ -188,75 +543,131 @@ public class XMLFileService {
         return result;
     }
     
+    /**
+     * Business metrics history from the time-series store; no XML is read
+     * @param directoryPath Directory path
+     * @param from Range start, ISO date or instant (default: 30 days before the end)
+     * @param to Range end, ISO date or instant, exclusive (default: now)
+     * @param resolution raw, hourly or daily (default: chosen from the range)
+     * @return Map containing the metric points or rollup buckets in the range
+     */
+    public Map<String, Object> getBusinessMetricsHistory(String directoryPath, String from, String to, String resolution) {
+        String targetPath = directoryPath != null ? directoryPath : xmlDirectoryPath;
+        long end = to != null ? parseHistoryTime(to) : System.currentTimeMillis();
+        long start = from != null ? parseHistoryTime(from) : end - 30L * 24 * 60 * 60 * 1000;
+        
+        XMLMetricsTimeSeriesStore.Resolution requested = null;
+        if (resolution != null && !resolution.isBlank() && !resolution.equalsIgnoreCase("auto")) {
+            try {
+                requested = XMLMetricsTimeSeriesStore.Resolution.valueOf(resolution.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown resolution '" + resolution + "' (expected raw, hourly, daily or auto)");
+            }
+        }
+        return metricsStore.query(targetPath, start, end, requested);
+    }
+    
+    private static long parseHistoryTime(String value) {
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            }
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid time '" + value + "' (expected yyyy-MM-dd or an ISO-8601 instant)");
+        }
+    }
+    
     /**
      * Advanced XML parsing with custom element extraction
      * @param directoryPath Directory path
      * @param elementSelectors Map of element selectors to extract
+     * @param collapseDuplicates Extract from only one copy of files with identical content
      * @return Map containing custom extracted data
      */
-    public Map<String, Object> extractCustomElements(String directoryPath, Map<String, String> elementSelectors) throws Exception {
+    public Map<String, Object> extractCustomElements(String directoryPath, Map<String, String> elementSelectors,
+                                                     boolean collapseDuplicates) throws Exception {
         String targetPath = directoryPath != null ? directoryPath : xmlDirectoryPath;
         Path path = Paths.get(targetPath);
         
-        List<File> xmlFiles = Files.walk(path)
-            .filter(Files::isRegularFile)
-            .filter(p -> p.toString().toLowerCase().endsWith(".xml"))
-            .map(Path::toFile)
-            .collect(Collectors.toList());
+        List<XMLSource> listedFiles = directoryCatalog.listXmlSources(path, true);
         
         List<Map<String, Object>> extractedData = new ArrayList<>();
-        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-        XPath xpath = xPathFactory.newXPath();
         
-        for (File xmlFile : xmlFiles) {
+        // Compile every selector once up front; invalid ones are reported here instead of per file
+        Map<String, XPathExpressionCache.CompiledXPath> compiledSelectors = new LinkedHashMap<>();
+        Map<String, String> selectorErrors = new HashMap<>();
+        for (Map.Entry<String, String> selector : elementSelectors.entrySet()) {
             try {
-                Document document = documentBuilder.parse(xmlFile);
-                
-                Map<String, Object> fileData = new HashMap<>();
-                fileData.put("fileName", xmlFile.getName());
-                fileData.put("filePath", xmlFile.getAbsolutePath());
-                fileData.put("fileLastModified", new Date(xmlFile.lastModified()));
-                
-                // Extract each requested element
-                Map<String, Object> extractedElements = new HashMap<>();
-                for (Map.Entry<String, String> selector : elementSelectors.entrySet()) {
-                    String key = selector.getKey();
-                    String xpathExpr = selector.getValue();
-                    
-                    try {
-                        NodeList nodes = (NodeList) xpath.evaluate(xpathExpr, document, XPathConstants.NODESET);
-                        List<Map<String, Object>> elementData = new ArrayList<>();
-                        
-                        for (int i = 0; i < nodes.getLength(); i++) {
-                            Node node = nodes.item(i);
-                            Map<String, Object> nodeData = new HashMap<>();
-                            nodeData.put("value", getNodeValue(node));
-                            nodeData.put("attributes", getNodeAttributes(node));
-                            elementData.add(nodeData);
-                        }
-                        
-                        extractedElements.put(key, elementData);
-                    } catch (Exception e) {
-                        extractedElements.put(key + "_error", e.getMessage());
-                    }
+                compiledSelectors.put(selector.getKey(), xpathCache.get(selector.getValue()));
+            } catch (XPathExpressionException e) {
+                selectorErrors.put(selector.getKey(), e.getMessage());
+            }
+        }
+        if (compiledSelectors.isEmpty()) {
+            throw new IllegalArgumentException("No valid XPath selectors: " + selectorErrors);
+        }
+        
+        // Streamable selectors are all evaluated in one pass per file: a StAX pass, or a single walk
+        // of the DOM when other selectors need one anyway
+        Map<String, StreamingXPath> streamingPaths = new HashMap<>();
+        for (Map.Entry<String, XPathExpressionCache.CompiledXPath> selector : compiledSelectors.entrySet()) {
+            StreamingXPath streamingPath = streamingEnabled ? StreamingXPath.compile(selector.getValue().getExpression()) : null;
+            if (streamingPath != null) {
+                streamingPaths.put(selector.getKey(), streamingPath);
+            }
+        }
+        
+        XMLExtractionIndex.RootIndex index = indexFor(targetPath);
+        List<XMLSource> xmlFiles = collapseDuplicates ? collapseDuplicates(listedFiles, index) : listedFiles;
+        AtomicInteger filesParsed = new AtomicInteger();
+        
+        List<ParseResult<Map<String, Object>>> parsed = processInParallel(xmlFiles, xmlFile -> {
+            FileExtraction extraction = new FileExtraction(xmlFile, index, filesParsed);
+            
+            // Extract every requested element in one traversal
+            Map<String, Object> extractedElements = new HashMap<>();
+            Map<String, XMLExtractionIndex.SelectorResult> selected = extraction.selectAll(compiledSelectors, streamingPaths);
+            for (String key : compiledSelectors.keySet()) {
+                XMLExtractionIndex.SelectorResult matches = selected.get(key);
+                if (matches.error != null) {
+                    extractedElements.put(key + "_error", matches.error);
+                } else {
+                    extractedElements.put(key, matches.matches);
                 }
-                
-                fileData.put("extractedElements", extractedElements);
-                extractedData.add(fileData);
-                
-            } catch (Exception e) {
+            }
+            
+            Map<String, Object> fileData = new HashMap<>();
+            fileData.put("fileName", xmlFile.getName());
+            fileData.put("filePath", xmlFile.getPath());
+            fileData.put("fileLastModified", new Date(xmlFile.getLastModified()));
+            fileData.put("extractedElements", extractedElements);
+            return fileData;
+        });
+        
+        for (ParseResult<Map<String, Object>> fileResult : parsed) {
+            if (fileResult.error != null) {
                 Map<String, Object> errorData = new HashMap<>();
-                errorData.put("fileName", xmlFile.getName());
-                errorData.put("error", e.getMessage());
+                errorData.put("fileName", fileResult.file.getName());
+                errorData.put("error", fileResult.error);
                 extractedData.add(errorData);
+            } else {
+                extractedData.add(fileResult.value);
             }
         }
+        saveIndex(index, listedFiles);
         
         Map<String, Object> result = new HashMap<>();
         result.put("directoryPath", targetPath);
         result.put("elementSelectors", elementSelectors);
         result.put("filesProcessed", xmlFiles.size());
+        result.put("duplicatesCollapsed", listedFiles.size() - xmlFiles.size());
+        result.put("filesParsed", filesParsed.get());
         result.put("extractedData", extractedData);
+        result.put("selectorErrors", selectorErrors);
+        result.put("extractionMode", streamingPaths.isEmpty() ? "dom"
+            : streamingPaths.size() == compiledSelectors.size() ? "streaming" : "mixed");
+        result.put("singlePassSelectors", streamingPaths.size());
         
         result.put("queryType", "xml_custom_extraction");
         result.put("description", "Custom element extraction from XML files");
@@ -265,126 +676,897 @@ public class XMLFileService {
         return result;
     }
     
-    // Helper methods
+    /**
+     * Find files with identical content (re-delivered exports, copies between folders)
+     * @param directoryPath Directory path
+     * @return Map containing the groups of identical files and the bytes they duplicate
+     */
+    public Map<String, Object> findDuplicateFiles(String directoryPath) throws Exception {
+        String targetPath = directoryPath != null ? directoryPath : xmlDirectoryPath;
+        Path path = Paths.get(targetPath);
+        
+        if (!Files.isDirectory(path)) {
+            throw new IllegalArgumentException("Directory does not exist: " + targetPath);
+        }
+        
+        List<XMLSource> xmlFiles = directoryCatalog.listXmlSources(path, true).stream()
+            .sorted(Comparator.comparingLong(XMLSource::getLastModified).thenComparing(XMLSource::getPath))
+            .collect(Collectors.toList());
+        XMLExtractionIndex.RootIndex index = indexFor(targetPath);
+        List<String> processingErrors = new ArrayList<>();
+        Map<XMLSource, String> hashes = contentHashes(xmlFiles, index, processingErrors);
+        saveIndex(index, xmlFiles);
+        
+        Map<String, List<XMLSource>> byContent = new LinkedHashMap<>();
+        for (Map.Entry<XMLSource, String> hash : hashes.entrySet()) {
+            byContent.computeIfAbsent(hash.getValue(), h -> new ArrayList<>()).add(hash.getKey());
+        }
+        
+        List<Map<String, Object>> groups = new ArrayList<>();
+        int duplicateFiles = 0;
+        long duplicateBytes = 0;
+        for (Map.Entry<String, List<XMLSource>> content : byContent.entrySet()) {
+            List<XMLSource> copies = content.getValue();
+            if (copies.size() < 2) {
+                continue;
+            }
+            long size = copies.get(0).getSize();
+            duplicateFiles += copies.size() - 1;
+            for (XMLSource copy : copies.subList(1, copies.size())) {
+                duplicateBytes += copy.getSize();
+            }
+            
+            Map<String, Object> group = new HashMap<>();
+            group.put("contentHash", content.getKey());
+            group.put("copies", copies.size());
+            group.put("size", size);
+            // Oldest copy first; it is the one kept when duplicates are collapsed
+            group.put("files", copies.stream().map(f -> Map.of(
+                "name", f.getName(),
+                "path", f.getPath(),
+                "lastModified", new Date(f.getLastModified()).toString()
+            )).collect(Collectors.toList()));
+            groups.add(group);
+        }
+        groups.sort((a, b) -> Integer.compare((Integer) b.get("copies"), (Integer) a.get("copies")));
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("directoryPath", targetPath);
+        result.put("totalXMLFiles", xmlFiles.size());
+        result.put("distinctContents", byContent.size());
+        result.put("duplicateFiles", duplicateFiles);
+        result.put("duplicateBytes", duplicateBytes);
+        result.put("duplicateGroups", groups);
+        result.put("processingErrors", processingErrors);
+        result.put("queryType", "xml_duplicate_files");
+        result.put("description", "Groups of XML files with identical content");
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        
+        return result;
+    }
     
-    private String getNodeValue(Node node) {
-        if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.ATTRIBUTE_NODE) {
-            return node.getNodeValue();
-        } else if (node.getNodeType() == Node.ELEMENT_NODE) {
-            return node.getTextContent();
+    /**
+     * Comprehensive XML analytics dashboard (file summary plus business metrics trends)
+     * @param directoryPath Directory path
+     * @return Map containing the dashboard sections
+     */
+    public Map<String, Object> getXMLAnalyticsDashboard(String directoryPath) throws Exception {
+        Map<String, Object> dashboard = new HashMap<>();
+        
+        // Get file summary
+        dashboard.put("fileSummary", getXMLFilesSummary(directoryPath));
+        
+        // Get business metrics trends
+        dashboard.put("businessMetrics", extractBusinessMetricsTrends(directoryPath));
+        
+        dashboard.put("dashboardType", "xml-analytics");
+        dashboard.put("directoryPath", directoryPath);
+        
+        return dashboard;
+    }
+    
+    /**
+     * Read a /test/parse request body ({"xmlContent": ..., "xpathExpression": ...}) and parse it.
+     * The declared length is checked before anything is read, and no more than
+     * xml.test.max.body.bytes is read before the body is deserialized.
+     * @param contentLength Content-Length of the request, null if not sent
+     * @param body Raw request body
+     */
+    public Map<String, Object> parseXMLContentRequest(Long contentLength, InputStream body) throws IOException {
+        if (contentLength != null && contentLength > testMaxBodyBytes) {
+            throw new IllegalArgumentException("Request body is " + contentLength + " bytes; the limit is " + testMaxBodyBytes);
         }
-        return "";
+        byte[] content = body.readNBytes(testMaxBodyBytes + 1);
+        if (content.length > testMaxBodyBytes) {
+            throw new IllegalArgumentException("Request body is over the limit of " + testMaxBodyBytes + " bytes");
+        }
+        Map<?, ?> request;
+        try {
+            request = objectMapper.readValue(new ByteArrayInputStream(content), Map.class);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Request body must be a JSON object: " + e.getMessage());
+        }
+        if (request == null) {
+            throw new IllegalArgumentException("XML content is required");
+        }
+        Object xmlContent = request.get("xmlContent");
+        Object xpathExpression = request.get("xpathExpression");
+        return parseXMLContent(xmlContent != null ? xmlContent.toString() : null,
+                               xpathExpression != null ? xpathExpression.toString() : null);
     }
     
-    private Map<String, String> getNodeAttributes(Node node) {
-        Map<String, String> attributes = new HashMap<>();
-        if (node.hasAttributes()) {
-            for (int i = 0; i < node.getAttributes().getLength(); i++) {
-                Node attr = node.getAttributes().item(i);
-                attributes.put(attr.getNodeName(), attr.getNodeValue());
+    /**
+     * Parse an XML document held in memory and evaluate an XPath expression against it, without
+     * touching the filesystem. The document is first streamed once to check it is well-formed and
+     * within the node limit, then parsed with a per-thread builder and queried with the shared
+     * compiled XPath cache. DOCTYPE declarations are rejected, so entities can't reach outside
+     * the request or expand it.
+     * @param xmlContent XML document (at most xml.test.max.bytes as UTF-8)
+     * @param xpathExpression XPath expression (default: every element)
+     * @return Map containing well-formedness, the matches (up to xml.test.max.matches) and timings
+     */
+    public Map<String, Object> parseXMLContent(String xmlContent, String xpathExpression) {
+        long startTime = System.nanoTime();
+        if (xmlContent == null || xmlContent.trim().isEmpty()) {
+            throw new IllegalArgumentException("XML content is required");
+        }
+        String expression = xpathExpression == null || xpathExpression.trim().isEmpty() ? "//*" : xpathExpression;
+        
+        // Chars never outnumber UTF-8 bytes, so only long content needs encoding to be measured
+        long bytes = xmlContent.length() * 3L <= testMaxBytes
+            ? xmlContent.length() : xmlContent.getBytes(StandardCharsets.UTF_8).length;
+        if (bytes > testMaxBytes) {
+            throw new IllegalArgumentException("XML content is " + bytes + " bytes; the limit is " + testMaxBytes);
+        }
+        XPathExpressionCache.CompiledXPath compiledPath = compileTrendXPath(expression);
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("xpathExpression", expression);
+        result.put("limits", Map.of("maxBytes", testMaxBytes, "maxNodes", testMaxNodes, "maxMatches", testMaxMatches));
+        result.put("queryType", "xml_content_parse");
+        result.put("description", "In-memory XML parse and XPath evaluation");
+        Map<String, Object> timings = new LinkedHashMap<>();
+        result.put("timings", timings);
+        
+        // Well-formedness and size check in one streaming pass, stopping at the node limit
+        int elements = 0;
+        int attributes = 0;
+        String rootElement = null;
+        try {
+            XMLStreamReader reader = CONTENT_INPUT_FACTORIES.get().createXMLStreamReader(new StringReader(xmlContent));
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.DTD) {
+                        throw new XMLStreamException("DOCTYPE declarations are not allowed", reader.getLocation());
+                    }
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        if (rootElement == null) {
+                            rootElement = reader.getName().getPrefix().isEmpty()
+                                ? reader.getLocalName() : reader.getName().getPrefix() + ":" + reader.getLocalName();
+                        }
+                        elements++;
+                        attributes += reader.getAttributeCount();
+                        if (elements + attributes > testMaxNodes) {
+                            throw new IllegalArgumentException("XML content has more than " + testMaxNodes
+                                + " nodes (elements and attributes)");
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            timings.put("checkMillis", millisSince(startTime));
+            result.put("wellFormed", false);
+            result.put("error", e.getMessage());
+            if (e.getLocation() != null) {
+                result.put("line", e.getLocation().getLineNumber());
+                result.put("column", e.getLocation().getColumnNumber());
             }
+            result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            return result;
         }
-        return attributes;
+        long checkedAt = System.nanoTime();
+        timings.put("checkMillis", millisSince(startTime));
+        
+        Document document;
+        try {
+            DocumentBuilder documentBuilder = contentBuilders.get();
+            documentBuilder.reset();
+            document = documentBuilder.parse(new InputSource(new StringReader(xmlContent)));
+        } catch (SAXException | IOException e) {
+            // The streaming check passed, so this is something only the DOM parser rejects
+            result.put("wellFormed", false);
+            result.put("error", e.getMessage());
+            if (e instanceof SAXParseException) {
+                result.put("line", ((SAXParseException) e).getLineNumber());
+                result.put("column", ((SAXParseException) e).getColumnNumber());
+            }
+            result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            return result;
+        }
+        long parsedAt = System.nanoTime();
+        timings.put("parseMillis", millisSince(checkedAt));
+        
+        // Node sets are listed; expressions like count() or string() return a single value
+        List<Map<String, Object>> matches = new ArrayList<>();
+        int matchCount;
+        try {
+            NodeList nodes = (NodeList) compiledPath.evaluate(document, XPathConstants.NODESET);
+            matchCount = nodes.getLength();
+            for (int i = 0; i < nodes.getLength() && i < testMaxMatches; i++) {
+                Node node = nodes.item(i);
+                Map<String, Object> nodeData = match(getNodeValue(node), getNodeAttributes(node));
+                nodeData.put("nodeName", node.getNodeName());
+                matches.add(nodeData);
+            }
+            result.put("resultType", "nodeset");
+        } catch (XPathExpressionException e) {
+            try {
+                result.put("value", compiledPath.evaluate(document, XPathConstants.STRING));
+                result.put("resultType", "value");
+                matchCount = 0;
+            } catch (XPathExpressionException valueError) {
+                throw new IllegalArgumentException("Failed to evaluate XPath expression '" + expression + "': "
+                    + valueError.getMessage());
+            }
+        }
+        timings.put("evaluateMillis", millisSince(parsedAt));
+        timings.put("totalMillis", millisSince(startTime));
+        
+        Map<String, Object> documentStats = new HashMap<>();
+        documentStats.put("bytes", bytes);
+        documentStats.put("elements", elements);
+        documentStats.put("attributes", attributes);
+        documentStats.put("rootElement", rootElement);
+        
+        result.put("wellFormed", true);
+        result.put("document", documentStats);
+        result.put("matchCount", matchCount);
+        result.put("matches", matches);
+        result.put("matchesTruncated", matchCount > matches.size());
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+    
+    private static double millisSince(long startNanos) {
+        return Math.round((System.nanoTime() - startNanos) / 1000.0) / 1000.0;
+    }
+    
+    // Parallel parsing
+    
+    @FunctionalInterface
+    private interface FileTask<T> {
+        T process(XMLSource xmlFile) throws Exception;
     }
     
-    private Map<String, Object> extractCommonMetrics(Document document, File xmlFile) {
-        Map<String, Object> metrics = new HashMap<>();
+    @FunctionalInterface
+    private interface ResultHandler<T> {
+        void accept(ParseResult<T> fileResult) throws Exception;
+    }
+    
+    private static class ParseResult<T> {
+        final XMLSource file;
+        final int position;
+        T value;
+        String error;
         
-        Element root = document.getDocumentElement();
-        metrics.put("fileName", xmlFile.getName());
-        metrics.put("fileLastModified", new Date(xmlFile.lastModified()));
-        metrics.put("rootElementName", root.getTagName());
+        ParseResult(XMLSource file, int position) {
+            this.file = file;
+            this.position = position;
+        }
+    }
+    
+    private <T> void forEachInParallel(List<XMLSource> xmlFiles, FileTask<T> task, ResultHandler<T> handler) throws Exception {
+        forEachInParallel(xmlFiles, task, handler, () -> false);
+    }
+    
+    /**
+     * Run a task per file on the bounded parse pool, handing each result to the caller in the order
+     * of the input list as soon as it and its predecessors are done. Only a few files per worker are
+     * in flight, so results don't pile up however many files there are. A failure in one file is
+     * recorded against it without affecting the others.
+     * @param done Checked after each result; once true the remaining files are cancelled
+     */
+    private <T> void forEachInParallel(List<XMLSource> xmlFiles, FileTask<T> task, ResultHandler<T> handler,
+                                       BooleanSupplier done) throws Exception {
+        int window = Math.max(2, parseConcurrency * 4);
+        Deque<Future<ParseResult<T>>> inFlight = new ArrayDeque<>();
+        int next = 0;
+        try {
+            while ((next < xmlFiles.size() || !inFlight.isEmpty()) && !done.getAsBoolean()) {
+                while (next < xmlFiles.size() && inFlight.size() < window) {
+                    XMLSource xmlFile = xmlFiles.get(next);
+                    int position = next++;
+                    inFlight.add(parseExecutor.submit(() -> {
+                        ParseResult<T> fileResult = new ParseResult<>(xmlFile, position);
+                        try {
+                            fileResult.value = task.process(xmlFile);
+                        } catch (Exception e) {
+                            fileResult.error = e.getMessage();
+                        }
+                        return fileResult;
+                    }));
+                }
+                
+                ParseResult<T> fileResult;
+                try {
+                    fileResult = inFlight.poll().get();
+                } catch (ExecutionException e) {
+                    // Tasks catch their own exceptions; only an Error can get here
+                    throw new IllegalStateException("XML parse worker failed: " + e.getCause(), e.getCause());
+                }
+                handler.accept(fileResult);
+            }
+        } finally {
+            // If the request was interrupted or its consumer failed, don't leave its remaining files queued
+            for (Future<ParseResult<T>> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+    }
+    
+    /**
+     * Run a task per file on the bounded parse pool and collect the results in input order
+     */
+    private <T> List<ParseResult<T>> processInParallel(List<XMLSource> xmlFiles, FileTask<T> task) throws Exception {
+        List<ParseResult<T>> results = new ArrayList<>(xmlFiles.size());
+        forEachInParallel(xmlFiles, task, results::add);
+        return results;
+    }
+    
+    // Trend extraction
+    
+    /**
+     * Receives trend matches in file order as the pass runs
+     */
+    private interface TrendHandler {
+        void onItem(Map<String, Object> item, TrendCursor position) throws Exception;
         
-        // Count different types of elements
-        metrics.put("totalElements", countElements(root));
-        metrics.put("elementTypes", getElementTypeCounts(root));
+        default void onError(XMLSource xmlFile, String error) throws Exception {
+        }
         
-        // Look for common business elements
-        metrics.put("errorCount", countElementsByName(root, "error"));
-        metrics.put("warningCount", countElementsByName(root, "warning"));
-        metrics.put("configCount", countElementsByName(root, "config"));
-        metrics.put("recordCount", countElementsByName(root, "record"));
+        default void onFileDone() throws Exception {
+        }
         
-        return metrics;
+        /**
+         * Whether the handler needs no more items (checked only when no trend analysis is being built)
+         */
+        default boolean isDone() {
+            return false;
+        }
     }
     
-    private int countElements(Element element) {
-        int count = 1; // Count the current element
-        NodeList children = element.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            if (child.getNodeType() == Node.ELEMENT_NODE) {
-                count += countElements((Element) child);
+    /**
+     * Numbers one file's matches, feeds them to the trend analysis and hands those at or after the
+     * cursor to the handler; stops the file once the handler is done and nothing else needs the rest
+     */
+    private class TrendMatchSink {
+        private final XMLSource xmlFile;
+        private final int firstOffset;
+        private final TrendAccumulator trends;
+        private final TrendHandler handler;
+        private int offset;
+        
+        TrendMatchSink(XMLSource xmlFile, int firstOffset, TrendAccumulator trends, TrendHandler handler) {
+            this.xmlFile = xmlFile;
+            this.firstOffset = firstOffset;
+            this.trends = trends;
+            this.handler = handler;
+        }
+        
+        void accept(Object value, Object attributes) throws Exception {
+            if (trends != null) {
+                trends.add(value);
+            }
+            if (offset >= firstOffset) {
+                handler.onItem(trendItem(xmlFile, value, attributes),
+                               new TrendCursor(xmlFile.getLastModified(), xmlFile.getPath(), offset));
+            }
+            offset++;
+            if (trends == null && handler.isDone()) {
+                throw EvaluationStopped.INSTANCE;
             }
         }
-        return count;
+        
+        void accept(String value, Map<String, String> attributes) throws Exception {
+            accept((Object) value, attributes);
+        }
     }
     
-    private Map<String, Integer> getElementTypeCounts(Element element) {
-        Map<String, Integer> counts = new HashMap<>();
-        countElementTypes(element, counts);
-        return counts;
+    /**
+     * Ends a streaming evaluation early; carries no stack trace
+     */
+    private static final class EvaluationStopped extends Exception {
+        static final EvaluationStopped INSTANCE = new EvaluationStopped();
+        
+        private EvaluationStopped() {
+            super("Evaluation stopped", null, false, false);
+        }
     }
     
-    private void countElementTypes(Element element, Map<String, Integer> counts) {
-        String tagName = element.getTagName();
-        counts.put(tagName, counts.getOrDefault(tagName, 0) + 1);
+    /**
+     * Position of a match: the file (by its place in the oldest-first order) and the match's
+     * index within that file. Stable across requests as long as the files don't change.
+     */
+    record TrendCursor(long lastModified, String path, int offset) {
+        
+        TrendCursor next() {
+            return new TrendCursor(lastModified, path, offset + 1);
+        }
+        
+        /**
+         * Index of the first match to return from a file: everything in files before the cursor's is skipped
+         */
+        int firstOffsetIn(long fileLastModified, String filePath) {
+            int order = lastModified != fileLastModified
+                ? Long.compare(fileLastModified, lastModified)
+                : filePath.compareTo(path);
+            if (order < 0) {
+                return Integer.MAX_VALUE;
+            }
+            return order == 0 ? offset : 0;
+        }
+        
+        String encode() {
+            String raw = lastModified + "|" + offset + "|" + path;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
         
-        NodeList children = element.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            if (child.getNodeType() == Node.ELEMENT_NODE) {
-                countElementTypes((Element) child, counts);
+        static TrendCursor decode(String cursor) {
+            if (cursor == null || cursor.isEmpty()) {
+                return null;
+            }
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                String[] parts = raw.split("\\|", 3);
+                return new TrendCursor(Long.parseLong(parts[0]), parts[2], Integer.parseInt(parts[1]));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
             }
         }
     }
     
-    private int countElementsByName(Element element, String targetName) {
-        int count = 0;
-        if (element.getTagName().toLowerCase().contains(targetName.toLowerCase())) {
-            count++;
+    /**
+     * Trend analysis built up one match at a time in fixed memory, so neither the matches nor
+     * their distinct values need to be kept
+     */
+    private static class TrendAccumulator {
+        private int fileCount;
+        private final ValueFrequencySketch values;
+        
+        TrendAccumulator(int precision, int counters) {
+            this.values = new ValueFrequencySketch(precision, counters);
+        }
+        
+        void add(Object value) {
+            values.add(String.valueOf(value));
         }
         
-        NodeList children = element.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node child = children.item(i);
-            if (child.getNodeType() == Node.ELEMENT_NODE) {
-                count += countElementsByName((Element) child, targetName);
+        /**
+         * Count a file that had at least one match
+         */
+        void addFile() {
+            fileCount++;
+        }
+        
+        Map<String, Object> result() {
+            long totalDataPoints = values.getTotal();
+            Map<String, Object> trends = new HashMap<>();
+            trends.put("fileCount", fileCount);
+            trends.put("totalDataPoints", totalDataPoints);
+            trends.put("averageDataPointsPerFile", totalDataPoints / (double) Math.max(fileCount, 1));
+            
+            // Value frequency analysis
+            List<ValueFrequencySketch.TopValue> top = values.top(TOP_VALUES);
+            Map<String, Long> mostCommonValues = new LinkedHashMap<>();
+            Map<String, Long> overcounts = new LinkedHashMap<>();
+            boolean ranksGuaranteed = true;
+            for (ValueFrequencySketch.TopValue value : top) {
+                mostCommonValues.put(value.getValue(), value.getCount());
+                overcounts.put(value.getValue(), value.getOvercount());
+                ranksGuaranteed &= value.isRankGuaranteed();
             }
+            trends.put("uniqueValues", values.estimateDistinct());
+            trends.put("mostCommonValues", mostCommonValues);
+            
+            Map<String, Object> accuracy = new HashMap<>();
+            accuracy.put("exact", values.isExact());
+            accuracy.put("uniqueValuesRelativeStandardError", values.distinctStandardError());
+            accuracy.put("mostCommonValuesMaxOvercount", overcounts);
+            accuracy.put("mostCommonValuesRankGuaranteed", ranksGuaranteed);
+            accuracy.put("sketchBytes", values.footprintBytes());
+            trends.put("valueFrequencyAccuracy", accuracy);
+            return trends;
         }
-        return count;
     }
     
-    private Map<String, Object> generateTrendAnalysis(List<Map<String, Object>> extractedData) {
-        Map<String, Object> trends = new HashMap<>();
+    // Extraction index
+    
+    private XMLExtractionIndex.RootIndex indexFor(String targetPath) {
+        return extractionIndex.isEnabled() ? extractionIndex.forRoot(targetPath) : null;
+    }
+    
+    private void saveIndex(XMLExtractionIndex.RootIndex index, List<XMLSource> xmlFiles) {
+        if (index != null) {
+            index.retainOnly(xmlFiles);
+            index.saveIfDirty();
+        }
+    }
+    
+    /**
+     * Content hash per file, in list order. With the index enabled each file version is hashed once;
+     * otherwise every file is read. Files that can't be read are reported and left out.
+     */
+    private Map<XMLSource, String> contentHashes(List<XMLSource> xmlFiles, XMLExtractionIndex.RootIndex index,
+                                                 List<String> errors) throws Exception {
+        Map<XMLSource, String> hashes = new LinkedHashMap<>();
+        forEachInParallel(xmlFiles,
+            xmlFile -> index != null ? index.contentHash(index.entry(xmlFile), xmlFile) : XMLExtractionIndex.contentHash(xmlFile),
+            fileResult -> {
+                if (fileResult.error != null) {
+                    errors.add("Error hashing " + fileResult.file.getName() + ": " + fileResult.error);
+                } else {
+                    hashes.put(fileResult.file, fileResult.value);
+                }
+            });
+        return hashes;
+    }
+    
+    /**
+     * Keep one file per distinct content, the oldest copy (path breaking ties), in the original order.
+     * Files that can't be hashed are kept, so they still report their errors.
+     */
+    private List<XMLSource> collapseDuplicates(List<XMLSource> xmlFiles, XMLExtractionIndex.RootIndex index) throws Exception {
+        Map<XMLSource, String> hashes = contentHashes(xmlFiles, index, new ArrayList<>());
+        Map<String, XMLSource> oldestCopy = new HashMap<>();
+        Comparator<XMLSource> age = Comparator.comparingLong(XMLSource::getLastModified).thenComparing(XMLSource::getPath);
+        for (Map.Entry<XMLSource, String> hash : hashes.entrySet()) {
+            oldestCopy.merge(hash.getValue(), hash.getKey(), (a, b) -> age.compare(a, b) <= 0 ? a : b);
+        }
+        List<XMLSource> distinct = new ArrayList<>();
+        for (XMLSource xmlFile : xmlFiles) {
+            String hash = hashes.get(xmlFile);
+            if (hash == null || oldestCopy.get(hash) == xmlFile) {
+                distinct.add(xmlFile);
+            }
+        }
+        return distinct;
+    }
+    
+    /**
+     * One file's extraction within a request. Results come from the extraction index when the
+     * file is unchanged; otherwise the file is parsed (at most once per request) and the results
+     * are recorded. Malformed files are remembered too, so they aren't re-parsed until they change.
+     */
+    private class FileExtraction {
+        private final XMLSource xmlFile;
+        private final XMLExtractionIndex.RootIndex index;
+        private final XMLExtractionIndex.Entry entry;
+        private final AtomicInteger filesParsed;
+        private Document document;
+        private boolean parsed;
+        // Result of select(), or null when there were too many matches to hold
+        XMLExtractionIndex.SelectorResult heldMatches;
         
-        // Group by file for temporal analysis
-        Map<String, List<Map<String, Object>>> fileGroups = extractedData.stream()
-            .collect(Collectors.groupingBy(item -> (String) item.get("fileName")));
+        FileExtraction(XMLSource xmlFile, XMLExtractionIndex.RootIndex index, AtomicInteger filesParsed) throws IOException {
+            this.xmlFile = xmlFile;
+            this.index = index;
+            this.entry = index != null ? index.entry(xmlFile) : null;
+            this.filesParsed = filesParsed;
+        }
         
-        trends.put("fileCount", fileGroups.size());
-        trends.put("totalDataPoints", extractedData.size());
-        trends.put("averageDataPointsPerFile", extractedData.size() / (double) Math.max(fileGroups.size(), 1));
+        XMLExtractionIndex.SelectorResult select(XPathExpressionCache.CompiledXPath compiledPath,
+                                                 StreamingXPath streamingPath,
+                                                 XMLBytePrefilter prefilter) throws Exception {
+            return select(compiledPath, streamingPath, prefilter, Integer.MAX_VALUE);
+        }
         
-        // Value frequency analysis
-        Map<String, Long> valueFrequency = extractedData.stream()
-            .collect(Collectors.groupingBy(
-                item -> String.valueOf(item.get("nodeValue")),
-                Collectors.counting()
-            ));
+        /**
+         * Matches of one selector, also kept in heldMatches. A streamable selector gives up after
+         * maxMatches matches and returns null; the file is then read again by streamMatches.
+         * DOM results are always held, as the document is in memory anyway.
+         */
+        XMLExtractionIndex.SelectorResult select(XPathExpressionCache.CompiledXPath compiledPath,
+                                                 StreamingXPath streamingPath,
+                                                 XMLBytePrefilter prefilter,
+                                                 int maxMatches) throws Exception {
+            XMLExtractionIndex.SelectorResult cached = cachedSelector(compiledPath);
+            if (cached != null) {
+                heldMatches = cached;
+                return cached;
+            }
+            
+            XMLExtractionIndex.SelectorResult result;
+            if (prefilter != null && document == null && !prefilter.mayMatch(xmlFile)) {
+                // Certain not to match; a known-malformed file still reports its parse error
+                checkParseError();
+                result = new XMLExtractionIndex.SelectorResult(new ArrayList<>(), null);
+            } else if (streamingPath != null) {
+                List<Map<String, Object>> matches = new ArrayList<>();
+                // Stops reading at the first match past maxMatches
+                boolean complete = evaluateSinglePass(List.of(streamingPath), maxMatches,
+                    (path, value, attributes) -> matches.add(match(value, attributes)));
+                if (!complete) {
+                    // Too many to hold (and to cache)
+                    return null;
+                }
+                result = new XMLExtractionIndex.SelectorResult(matches, null);
+            } else {
+                result = evaluateDom(compiledPath);
+            }
+            
+            cacheSelector(compiledPath, result);
+            heldMatches = result;
+            return result;
+        }
         
-        trends.put("uniqueValues", valueFrequency.size());
-        trends.put("mostCommonValues", valueFrequency.entrySet().stream()
-            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
-            .limit(10)
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                Map.Entry::getValue,
-                (e1, e2) -> e1,
-                LinkedHashMap::new
-            )));
+        /**
+         * Evaluate several selectors with one traversal of the file for all the streamable ones
+         * @param compiledSelectors Selectors by name
+         * @param streamingPaths Streamable form of those selectors that have one
+         * @return Result per selector name
+         */
+        Map<String, XMLExtractionIndex.SelectorResult> selectAll(Map<String, XPathExpressionCache.CompiledXPath> compiledSelectors,
+                                                                 Map<String, StreamingXPath> streamingPaths) throws Exception {
+            Map<String, XMLExtractionIndex.SelectorResult> results = new HashMap<>();
+            List<String> singlePassKeys = new ArrayList<>();
+            for (Map.Entry<String, XPathExpressionCache.CompiledXPath> selector : compiledSelectors.entrySet()) {
+                XMLExtractionIndex.SelectorResult cached = cachedSelector(selector.getValue());
+                if (cached != null) {
+                    results.put(selector.getKey(), cached);
+                } else if (streamingPaths.containsKey(selector.getKey())) {
+                    singlePassKeys.add(selector.getKey());
+                } else {
+                    XMLExtractionIndex.SelectorResult result = evaluateDom(selector.getValue());
+                    cacheSelector(selector.getValue(), result);
+                    results.put(selector.getKey(), result);
+                }
+            }
+            
+            if (!singlePassKeys.isEmpty()) {
+                List<StreamingXPath> paths = new ArrayList<>();
+                List<List<Map<String, Object>>> matches = new ArrayList<>();
+                for (String key : singlePassKeys) {
+                    paths.add(streamingPaths.get(key));
+                    matches.add(new ArrayList<>());
+                }
+                evaluateSinglePass(paths, Integer.MAX_VALUE,
+                    (path, value, attributes) -> matches.get(path).add(match(value, attributes)));
+                for (int i = 0; i < singlePassKeys.size(); i++) {
+                    XMLExtractionIndex.SelectorResult result = new XMLExtractionIndex.SelectorResult(matches.get(i), null);
+                    cacheSelector(compiledSelectors.get(singlePassKeys.get(i)), result);
+                    results.put(singlePassKeys.get(i), result);
+                }
+            }
+            return results;
+        }
         
-        return trends;
+        private XMLExtractionIndex.SelectorResult cachedSelector(XPathExpressionCache.CompiledXPath compiledPath) throws IOException {
+            if (entry == null) {
+                return null;
+            }
+            String key = XMLExtractionIndex.selectorKey("xpath", compiledPath.getExpression());
+            XMLExtractionIndex.SelectorResult cached = entry.getSelector(key);
+            if (cached == null) {
+                // Another copy of the same content may already have it
+                XMLExtractionIndex.Entry copy = index.findDuplicate(entry, xmlFile, other -> other.getSelector(key) != null);
+                if (copy != null) {
+                    cached = copy.getSelector(key);
+                    if (entry.putSelector(key, cached, extractionIndex.getMaxSelectorsPerFile(),
+                                          extractionIndex.getMaxBytesPerFile())) {
+                        index.markDirty(entry);
+                    }
+                }
+            }
+            return cached;
+        }
+        
+        private void cacheSelector(XPathExpressionCache.CompiledXPath compiledPath, XMLExtractionIndex.SelectorResult result) {
+            // Results over the per-file byte cap (e.g. //* on a large file) are recomputed instead of kept
+            if (entry != null && entry.putSelector(XMLExtractionIndex.selectorKey("xpath", compiledPath.getExpression()),
+                                                   result, extractionIndex.getMaxSelectorsPerFile(),
+                                                   extractionIndex.getMaxBytesPerFile())) {
+                index.markDirty(entry);
+            }
+        }
+        
+        /**
+         * Run streamable paths together: over the DOM if this request already parsed one, else as a StAX pass
+         * @return false if the pass stopped at maxMatches
+         */
+        private boolean evaluateSinglePass(List<StreamingXPath> paths, int maxMatches,
+                                           StreamingXPathSet.MatchHandler handler) throws Exception {
+            StreamingXPathSet pathSet = new StreamingXPathSet(paths);
+            if (document != null) {
+                return pathSet.evaluate(document, handler, maxMatches, maxValueChars);
+            }
+            checkParseError();
+            boolean complete;
+            try (InputStream input = openDocument()) {
+                complete = pathSet.evaluate(input, handler, maxMatches, maxValueChars);
+                if (complete) {
+                    recordContentHash(input);
+                }
+            } catch (XMLStreamException e) {
+                recordParseError(e);
+                throw e;
+            }
+            markParsed();
+            return complete;
+        }
+        
+        private XMLExtractionIndex.SelectorResult evaluateDom(XPathExpressionCache.CompiledXPath compiledPath) throws Exception {
+            Document parsedDocument = document();
+            try {
+                NodeList nodes = (NodeList) compiledPath.evaluate(parsedDocument, XPathConstants.NODESET);
+                List<Map<String, Object>> matches = new ArrayList<>();
+                for (int i = 0; i < nodes.getLength(); i++) {
+                    Node node = nodes.item(i);
+                    matches.add(match(getNodeValue(node), getNodeAttributes(node)));
+                }
+                return new XMLExtractionIndex.SelectorResult(matches, null);
+            } catch (XPathExpressionException e) {
+                return new XMLExtractionIndex.SelectorResult(null, e.getMessage());
+            }
+        }
+        
+        /**
+         * Stream a streamable selector's matches to the handler without holding them
+         */
+        void streamMatches(StreamingXPath streamingPath, StreamingXPath.MatchHandler handler) throws Exception {
+            evaluateSinglePass(List.of(streamingPath), Integer.MAX_VALUE,
+                (path, value, attributes) -> handler.onMatch(value, attributes));
+        }
+        
+        Map<String, Object> businessMetrics() throws Exception {
+            Map<String, Object> metrics = entry != null ? entry.businessMetrics : null;
+            if (entry != null && (metrics == null || !businessMetricsExtractor.isCurrent(metrics))) {
+                XMLExtractionIndex.Entry copy = index.findDuplicate(entry, xmlFile,
+                    other -> other.businessMetrics != null && businessMetricsExtractor.isCurrent(other.businessMetrics));
+                if (copy != null) {
+                    metrics = copy.businessMetrics;
+                    entry.businessMetrics = metrics;
+                    index.markDirty(entry);
+                }
+            }
+            // Metrics computed under a different xml.business.tags setting are recomputed
+            if (metrics == null || !businessMetricsExtractor.isCurrent(metrics)) {
+                checkParseError();
+                try (InputStream input = openDocument()) {
+                    metrics = businessMetricsExtractor.extract(input);
+                    recordContentHash(input);
+                } catch (XMLStreamException e) {
+                    recordParseError(e);
+                    throw e;
+                }
+                markParsed();
+                if (entry != null) {
+                    entry.businessMetrics = metrics;
+                    index.markDirty(entry);
+                }
+            }
+            
+            // File identity is added per response; the index keeps only content-derived values
+            Map<String, Object> fileMetrics = new HashMap<>(metrics);
+            fileMetrics.put("fileName", xmlFile.getName());
+            fileMetrics.put("fileLastModified", new Date(xmlFile.getLastModified()));
+            return fileMetrics;
+        }
+        
+        private Document document() throws Exception {
+            if (document == null) {
+                checkParseError();
+                try {
+                    DocumentBuilder documentBuilder = documentBuilders.get();
+                    documentBuilder.reset();
+                    try (InputStream input = openDocument()) {
+                        // The parser closes the stream it reads; keep this one open to finish the hash
+                        document = documentBuilder.parse(new FilterInputStream(input) {
+                            @Override
+                            public void close() {
+                            }
+                        }, xmlFile.getSystemId());
+                        recordContentHash(input);
+                    }
+                    document.getDocumentElement().normalize();
+                } catch (SAXException e) {
+                    recordParseError(e);
+                    throw e;
+                }
+                markParsed();
+            }
+            return document;
+        }
+        
+        /**
+         * Open the document; if its entry has no content hash yet, the bytes read are hashed on the way
+         */
+        private InputStream openDocument() throws IOException {
+            InputStream input = xmlFile.openStream();
+            return entry != null && entry.contentHash == null
+                ? new DigestInputStream(input, JsonFileStore.sha256Digest()) : input;
+        }
+        
+        /**
+         * Record the hash of a document that was read to the end
+         */
+        private void recordContentHash(InputStream input) throws IOException {
+            if (input instanceof DigestInputStream digesting) {
+                // The parser may stop after the root element; trailing bytes are part of the content
+                digesting.transferTo(OutputStream.nullOutputStream());
+                index.recordContentHash(entry, HexFormat.of().formatHex(digesting.getMessageDigest().digest()));
+            }
+        }
+        
+        private void checkParseError() throws SAXException, IOException {
+            if (entry == null) {
+                return;
+            }
+            if (entry.parseError == null && !parsed) {
+                XMLExtractionIndex.Entry copy = index.findDuplicate(entry, xmlFile, other -> other.parseError != null);
+                if (copy != null) {
+                    entry.parseError = copy.parseError;
+                    index.markDirty(entry);
+                }
+            }
+            if (entry.parseError != null) {
+                throw new SAXException(entry.parseError);
+            }
+        }
+        
+        private void recordParseError(Exception e) {
+            if (entry != null) {
+                entry.parseError = e.getMessage();
+                index.markDirty(entry);
+            }
+        }
+        
+        private void markParsed() {
+            if (!parsed) {
+                parsed = true;
+                filesParsed.incrementAndGet();
+            }
+        }
+    }
+    
+    // Helper methods
+    
+    private Map<String, Object> match(String value, Map<String, String> attributes) {
+        Map<String, Object> nodeData = new HashMap<>();
+        nodeData.put("value", value);
+        nodeData.put("attributes", attributes);
+        return nodeData;
+    }
+    
+    private Map<String, Object> trendItem(XMLSource xmlFile, Object value, Object attributes) {
+        Map<String, Object> extractedItem = new HashMap<>();
+        extractedItem.put("fileName", xmlFile.getName());
+        extractedItem.put("fileLastModified", new Date(xmlFile.getLastModified()));
+        extractedItem.put("nodeValue", value);
+        extractedItem.put("nodeAttributes", attributes);
+        return extractedItem;
+    }
+    
+    private String getNodeValue(Node node) {
+        if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.ATTRIBUTE_NODE) {
+            return node.getNodeValue();
+        } else if (node.getNodeType() == Node.ELEMENT_NODE) {
+            return node.getTextContent();
+        }
+        return "";
+    }
+    
+    private Map<String, String> getNodeAttributes(Node node) {
+        Map<String, String> attributes = new HashMap<>();
+        if (node.hasAttributes()) {
+            for (int i = 0; i < node.getAttributes().getLength(); i++) {
+                Node attr = node.getAttributes().item(i);
+                attributes.put(attr.getNodeName(), attr.getNodeValue());
+            }
+        }
+        return attributes;
     }
     
     private Map<String, Object> generateBusinessTrends(List<Map<String, Object>> businessMetrics) {
@@ -400,18 +1582,18 @@ public class XMLFileService {
             .average();
         
         int totalErrors = businessMetrics.stream()
-            .mapToInt(m -> (Integer) m.get("errorCount"))
+            .mapToInt(m -> (Integer) m.getOrDefault("errorCount", 0))
             .sum();
         
         int totalWarnings = businessMetrics.stream()
-            .mapToInt(m -> (Integer) m.get("warningCount"))
+            .mapToInt(m -> (Integer) m.getOrDefault("warningCount", 0))
             .sum();
         
         trends.put("averageElementsPerFile", avgElements.orElse(0.0));
         trends.put("totalErrorsAcrossFiles", totalErrors);
         trends.put("totalWarningsAcrossFiles", totalWarnings);
         trends.put("filesWithErrors", businessMetrics.stream()
-            .mapToInt(m -> (Integer) m.get("errorCount") > 0 ? 1 : 0)
+            .mapToInt(m -> (Integer) m.getOrDefault("errorCount", 0) > 0 ? 1 : 0)
             .sum());
         
         // Most common root elements
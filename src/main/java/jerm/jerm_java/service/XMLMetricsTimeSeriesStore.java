@@ -0,0 +1,390 @@
+package jerm.jerm_java.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Embedded time-series store of the per-file business metrics (totalElements and the
+ * &lt;tag&gt;Count counters), keyed by each file's modification time.
+ *
+ * Every file version is recorded once, as a raw point and into its hourly and daily (UTC)
+ * rollup buckets, which keep the file count and the sum, min and max of each metric. When a file
+ * is rewritten, its previous version is retracted from the rollups while its raw point is still
+ * held, so each file counts once, at its latest modification time; versions older than the raw
+ * retention stay in the rollups as recorded. Raw points
+ * and hourly buckets are dropped after their retention period while daily buckets are kept, so
+ * history outlives the files themselves and range queries over months are answered from the
+ * rollups without reading any XML. One JSON file per directory is kept under
+ * xml.metrics.store.directory.
+ */
+@Service
+public class XMLMetricsTimeSeriesStore {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final long HOUR_MILLIS = 3600_000L;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    // Widest range answered at a resolution when the caller lets the store choose
+    private static final long AUTO_RAW_MAX_RANGE = 2 * DAY_MILLIS;
+    private static final long AUTO_HOURLY_MAX_RANGE = 31 * DAY_MILLIS;
+
+    public enum Resolution { RAW, HOURLY, DAILY }
+
+    @Value("${xml.metrics.store.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${xml.metrics.store.directory:${java.io.tmpdir}/jerm-xml-metrics}")
+    private String storeDirectory = System.getProperty("java.io.tmpdir") + "/jerm-xml-metrics";
+
+    @Value("${xml.metrics.raw.retention.days:7}")
+    private int rawRetentionDays = 7;
+
+    @Value("${xml.metrics.hourly.retention.days:90}")
+    private int hourlyRetentionDays = 90;
+
+    private final JsonFileStore<SeriesFile> fileStore =
+        new JsonFileStore<>("XML metrics history", SeriesFile.class, FORMAT_VERSION, stored -> stored.daily.size() + " days");
+
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record the metrics of the files currently in a directory. File versions already recorded
+     * are skipped, so this can be called with the full listing on every request.
+     * @param rootPath Directory the files were listed from
+     * @param listing Every file currently in the directory
+     * @param metricsBySource Business metrics of the files that could be read (non-numeric values are ignored)
+     * @return Number of new points recorded
+     */
+    public int record(String rootPath, List<XMLSource> listing, Map<XMLSource, Map<String, Object>> metricsBySource) {
+        if (!enabled) {
+            return 0;
+        }
+        Series target = forRoot(rootPath);
+        int recorded = 0;
+        synchronized (target) {
+            for (Map.Entry<XMLSource, Map<String, Object>> file : metricsBySource.entrySet()) {
+                XMLSource source = file.getKey();
+                Long previous = target.data.recorded.get(source.getPath());
+                if (previous != null && previous == source.getLastModified()) {
+                    continue;
+                }
+                Map<String, Long> values = numericMetrics(file.getValue());
+                if (values.isEmpty()) {
+                    continue;
+                }
+                if (previous != null) {
+                    target.retract(source.getPath(), previous);
+                }
+                target.add(new Point(source.getLastModified(), source.getPath(), values));
+                recorded++;
+            }
+
+            // Forget files that left the directory once their raw points have expired; their
+            // rollup contributions stay
+            Set<String> present = new HashSet<>();
+            for (XMLSource source : listing) {
+                present.add(source.getPath());
+            }
+            long rawCutoff = rawCutoff();
+            target.data.recorded.entrySet().removeIf(entry -> !present.contains(entry.getKey()) && entry.getValue() < rawCutoff);
+
+            if (recorded > 0) {
+                target.compact();
+                target.save();
+            }
+        }
+        return recorded;
+    }
+
+    /**
+     * Query a directory's metric history
+     * @param rootPath Directory
+     * @param from Range start (inclusive, epoch millis)
+     * @param to Range end (exclusive, epoch millis)
+     * @param resolution Requested resolution, or null to pick one from the range; a resolution
+     *                   whose retention doesn't cover the range start falls back to a coarser one
+     */
+    public Map<String, Object> query(String rootPath, long from, long to, Resolution resolution) {
+        if (to <= from) {
+            throw new IllegalArgumentException("Range end must be after its start");
+        }
+        long now = System.currentTimeMillis();
+        Resolution requested = resolution;
+        if (resolution == null) {
+            long range = to - from;
+            resolution = range <= AUTO_RAW_MAX_RANGE ? Resolution.RAW
+                : range <= AUTO_HOURLY_MAX_RANGE ? Resolution.HOURLY : Resolution.DAILY;
+        }
+        if (resolution == Resolution.RAW && from < rawCutoff()) {
+            resolution = Resolution.HOURLY;
+        }
+        if (resolution == Resolution.HOURLY && from < now - hourlyRetentionDays * DAY_MILLIS) {
+            resolution = Resolution.DAILY;
+        }
+
+        Series target = forRoot(rootPath);
+        List<Map<String, Object>> points = new ArrayList<>();
+        synchronized (target) {
+            if (resolution == Resolution.RAW) {
+                for (List<Point> sameTime : target.data.raw.subMap(from, to).values()) {
+                    for (Point point : sameTime) {
+                        Map<String, Object> row = new LinkedHashMap<>();
+                        row.put("timestamp", Instant.ofEpochMilli(point.timestamp).toString());
+                        row.put("path", point.path);
+                        row.put("values", point.values);
+                        points.add(row);
+                    }
+                }
+            } else {
+                TreeMap<Long, Bucket> buckets = resolution == Resolution.HOURLY ? target.data.hourly : target.data.daily;
+                long bucketSize = resolution == Resolution.HOURLY ? HOUR_MILLIS : DAY_MILLIS;
+                for (Bucket bucket : buckets.subMap(floor(from, bucketSize), to).values()) {
+                    points.add(bucket.describe());
+                }
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("directoryPath", canonical(rootPath));
+        result.put("from", Instant.ofEpochMilli(from).toString());
+        result.put("to", Instant.ofEpochMilli(to).toString());
+        result.put("requestedResolution", requested != null ? requested.name().toLowerCase() : "auto");
+        result.put("resolution", resolution.name().toLowerCase());
+        result.put("points", points);
+        result.put("pointCount", points.size());
+        result.put("queryType", "xml_metrics_history");
+        result.put("description", "Business metrics history from the time-series store");
+        result.put("executedAt", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return result;
+    }
+
+    public Map<String, Object> getStatistics() {
+        List<Map<String, Object>> rootStats = new ArrayList<>();
+        for (Series root : series.values()) {
+            synchronized (root) {
+                Map<String, Object> stats = new HashMap<>();
+                stats.put("directoryPath", root.data.rootPath);
+                stats.put("trackedFiles", root.data.recorded.size());
+                stats.put("rawPoints", root.data.raw.values().stream().mapToInt(List::size).sum());
+                stats.put("hourlyBuckets", root.data.hourly.size());
+                stats.put("dailyBuckets", root.data.daily.size());
+                stats.put("storeFile", root.storeFile.toString());
+                rootStats.add(stats);
+            }
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("storeDirectory", storeDirectory);
+        result.put("rawRetentionDays", rawRetentionDays);
+        result.put("hourlyRetentionDays", hourlyRetentionDays);
+        result.put("roots", rootStats);
+        return result;
+    }
+
+    private Series forRoot(String rootPath) {
+        return series.computeIfAbsent(canonical(rootPath), this::load);
+    }
+
+    private Series load(String rootPath) {
+        Series root = new Series(JsonFileStore.fileFor(storeDirectory, rootPath));
+        root.data.rootPath = rootPath;
+        SeriesFile stored = enabled ? fileStore.load(root.storeFile, file -> rootPath.equals(file.rootPath)) : null;
+        if (stored != null) {
+            root.data = stored;
+        }
+        return root;
+    }
+
+    private long rawCutoff() {
+        return System.currentTimeMillis() - rawRetentionDays * DAY_MILLIS;
+    }
+
+    private static Map<String, Long> numericMetrics(Map<String, Object> metrics) {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Object> metric : metrics.entrySet()) {
+            String key = metric.getKey();
+            if ((key.equals("totalElements") || key.endsWith("Count")) && metric.getValue() instanceof Number) {
+                values.put(key, ((Number) metric.getValue()).longValue());
+            }
+        }
+        return values;
+    }
+
+    private static long floor(long timestamp, long bucketSize) {
+        return Math.floorDiv(timestamp, bucketSize) * bucketSize;
+    }
+
+    private static String canonical(String rootPath) {
+        return Paths.get(rootPath).toAbsolutePath().normalize().toString();
+    }
+
+    private class Series {
+        private final Path storeFile;
+        private SeriesFile data = new SeriesFile();
+
+        Series(Path storeFile) {
+            this.storeFile = storeFile;
+        }
+
+        void add(Point point) {
+            data.recorded.put(point.path, point.timestamp);
+            data.raw.computeIfAbsent(point.timestamp, t -> new ArrayList<>()).add(point);
+            data.hourly.computeIfAbsent(floor(point.timestamp, HOUR_MILLIS), Bucket::new).add(point.values);
+            data.daily.computeIfAbsent(floor(point.timestamp, DAY_MILLIS), Bucket::new).add(point.values);
+        }
+
+        /**
+         * Take a file's previous version out of the raw points and rollups. Nothing is retracted
+         * once the raw point has expired, as its values are no longer known.
+         */
+        void retract(String path, long timestamp) {
+            List<Point> sameTime = data.raw.get(timestamp);
+            Point previous = null;
+            if (sameTime != null) {
+                for (Iterator<Point> points = sameTime.iterator(); points.hasNext(); ) {
+                    Point point = points.next();
+                    if (point.path.equals(path)) {
+                        previous = point;
+                        points.remove();
+                        break;
+                    }
+                }
+                if (sameTime.isEmpty()) {
+                    data.raw.remove(timestamp);
+                }
+            }
+            if (previous != null) {
+                retract(data.hourly, HOUR_MILLIS, previous);
+                retract(data.daily, DAY_MILLIS, previous);
+            }
+        }
+
+        private void retract(TreeMap<Long, Bucket> buckets, long bucketSize, Point point) {
+            long start = floor(point.timestamp, bucketSize);
+            Bucket bucket = buckets.get(start);
+            if (bucket == null) {
+                return;
+            }
+            if (start >= rawCutoff()) {
+                // Every point of the bucket is still held raw: rebuild it so min and max are exact too
+                Bucket rebuilt = new Bucket(start);
+                for (List<Point> sameTime : data.raw.subMap(start, start + bucketSize).values()) {
+                    sameTime.forEach(remaining -> rebuilt.add(remaining.values));
+                }
+                bucket = rebuilt;
+            } else {
+                // Min and max may still reflect the retracted version
+                bucket.subtract(point.values);
+            }
+            if (bucket.files > 0) {
+                buckets.put(start, bucket);
+            } else {
+                buckets.remove(start);
+            }
+        }
+
+        /**
+         * Drop raw points and hourly buckets past their retention (daily buckets are kept)
+         */
+        void compact() {
+            long now = System.currentTimeMillis();
+            data.raw.headMap(rawCutoff()).clear();
+            data.hourly.headMap(floor(now - hourlyRetentionDays * DAY_MILLIS, HOUR_MILLIS)).clear();
+        }
+
+        void save() {
+            fileStore.save(storeFile, data);
+        }
+    }
+
+    /**
+     * On-disk form of one directory's history
+     */
+    public static class SeriesFile extends JsonFileStore.Stored {
+        public String rootPath;
+        // Path -> modification time of the last version recorded
+        public Map<String, Long> recorded = new HashMap<>();
+        public TreeMap<Long, List<Point>> raw = new TreeMap<>();
+        public TreeMap<Long, Bucket> hourly = new TreeMap<>();
+        public TreeMap<Long, Bucket> daily = new TreeMap<>();
+    }
+
+    /**
+     * One file version's metrics
+     */
+    public static class Point {
+        public long timestamp;
+        public String path;
+        public Map<String, Long> values;
+
+        public Point() {
+        }
+
+        Point(long timestamp, String path, Map<String, Long> values) {
+            this.timestamp = timestamp;
+            this.path = path;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Rollup of the points in one hour or day
+     */
+    public static class Bucket {
+        public long start;
+        public long files;
+        public Map<String, Long> sum = new TreeMap<>();
+        public Map<String, Long> min = new TreeMap<>();
+        public Map<String, Long> max = new TreeMap<>();
+
+        public Bucket() {
+        }
+
+        Bucket(long start) {
+            this.start = start;
+        }
+
+        void add(Map<String, Long> values) {
+            files++;
+            for (Map.Entry<String, Long> value : values.entrySet()) {
+                sum.merge(value.getKey(), value.getValue(), Long::sum);
+                min.merge(value.getKey(), value.getValue(), Math::min);
+                max.merge(value.getKey(), value.getValue(), Math::max);
+            }
+        }
+
+        void subtract(Map<String, Long> values) {
+            files--;
+            for (Map.Entry<String, Long> value : values.entrySet()) {
+                sum.computeIfPresent(value.getKey(), (key, total) -> total - value.getValue());
+            }
+        }
+
+        Map<String, Object> describe() {
+            Map<String, Double> average = new TreeMap<>();
+            for (Map.Entry<String, Long> total : sum.entrySet()) {
+                average.put(total.getKey(), total.getValue() / (double) files);
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("timestamp", Instant.ofEpochMilli(start).toString());
+            row.put("files", files);
+            row.put("sum", sum);
+            row.put("average", average);
+            row.put("min", min);
+            row.put("max", max);
+            return row;
+        }
+    }
+}
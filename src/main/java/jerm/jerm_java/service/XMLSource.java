@@ -0,0 +1,191 @@
+package jerm.jerm_java.service;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * One XML document on disk: a plain .xml file, a gzip-compressed .xml.gz file, or an .xml entry
+ * inside a .zip archive. Compressed documents are read straight from the decompression stream,
+ * never extracted to a temporary file. Zip entries are addressed as "archive.zip!/entry.xml".
+ */
+public final class XMLSource {
+
+    public enum Compression { NONE, GZIP, ZIP }
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final Path file;
+    private final String entryName;
+    private final Compression compression;
+    private final long size;
+    private final long lastModified;
+
+    private XMLSource(Path file, String entryName, Compression compression, long size, long lastModified) {
+        this.file = file;
+        this.entryName = entryName;
+        this.compression = compression;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * A plain or gzip-compressed file, told apart by its name
+     */
+    public static XMLSource file(Path file, long size, long lastModified) {
+        Compression compression = isGzipName(file.getFileName().toString()) ? Compression.GZIP : Compression.NONE;
+        return new XMLSource(file, null, compression, size, lastModified);
+    }
+
+    /**
+     * An entry of a zip archive
+     * @param size Uncompressed size of the entry
+     * @param lastModified Modification time recorded for the entry
+     */
+    public static XMLSource zipEntry(Path archive, String entryName, long size, long lastModified) {
+        return new XMLSource(archive, entryName, Compression.ZIP, size, lastModified);
+    }
+
+    public static boolean isXmlName(String name) {
+        return name.toLowerCase().endsWith(".xml");
+    }
+
+    public static boolean isGzipName(String name) {
+        return name.toLowerCase().endsWith(".xml.gz");
+    }
+
+    public static boolean isZipName(String name) {
+        return name.toLowerCase().endsWith(".zip");
+    }
+
+    /**
+     * Whether a file on disk may hold XML documents (.xml, .xml.gz or .zip)
+     */
+    public static boolean isCandidate(Path path) {
+        if (path.getFileName() == null) {
+            return false;
+        }
+        String name = path.getFileName().toString();
+        return isXmlName(name) || isGzipName(name) || isZipName(name);
+    }
+
+    /**
+     * Display name: the file name, or the entry's own name for a zip entry
+     */
+    public String getName() {
+        if (entryName == null) {
+            return file.getFileName().toString();
+        }
+        int slash = entryName.lastIndexOf('/');
+        return slash >= 0 ? entryName.substring(slash + 1) : entryName;
+    }
+
+    /**
+     * Unique path: the file path, or "archive!/entry" for a zip entry
+     */
+    public String getPath() {
+        return entryName == null ? file.toString() : file + "!/" + entryName;
+    }
+
+    /**
+     * Path relative to the directory the source was listed from ("name.xml", or "archive.zip!/entry"
+     * for a zip entry), so the same file is recognised when read from a copy of that directory
+     */
+    public String getPathWithin(Path directory) {
+        Path absolute = file.toAbsolutePath().normalize();
+        Path base = directory.toAbsolutePath().normalize();
+        String relative = absolute.startsWith(base) ? base.relativize(absolute).toString() : absolute.toString();
+        return entryName == null ? relative : relative + "!/" + entryName;
+    }
+
+    /**
+     * The file on disk (the archive, for a zip entry)
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    public String getEntryName() {
+        return entryName;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public boolean isCompressed() {
+        return compression != Compression.NONE;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * System id for the parser, so relative references resolve next to the file (or archive)
+     */
+    public String getSystemId() {
+        return file.toUri().toString();
+    }
+
+    /**
+     * Open the document's XML content, decompressing as it's read
+     */
+    public InputStream openStream() throws IOException {
+        switch (compression) {
+            case GZIP:
+                return new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE), BUFFER_SIZE);
+            case ZIP:
+                ZipFile zip = new ZipFile(file.toFile());
+                try {
+                    ZipEntry entry = zip.getEntry(entryName);
+                    if (entry == null) {
+                        throw new FileNotFoundException(getPath());
+                    }
+                    // Closing the entry stream closes the archive too
+                    InputStream entryStream = new FilterInputStream(zip.getInputStream(entry)) {
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                zip.close();
+                            }
+                        }
+                    };
+                    return new BufferedInputStream(entryStream, BUFFER_SIZE);
+                } catch (IOException | RuntimeException e) {
+                    zip.close();
+                    throw e;
+                }
+            default:
+                return new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof XMLSource && getPath().equals(((XMLSource) other).getPath());
+    }
+
+    @Override
+    public int hashCode() {
+        return getPath().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getPath();
+    }
+}
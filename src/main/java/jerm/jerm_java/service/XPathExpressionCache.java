@@ -0,0 +1,129 @@
+package jerm.jerm_java.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of compiled XPath expressions, shared across requests.
+ *
+ * XPathExpression isn't thread-safe, so each cached entry hands every thread its own
+ * compiled copy (compiled on that thread's first use). Parse workers are long-lived, so an
+ * expression is compiled at most once per worker instead of once per file. Invalid
+ * expressions are cached too, so the compile error is reported without re-parsing.
+ */
+@Service
+public class XPathExpressionCache {
+
+    private static final ThreadLocal<XPath> XPATHS = ThreadLocal.withInitial(() -> {
+        XPathFactory factory = XPathFactory.newInstance();
+        return factory.newXPath();
+    });
+
+    @Value("${xml.xpath.cache.size:256}")
+    private int maxSize = 256;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private final Map<String, CompiledXPath> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompiledXPath> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    /**
+     * Get the compiled form of an expression, compiling it on first use
+     * @param expression XPath expression
+     * @return Compiled expression usable from any thread
+     * @throws XPathExpressionException if the expression doesn't compile
+     */
+    public CompiledXPath get(String expression) throws XPathExpressionException {
+        CompiledXPath compiled;
+        synchronized (cache) {
+            compiled = cache.get(expression);
+        }
+
+        if (compiled != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            compiled = new CompiledXPath(expression);
+            synchronized (cache) {
+                CompiledXPath existing = cache.putIfAbsent(expression, compiled);
+                if (existing != null) {
+                    compiled = existing;
+                }
+            }
+        }
+
+        if (compiled.compileError != null) {
+            throw compiled.compileError;
+        }
+        return compiled;
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (cache) {
+            stats.put("size", cache.size());
+        }
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+
+    /**
+     * A validated expression; evaluate() uses a copy compiled for the calling thread
+     */
+    public static class CompiledXPath {
+        private final String expression;
+        private final XPathExpressionException compileError;
+        private final ThreadLocal<XPathExpression> perThread;
+
+        CompiledXPath(String expression) {
+            this.expression = expression;
+            XPathExpression first = null;
+            XPathExpressionException error = null;
+            try {
+                first = XPATHS.get().compile(expression);
+            } catch (XPathExpressionException e) {
+                error = e;
+            }
+            this.compileError = error;
+
+            // The validating compile is kept for the thread that did it; others compile their own
+            Thread compilingThread = Thread.currentThread();
+            XPathExpression compiledHere = first;
+            this.perThread = ThreadLocal.withInitial(() -> {
+                if (Thread.currentThread() == compilingThread && compiledHere != null) {
+                    return compiledHere;
+                }
+                try {
+                    return XPATHS.get().compile(expression);
+                } catch (XPathExpressionException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        public String getExpression() {
+            return expression;
+        }
+
+        public Object evaluate(Object item, QName returnType) throws XPathExpressionException {
+            return perThread.get().evaluate(item, returnType);
+        }
+    }
+}
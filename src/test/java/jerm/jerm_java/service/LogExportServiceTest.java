@@ -0,0 +1,74 @@
+package jerm.jerm_java.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogExportServiceTest {
+
+    private static final List<LogExportService.TableColumn> COLUMNS = List.of(
+        new LogExportService.TableColumn("log_id", "bigint", 0, true, true),
+        new LogExportService.TableColumn("logged_on_utc", "datetime", 3, false, false),
+        new LogExportService.TableColumn("machine_id", "varchar", 0, false, false),
+        new LogExportService.TableColumn("row_guid", "uniqueidentifier", 0, false, true),
+        new LogExportService.TableColumn("legacy_id", "int", 0, false, false));
+
+    @Test
+    void cursorRoundTripsWithSubSecondTimestamps() {
+        LogExportService.ExportCursor cursor =
+            new LogExportService.ExportCursor(LocalDateTime.of(2025, 3, 1, 12, 30, 15, 123_456_700), 98765L);
+        assertEquals(cursor, LogExportService.ExportCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        String otherVersion = Base64.getUrlEncoder().withoutPadding()
+            .encodeToString("1|2025-03-01T12:30:15|5".getBytes(StandardCharsets.UTF_8));
+        for (String cursor : List.of("not a cursor", otherVersion, "", "MnwyMDI1")) {
+            assertThrows(IllegalArgumentException.class, () -> LogExportService.ExportCursor.decode(cursor), cursor);
+        }
+    }
+
+    @Test
+    void cursorConditionCastsToTheColumnType() {
+        LocalDateTime loggedOnUtc = LocalDateTime.of(2025, 3, 1, 12, 0, 0, 3_000_000);
+        LogExportService.ExportCursor cursor = new LogExportService.ExportCursor(loggedOnUtc, 42L);
+
+        List<Object> parameters = new ArrayList<>();
+        String condition = cursor.condition(LogExportService.resolveSchema(COLUMNS, ""), parameters);
+        assertEquals("(logged_on_utc < CAST(? AS datetime) OR (logged_on_utc = CAST(? AS datetime) AND log_id < ?))",
+                     condition);
+        assertEquals(List.of(Timestamp.valueOf(loggedOnUtc), Timestamp.valueOf(loggedOnUtc), 42L), parameters);
+
+        List<LogExportService.TableColumn> precise = new ArrayList<>(COLUMNS);
+        precise.set(1, new LogExportService.TableColumn("logged_on_utc", "datetime2", 7, false, false));
+        String preciseCondition = cursor.condition(LogExportService.resolveSchema(precise, ""), new ArrayList<>());
+        assertTrue(preciseCondition.contains("logged_on_utc = CAST(? AS datetime2(7))"), preciseCondition);
+    }
+
+    @Test
+    void resumeKeyMustBeAUniqueColumnOfTheTable() {
+        assertEquals("log_id", LogExportService.resolveSchema(COLUMNS, "").keyColumn());
+        assertEquals("log_id", LogExportService.resolveSchema(COLUMNS, "LOG_ID").keyColumn());
+        assertEquals("datetime", LogExportService.resolveSchema(COLUMNS, null).timestampType());
+
+        IllegalStateException missing = assertThrows(IllegalStateException.class,
+            () -> LogExportService.resolveSchema(COLUMNS, "log_message_id"));
+        assertTrue(missing.getMessage().contains("log.export.key.column=log_message_id"), missing.getMessage());
+        assertThrows(IllegalStateException.class, () -> LogExportService.resolveSchema(COLUMNS, "machine_id"));
+        // Unique, but cursors carry the key as a number
+        assertThrows(IllegalStateException.class, () -> LogExportService.resolveSchema(COLUMNS, "row_guid"));
+        assertThrows(IllegalStateException.class, () -> LogExportService.resolveSchema(List.of(), ""));
+
+        // Two unique columns and nothing configured: no guess
+        List<LogExportService.TableColumn> twoKeys = new ArrayList<>(COLUMNS);
+        twoKeys.set(4, new LogExportService.TableColumn("legacy_id", "int", 0, false, true));
+        assertThrows(IllegalStateException.class, () -> LogExportService.resolveSchema(twoKeys, ""));
+        assertEquals("legacy_id", LogExportService.resolveSchema(twoKeys, "legacy_id").keyColumn());
+    }
+}
@@ -0,0 +1,239 @@
+package jerm.jerm_java.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingXPathTest {
+
+    private static final String XML = "<?xml version='1.0'?>"
+        + "<root id='r'>"
+        + "<log level='ERROR' timestamp='t1'><message>m1 <![CDATA[<c>]]> &amp; x</message></log>"
+        + "<log level='WARN' timestamp='t2'><message>m2</message>"
+        + "<log level='ERROR' timestamp='t3'><message>inner</message></log></log>"
+        + "<config type='database'><setting value='v1'/><setting value='v2'>s</setting></config>"
+        + "<p:thing xmlns:p='urn:x' p:id='5'>pt</p:thing>\n"
+        + "  <a><a><a id='3'>deep</a></a></a>"
+        + "</root>";
+
+    private static final int ROWS = 500_000;
+
+    @TempDir
+    Path directory;
+
+    private static final List<String> STREAMABLE = List.of(
+        "//*", "/*", "/root/log/log", "//log", "//log//log", "//a//a", "//a/a",
+        "//log[@level='ERROR']/message", "//*[@level]", "//*[@type=\"database\"]", "//config[@type='database']",
+        "//log/@timestamp", "//config/setting/@value", "//@id", "//thing");
+
+    @Test
+    void streamingMatchesDomEvaluation() throws Exception {
+        Document document = parse();
+        for (String expression : STREAMABLE) {
+            StreamingXPath path = StreamingXPath.compile(expression);
+            assertNotNull(path, expression);
+
+            List<String> streamed = new ArrayList<>();
+            path.evaluate(input(), (value, attributes) -> streamed.add(describe(value, attributes)));
+            assertEquals(domMatches(document, expression), streamed, expression);
+        }
+    }
+
+    @Test
+    void pathSetMatchesDomEvaluationInOnePass() throws Exception {
+        Document document = parse();
+        List<StreamingXPath> paths = new ArrayList<>();
+        for (String expression : STREAMABLE) {
+            paths.add(StreamingXPath.compile(expression));
+        }
+        StreamingXPathSet set = new StreamingXPathSet(paths);
+
+        List<List<String>> streamed = new ArrayList<>();
+        List<List<String>> walked = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            streamed.add(new ArrayList<>());
+            walked.add(new ArrayList<>());
+        }
+        set.evaluate(input(), (path, value, attributes) -> streamed.get(path).add(describe(value, attributes)));
+        set.evaluate(document, (path, value, attributes) -> walked.get(path).add(describe(value, attributes)));
+
+        for (int i = 0; i < paths.size(); i++) {
+            List<String> expected = domMatches(document, STREAMABLE.get(i));
+            assertEquals(expected, streamed.get(i), STREAMABLE.get(i));
+            assertEquals(expected, walked.get(i), STREAMABLE.get(i));
+        }
+    }
+
+    @Test
+    void boundedPassAndDomWalkCutValuesTheSameWay() throws Exception {
+        StreamingXPathSet set = new StreamingXPathSet(List.of(StreamingXPath.compile("//*"), StreamingXPath.compile("//log")));
+        List<String> streamed = new ArrayList<>();
+        List<String> walked = new ArrayList<>();
+        assertTrue(set.evaluate(input(), (path, value, attributes) -> streamed.add(path + ":" + value), 100, 5));
+        assertTrue(set.evaluate(parse(), (path, value, attributes) -> walked.add(path + ":" + value), 100, 5));
+        assertEquals(streamed, walked);
+        assertTrue(streamed.contains("0:m1 <c"));
+
+        assertFalse(set.evaluate(input(), (path, value, attributes) -> { }, 3, 5));
+        assertFalse(set.evaluate(parse(), (path, value, attributes) -> { }, 3, 5));
+    }
+
+    @Test
+    void nestedMatchesAreReportedOncePerElement() throws Exception {
+        List<String> values = new ArrayList<>();
+        StreamingXPath.compile("//a//a").evaluate(input(), (value, attributes) -> values.add(value));
+        assertEquals(List.of("deep", "deep"), values);
+
+        List<String> all = new ArrayList<>();
+        StreamingXPath.compile("//*").evaluate(input(), (value, attributes) -> all.add(value));
+        assertEquals(14, all.size());
+    }
+
+    @Test
+    void matchLimitStopsReadingALargeFile() throws Exception {
+        Path file = largeFile("rows.xml", "<row id='%d'>value %d</row>");
+        List<String> values = new ArrayList<>();
+        try (CountingInputStream input = open(file)) {
+            assertFalse(StreamingXPath.compile("//*").evaluate(input, (value, attributes) -> values.add(value), 1000, 1024));
+            assertTrue(input.count < Files.size(file) / 20, "read " + input.count + " of " + Files.size(file));
+        }
+        // The root's text is cut off at the limit; nothing past the 1000th match was reported
+        assertTrue(values.size() <= 1000);
+        assertEquals(1024, values.get(0).length());
+        assertEquals("value 0", values.get(1));
+    }
+
+    @Test
+    void outerMatchesDoNotHoldBackTheMatchesInsideThem() throws Exception {
+        for (Path file : List.of(largeFile("text.xml", "<row id='%d'>value %d</row>"),
+                                 largeFile("empty.xml", "<row id='%d' n='%d'/>"))) {
+            List<String> values = new ArrayList<>();
+            long[] readAtFirstMatch = new long[1];
+            try (CountingInputStream input = open(file)) {
+                assertThrows(EnoughMatches.class, () -> StreamingXPath.compile("//*").evaluate(input, (value, attributes) -> {
+                    if (values.isEmpty()) {
+                        readAtFirstMatch[0] = input.count;
+                    }
+                    values.add(value);
+                    if (values.size() == 10) {
+                        throw new EnoughMatches();
+                    }
+                }, Integer.MAX_VALUE, 1024));
+            }
+            // The root is reported long before its end tag, with its text cut off
+            assertTrue(readAtFirstMatch[0] < Files.size(file) / 20, file + ": read " + readAtFirstMatch[0]);
+            assertTrue(values.get(0).length() <= 1024, file.toString());
+            assertEquals(10, values.size());
+        }
+    }
+
+    @Test
+    void expressionsOutsideTheSubsetAreRejected() {
+        for (String expression : List.of("//text()", "count(//log)", "//log[1]", "//log[message]",
+                "//log/@level/x", "/root/@id/..", "root", "//log[@level=ERROR]", "//p:thing")) {
+            assertNull(StreamingXPath.compile(expression), expression);
+        }
+    }
+
+    @Test
+    void requiredNamesAndValuesComeFromNamedStepsAndPredicates() {
+        StreamingXPath path = StreamingXPath.compile("//log[@level='ERROR']/*/@timestamp");
+        assertEquals(List.of("log", "level", "timestamp"), path.requiredNames());
+        assertEquals(List.of("ERROR"), path.requiredValues());
+    }
+
+    private static List<String> domMatches(Document document, String expression) throws Exception {
+        NodeList nodes = (NodeList) XPathFactory.newInstance().newXPath().evaluate(expression, document, XPathConstants.NODESET);
+        List<String> matches = new ArrayList<>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            Map<String, String> attributes = new HashMap<>();
+            NamedNodeMap nodeAttributes = node.getAttributes();
+            if (node.getNodeType() == Node.ELEMENT_NODE && nodeAttributes != null) {
+                for (int j = 0; j < nodeAttributes.getLength(); j++) {
+                    attributes.put(nodeAttributes.item(j).getNodeName(), nodeAttributes.item(j).getNodeValue());
+                }
+            }
+            String value = node.getNodeType() == Node.ELEMENT_NODE ? node.getTextContent() : node.getNodeValue();
+            matches.add(describe(value, attributes));
+        }
+        return matches;
+    }
+
+    private static String describe(String value, Map<String, String> attributes) {
+        return value + "|" + new TreeMap<>(attributes);
+    }
+
+    private static Document parse() throws Exception {
+        // Not namespace aware, like the service's DOM fallback
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(input());
+    }
+
+    private Path largeFile(String name, String row) throws IOException {
+        Path file = directory.resolve(name);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("<root>");
+            for (int i = 0; i < ROWS; i++) {
+                writer.write(String.format(row, i, i));
+            }
+            writer.write("</root>");
+        }
+        return file;
+    }
+
+    private static CountingInputStream open(Path file) throws IOException {
+        return new CountingInputStream(new BufferedInputStream(Files.newInputStream(file), 8192));
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    private static class EnoughMatches extends RuntimeException {
+    }
+
+    private static ByteArrayInputStream input() {
+        return new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,144 @@
+package jerm.jerm_java.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestCaseHistoryStoreTest {
+
+    @TempDir
+    Path storeDirectory;
+
+    private final Path suiteDirectory = Path.of("suite").toAbsolutePath();
+
+    @Test
+    void bitmapsAndDurationsRoundTripThroughTheStoredForm() {
+        TestCaseHistoryStore.TestHistory history = new TestCaseHistoryStore.TestHistory(3);
+        TestCaseResult.Outcome[] outcomes = TestCaseResult.Outcome.values();
+        // Growing, shrinking, zero and multi-byte deltas
+        long[] millis = { 0, 1, 150, 149, 70_000, 3, 0, 1L << 40, 12, 12 };
+        for (int i = 0; i < millis.length; i++) {
+            // Runs 3, 5, 7, ...: gaps where the test didn't run
+            history.add(3 + 2 * i, outcomes[i % outcomes.length], millis[i]);
+        }
+        history.pack();
+
+        TestCaseHistoryStore.TestHistory stored = new TestCaseHistoryStore.TestHistory();
+        stored.firstRun = history.firstRun;
+        stored.ranBits = history.ranBits;
+        stored.passedBits = history.passedBits;
+        stored.failedBits = history.failedBits;
+        stored.durations = history.durations;
+        stored.lastDurationMillis = history.lastDurationMillis;
+        stored.unpack();
+
+        assertArrayEquals(millis, stored.decodeDurations());
+        for (int i = 0; i < millis.length; i++) {
+            TestCaseResult.Outcome expected = outcomes[i % outcomes.length] == TestCaseResult.Outcome.ERROR
+                ? TestCaseResult.Outcome.FAILED : outcomes[i % outcomes.length];
+            assertEquals(expected, stored.outcome(2 * i));
+        }
+
+        // Appending after a reload continues the delta chain
+        stored.add(3 + 2 * millis.length, TestCaseResult.Outcome.PASSED, 7);
+        long[] extended = Arrays.copyOf(millis, millis.length + 1);
+        extended[millis.length] = 7;
+        assertArrayEquals(extended, stored.decodeDurations());
+    }
+
+    @Test
+    void flipsCountPassFailChangesAndIgnoreSkips() {
+        TestCaseHistoryStore store = store("history");
+        String[] flaky = { "Success", "Failure", "Ignored", "Failure", "Success", "Failure", "Success" };
+        Map<XMLSource, List<TestCaseResult>> runs = new HashMap<>();
+        for (int i = 0; i < flaky.length; i++) {
+            runs.put(run(i), List.of(new TestCaseResult("T.flaky", flaky[i], 1), new TestCaseResult("T.stable", "Success", 1)));
+        }
+        assertEquals(flaky.length, store.record(root(), suiteDirectory, runs));
+
+        // P F (S) F P F P: the skip sits between two failures
+        Map<String, Object> row = onlyFlakyTest(store.getFlakyTests(root(), 10, 1, 10));
+        assertEquals("T.flaky", row.get("name"));
+        assertEquals(4, row.get("flips"));
+        assertEquals(7, row.get("executions"));
+        assertEquals(3, row.get("failures"));
+        assertEquals(true, row.get("currentlyPassing"));
+        assertEquals(4 / 5.0, (Double) row.get("flipRate"), 1e-9);
+
+        // Last three runs only: P F P
+        assertEquals(2, onlyFlakyTest(store.getFlakyTests(root(), 3, 1, 10)).get("flips"));
+        assertEquals(0, store.getFlakyTests(root(), 10, 5, 10).get("flakyTestCount"));
+    }
+
+    @Test
+    void outOfOrderRecordingMatchesInOrderRecording() {
+        List<Map<XMLSource, List<TestCaseResult>>> runs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            runs.add(Map.of(run(i), List.of(
+                new TestCaseResult("T.a", i % 2 == 0 ? "Success" : "Failure", i),
+                new TestCaseResult("T.b", "Success", 10 - i))));
+        }
+
+        TestCaseHistoryStore inOrder = store("in-order");
+        for (Map<XMLSource, List<TestCaseResult>> run : runs) {
+            inOrder.record(root(), suiteDirectory, run);
+        }
+        TestCaseHistoryStore shuffled = store("shuffled");
+        for (int i : new int[] { 3, 0, 5, 1, 4, 2 }) {
+            shuffled.record(root(), suiteDirectory, runs.get(i));
+        }
+        // A file already recorded is skipped
+        assertEquals(0, shuffled.record(root(), suiteDirectory, runs.get(4)));
+
+        for (String test : List.of("T.a", "T.b")) {
+            assertEquals(inOrder.getTestHistory(root(), test, 10).get("executions"),
+                shuffled.getTestHistory(root(), test, 10).get("executions"));
+        }
+        assertEquals(inOrder.getFlakyTests(root(), 10, 1, 10).get("flakyTests"),
+            shuffled.getFlakyTests(root(), 10, 1, 10).get("flakyTests"));
+    }
+
+    @Test
+    void aRewrittenFileReplacesItsRun() {
+        TestCaseHistoryStore store = store("history");
+        for (int i = 0; i < 3; i++) {
+            store.record(root(), suiteDirectory, Map.of(run(i), List.of(new TestCaseResult("T.a", "Success", 1))));
+        }
+        XMLSource rewritten = XMLSource.file(suiteDirectory.resolve("run1.xml"), 1, 5_000);
+        assertFalse(store.isRecorded(root(), suiteDirectory, rewritten));
+        store.record(root(), suiteDirectory, Map.of(rewritten, List.of(new TestCaseResult("T.a", "Failure", 2))));
+        assertTrue(store.isRecorded(root(), suiteDirectory, rewritten));
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> executions =
+            (List<Map<String, Object>>) store.getTestHistory(root(), "T.a", 10).get("executions");
+        assertEquals(List.of("run0.xml", "run2.xml", "run1.xml"), executions.stream().map(row -> row.get("path")).toList());
+        assertEquals(List.of("PASSED", "PASSED", "FAILED"), executions.stream().map(row -> row.get("outcome")).toList());
+    }
+
+    private TestCaseHistoryStore store(String name) {
+        TestCaseHistoryStore store = new TestCaseHistoryStore();
+        ReflectionTestUtils.setField(store, "storeDirectory", storeDirectory.resolve(name).toString());
+        return store;
+    }
+
+    private String root() {
+        return suiteDirectory.toString();
+    }
+
+    private XMLSource run(int index) {
+        return XMLSource.file(suiteDirectory.resolve("run" + index + ".xml"), 1, 1_000 + index);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> onlyFlakyTest(Map<String, Object> result) {
+        List<Map<String, Object>> tests = (List<Map<String, Object>>) result.get("flakyTests");
+        assertEquals(1, tests.size());
+        return tests.get(0);
+    }
+}
@@ -0,0 +1,102 @@
+package jerm.jerm_java.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueFrequencySketchTest {
+
+    @Test
+    void countsAreExactUntilACounterIsEvicted() {
+        ValueFrequencySketch sketch = new ValueFrequencySketch(12, 4);
+        for (String value : List.of("a", "b", "a", "c", "a", "b")) {
+            sketch.add(value);
+        }
+        assertTrue(sketch.isExact());
+        assertEquals(3, sketch.estimateDistinct());
+        assertEquals(0.0, sketch.distinctStandardError());
+
+        List<ValueFrequencySketch.TopValue> top = sketch.top(10);
+        assertEquals(List.of("a", "b", "c"), top.stream().map(ValueFrequencySketch.TopValue::getValue).toList());
+        assertEquals(List.of(3L, 2L, 1L), top.stream().map(ValueFrequencySketch.TopValue::getCount).toList());
+        assertTrue(top.stream().allMatch(value -> value.getOvercount() == 0 && value.isRankGuaranteed()));
+    }
+
+    @Test
+    void reportedCountsBoundTheTrueCounts() {
+        // Zipf-like stream over far more distinct values than counters
+        Random random = new Random(42);
+        Map<String, Long> actual = new HashMap<>();
+        ValueFrequencySketch sketch = new ValueFrequencySketch(12, 64);
+        for (int i = 0; i < 200_000; i++) {
+            String value = "v" + (int) Math.floor(Math.pow(5_000, random.nextDouble()));
+            actual.merge(value, 1L, Long::sum);
+            sketch.add(value);
+        }
+        assertFalse(sketch.isExact());
+        assertEquals(200_000, sketch.getTotal());
+
+        List<ValueFrequencySketch.TopValue> top = sketch.top(64);
+        for (ValueFrequencySketch.TopValue value : top) {
+            long count = actual.getOrDefault(value.getValue(), 0L);
+            assertTrue(count <= value.getCount(), value.getValue() + " overstated bound");
+            assertTrue(count >= value.getCount() - value.getOvercount(), value.getValue() + " understated bound");
+        }
+
+        // Every value whose rank is guaranteed really occurs at least as often as the next one reported
+        List<String> byCount = new ArrayList<>(actual.keySet());
+        byCount.sort(Comparator.comparing(actual::get).reversed());
+        for (int i = 0; i + 1 < top.size(); i++) {
+            if (top.get(i).isRankGuaranteed()) {
+                assertTrue(actual.get(top.get(i).getValue()) >= actual.getOrDefault(top.get(i + 1).getValue(), 0L));
+            }
+        }
+        // The most frequent values are held
+        assertEquals(byCount.get(0), top.get(0).getValue());
+    }
+
+    @Test
+    void distinctEstimateStaysWithinTheStandardError() {
+        for (int precision : new int[] { 10, 14 }) {
+            ValueFrequencySketch sketch = new ValueFrequencySketch(precision, 16);
+            int distinct = 100_000;
+            for (int i = 0; i < distinct; i++) {
+                sketch.add("value-" + i);
+                // Repeats don't change the estimate
+                sketch.add("value-" + (i / 2));
+            }
+            double error = Math.abs(sketch.estimateDistinct() - distinct) / (double) distinct;
+            assertEquals(1.04 / Math.sqrt(1 << precision), sketch.distinctStandardError(), 1e-12);
+            assertTrue(error < 3 * sketch.distinctStandardError(), "precision " + precision + " error " + error);
+        }
+    }
+
+    @Test
+    void hyperLogLogMergeEqualsOneSketchOverBothStreams() {
+        HyperLogLog left = new HyperLogLog(12);
+        HyperLogLog right = new HyperLogLog(12);
+        HyperLogLog both = new HyperLogLog(12);
+        for (int i = 0; i < 50_000; i++) {
+            (i % 3 == 0 ? left : right).add("key-" + i);
+            both.add("key-" + i);
+        }
+        left.merge(right);
+        assertEquals(both.estimate(), left.estimate());
+        assertThrows(IllegalArgumentException.class, () -> left.merge(new HyperLogLog(10)));
+    }
+
+    @Test
+    void longValuesAreCountedUnderTheirPrefix() {
+        ValueFrequencySketch sketch = new ValueFrequencySketch(12, 4);
+        String prefix = "x".repeat(ValueFrequencySketch.MAX_VALUE_LENGTH);
+        sketch.add(prefix + "1");
+        sketch.add(prefix + "2");
+
+        List<ValueFrequencySketch.TopValue> top = sketch.top(4);
+        assertEquals(1, top.size());
+        assertEquals(prefix + "...", top.get(0).getValue());
+        assertEquals(2, top.get(0).getCount());
+    }
+}
@@ -0,0 +1,98 @@
+package jerm.jerm_java.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class XMLBytePrefilterTest {
+
+    private static final int CHUNK_BYTES = 4096;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void filesMissingATokenAreSkipped() throws IOException {
+        XMLBytePrefilter prefilter = prefilter("//log[@level='ERROR']/message");
+        assertTrue(prefilter.mayMatch(file("match.xml", "<root><log level='ERROR'><message>m</message></log></root>")));
+        assertFalse(prefilter.mayMatch(file("no-name.xml", "<root><log level='ERROR'><text>m</text></log></root>")));
+        assertFalse(prefilter.mayMatch(file("no-value.xml", "<root><log level='WARN'><message>m</message></log></root>")));
+
+        Map<String, Object> stats = prefilter.getStatistics();
+        assertEquals(3L, stats.get("filesScanned"));
+        assertEquals(2L, stats.get("filesSkipped"));
+        assertEquals(0L, stats.get("filesUndecidable"));
+    }
+
+    @Test
+    void tokensSplitAcrossChunksAreFound() throws IOException {
+        XMLBytePrefilter prefilter = prefilter("//needle");
+        for (int offset = -8; offset <= 8; offset++) {
+            // "<needle/>" starts at CHUNK_BYTES + offset, so it straddles the first chunk boundary at every alignment
+            String prefix = "<root><pad>" + "x".repeat(CHUNK_BYTES + offset - 17) + "</pad>";
+            String xml = prefix + "<needle/>" + "y".repeat(3 * CHUNK_BYTES) + "</root>";
+            assertTrue(prefilter.mayMatch(file("split" + offset + ".xml", xml)), "offset " + offset);
+        }
+        assertFalse(prefilter.mayMatch(file("large.xml", "<root>" + "<item/>".repeat(5 * CHUNK_BYTES) + "</root>")));
+    }
+
+    @Test
+    void filesThatCannotBeDecidedFromTheirBytesArePassedOn() throws IOException {
+        XMLBytePrefilter prefilter = prefilter("//log[@level='ERROR']");
+        String missing = "<root><log level='WARN'/></root>";
+
+        Path utf16 = directory.resolve("utf16.xml");
+        Files.writeString(utf16, "<?xml version='1.0' encoding='UTF-16'?>" + missing, StandardCharsets.UTF_16);
+        assertTrue(prefilter.mayMatch(source(utf16)));
+
+        assertTrue(prefilter.mayMatch(file("doctype.xml",
+            "<?xml version='1.0'?><!DOCTYPE root [<!ENTITY e 'ERROR'>]><root><log level='&e;'/></root>")));
+        assertTrue(prefilter.mayMatch(file("unknown-encoding.xml", "<?xml version='1.0' encoding='IBM037'?>" + missing)));
+        assertTrue(prefilter.mayMatch(file("reference.xml", "<root><log level='&#69;RROR'/></root>")));
+
+        Path compressed = directory.resolve("compressed.xml.gz");
+        Files.write(compressed, new byte[] { 0x1f, (byte) 0x8b });
+        assertTrue(prefilter.mayMatch(source(compressed)));
+
+        assertEquals(5L, prefilter.getStatistics().get("filesUndecidable"));
+        assertEquals(0L, prefilter.getStatistics().get("filesSkipped"));
+
+        // A character reference can't spell an element name
+        assertFalse(prefilter.mayMatch(file("reference-name.xml", "<root><entry level='&#69;RROR'/></root>")));
+    }
+
+    @Test
+    void nonAsciiTokensAreOnlyComparedInUtf8() throws IOException {
+        XMLBytePrefilter prefilter = prefilter("//St\u00fcckliste");
+        Path latin1 = directory.resolve("latin1.xml");
+        Files.write(latin1, "<?xml version='1.0' encoding='ISO-8859-1'?><root><St\u00fcckliste/></root>".getBytes(StandardCharsets.ISO_8859_1));
+        assertTrue(prefilter.mayMatch(source(latin1)));
+        assertTrue(prefilter.mayMatch(file("utf8.xml", "<?xml version='1.0' encoding='UTF-8'?><root><St\u00fcckliste/></root>")));
+        assertFalse(prefilter.mayMatch(file("other.xml", "<?xml version='1.0' encoding='UTF-8'?><root><Liste/></root>")));
+    }
+
+    @Test
+    void pathsWithoutLiteralsHaveNoPrefilter() {
+        assertNull(XMLBytePrefilter.forPath(StreamingXPath.compile("//*"), CHUNK_BYTES));
+        assertNull(XMLBytePrefilter.forPath(null, CHUNK_BYTES));
+    }
+
+    private static XMLBytePrefilter prefilter(String expression) {
+        return XMLBytePrefilter.forPath(StreamingXPath.compile(expression), CHUNK_BYTES);
+    }
+
+    private XMLSource file(String name, String xml) throws IOException {
+        return source(Files.writeString(directory.resolve(name), xml, StandardCharsets.UTF_8));
+    }
+
+    private static XMLSource source(Path file) throws IOException {
+        return XMLSource.file(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+    }
+}